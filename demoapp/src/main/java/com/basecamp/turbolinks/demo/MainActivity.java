@@ -33,6 +33,9 @@ public class MainActivity extends AppCompatActivity implements TurbolinksAdapter
         // this for debug builds of your app (it is off by default)
         TurbolinksSession.getDefault(this).setDebugLoggingEnabled(true);
 
+        // Trace visits for Perfetto and systrace in debug builds of the demo app only
+        TurbolinksSession.setTracingEnabled(BuildConfig.DEBUG);
+
         // For this example we set a default location, unless one is passed in through an intent
         location = getIntent().getStringExtra(INTENT_URL) != null ? getIntent().getStringExtra(INTENT_URL) : BASE_URL;
 
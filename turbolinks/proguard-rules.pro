@@ -16,10 +16,4 @@
    public *;
 }
 
-# Gson
--keep class com.google.** { *; }
--keep class org.apache.** { *; }
--keep class javax.** { *; }
--keep class sun.misc.Unsafe { *; }
-
 -keep class com.basecamp.turbolinks.** { *; }
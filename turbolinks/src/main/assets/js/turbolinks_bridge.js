@@ -1,6 +1,9 @@
 function TLWebView(controller) {
     this.controller = controller
     controller.adapter = this
+    this.messages = []
+    this.events = []
+    this.pageUpdates = []
 
     var turbolinksIsReady = typeof Turbolinks !== "undefined" && Turbolinks !== null
     TurbolinksNative.setTurbolinksIsReady(turbolinksIsReady);
@@ -15,6 +18,104 @@ TLWebView.prototype = {
         this.controller.startVisitToLocationWithAction(location, action, restorationIdentifier)
     },
 
+    setRenderDetection: function(renderDetection) {
+        this.renderDetection = renderDetection
+    },
+
+    setParked: function(parked) {
+        this.parked = parked
+    },
+
+    // -----------------------------------------------------------------------
+    // App messages
+    // -----------------------------------------------------------------------
+
+    postMessage: function(name, payload) {
+        this.messages.push({ name: name, payload: payload })
+
+        if (this.messages.length == 1) {
+            this.afterNextFrame(this.sendMessages.bind(this))
+        }
+    },
+
+    sendMessages: function() {
+        var messages = this.messages
+        this.messages = []
+        TurbolinksNative.receiveMessages(JSON.stringify(messages))
+    },
+
+    // -----------------------------------------------------------------------
+    // Native events
+    // -----------------------------------------------------------------------
+
+    // Adapter events cross to native in batches. Urgent ones are sent once the current task is
+    // done, the rest wait up to a frame so they can go along with whatever happens next
+    sendEvent: function(name, args, urgent) {
+        this.events.push({ name: name, args: args, time: Date.now() })
+
+        if (urgent && !this.eventsQueued) {
+            this.eventsQueued = true
+            this.afterCurrentTask(this.sendEvents.bind(this))
+        } else if (!urgent && !this.eventsFrameQueued) {
+            this.eventsFrameQueued = true
+            this.afterNextFrame(function() {
+                this.eventsFrameQueued = false
+                this.sendEvents()
+            }.bind(this))
+        }
+    },
+
+    sendEvents: function() {
+        this.eventsQueued = false
+        if (this.events.length == 0) return
+
+        var events = this.events
+        this.events = []
+        TurbolinksNative.receiveEvents(JSON.stringify({ sentAt: Date.now(), events: events }))
+    },
+
+    // -----------------------------------------------------------------------
+    // Page updates
+    // -----------------------------------------------------------------------
+
+    applyPageUpdates: function(updates) {
+        var pending = this.pageUpdates.length > 0
+        this.pageUpdates.push.apply(this.pageUpdates, updates)
+
+        if (!pending) {
+            this.afterNextFrame(this.flushPageUpdates.bind(this))
+        }
+    },
+
+    flushPageUpdates: function() {
+        var updates = this.pageUpdates
+        this.pageUpdates = []
+
+        for (var i = 0; i < updates.length; i++) {
+            var update = updates[i]
+            var element = document.getElementById(update.target)
+            if (element == null) continue
+
+            switch (update.action) {
+                case "replace":
+                    element.outerHTML = update.html
+                    break
+                case "update":
+                    element.innerHTML = update.html
+                    break
+                case "append":
+                    element.insertAdjacentHTML("beforeend", update.html)
+                    break
+                case "prepend":
+                    element.insertAdjacentHTML("afterbegin", update.html)
+                    break
+                case "remove":
+                    element.parentNode.removeChild(element)
+                    break
+            }
+        }
+    },
+
     // -----------------------------------------------------------------------
     // Current visit
     // -----------------------------------------------------------------------
@@ -44,7 +145,8 @@ TLWebView.prototype = {
     },
 
     cancelVisitWithIdentifier: function(identifier) {
-        if (identifier == this.currentVisit.identifier) {
+        // Native may cancel before this page has made a visit
+        if (this.currentVisit != null && identifier == this.currentVisit.identifier) {
             this.currentVisit.cancel()
         }
     },
@@ -54,12 +156,20 @@ TLWebView.prototype = {
     // -----------------------------------------------------------------------
 
     visitProposedToLocationWithAction: function(location, action) {
-        TurbolinksNative.visitProposedToLocationWithAction(location.absoluteURL, action);
+        // A cached page isn't showing, so it can't be navigating anywhere
+        if (this.parked) return
+
+        this.sendEvent("visitProposedToLocationWithAction", [location.absoluteURL, action], true)
     },
 
     visitStarted: function(visit) {
         this.currentVisit = visit
-        TurbolinksNative.visitStarted(visit.identifier, visit.hasCachedSnapshot());
+        this.sendEvent("visitStarted", [visit.identifier, visit.hasCachedSnapshot()], false)
+
+        // Native only ever echoed these back, so they no longer wait on a round trip
+        visit.changeHistory()
+        visit.issueRequest()
+        visit.loadCachedSnapshot()
     },
 
     visitRequestStarted: function(visit) {
@@ -68,11 +178,17 @@ TLWebView.prototype = {
     },
 
     visitRequestCompleted: function(visit) {
-        TurbolinksNative.visitRequestCompleted(visit.identifier);
+        // Loaded first, so the frame Turbolinks renders in comes before the one the event waits
+        // for, and the event goes along with visitCompleted
+        if (visit == this.currentVisit) {
+            visit.loadResponse()
+        }
+
+        this.sendEvent("visitRequestCompleted", [visit.identifier], false)
     },
 
     visitRequestFailedWithStatusCode: function(visit, statusCode) {
-        TurbolinksNative.visitRequestFailedWithStatusCode(visit.identifier, statusCode);
+        this.sendEvent("visitRequestFailedWithStatusCode", [visit.identifier, statusCode], true)
     },
 
     visitRequestFinished: function(visit) {
@@ -81,32 +197,92 @@ TLWebView.prototype = {
     },
 
     visitRendered: function(visit) {
-        this.afterNextRepaint(function() {
-            TurbolinksNative.visitRendered(visit.identifier)
-        })
+        var start = Date.now()
+        this.afterRender(function() {
+            this.sendEvent("visitRendered", [visit.identifier, Date.now() - start], true)
+        }.bind(this))
     },
 
     visitCompleted: function(visit) {
-        TurbolinksNative.visitCompleted(visit.identifier, visit.restorationIdentifier)
+        this.sendEvent("visitCompleted", [visit.identifier, visit.restorationIdentifier], true)
     },
 
     pageInvalidated: function() {
-        TurbolinksNative.pageInvalidated()
+        this.sendEvent("pageInvalidated", [], true)
     },
 
     // -----------------------------------------------------------------------
     // Private
     // -----------------------------------------------------------------------
 
+    afterRender: function(callback) {
+        switch (this.renderDetection) {
+            case "paint":
+                this.afterNextPaint(callback)
+                break
+            case "visualState": // Native waits for the WebView to commit the frame
+                callback()
+                break
+            default:
+                this.afterNextRepaint(callback)
+        }
+    },
+
+    afterCurrentTask: function(callback) {
+        if (typeof Promise !== "undefined") {
+            Promise.resolve().then(callback)
+        } else {
+            setTimeout(callback, 0)
+        }
+    },
+
+    afterNextFrame: function(callback) {
+        // Hidden pages don't get animation frames
+        if (document.visibilityState == "hidden") {
+            setTimeout(callback, 0)
+        } else {
+            requestAnimationFrame(callback)
+        }
+    },
+
     afterNextRepaint: function(callback) {
       requestAnimationFrame(function() {
         requestAnimationFrame(callback)
       })
+    },
+
+    afterNextPaint: function(callback) {
+        // Hidden pages don't get animation frames, so there's no paint to wait for
+        if (document.visibilityState == "hidden") {
+            callback()
+            return
+        }
+
+        // Animation frame callbacks run right before the frame is painted, so a task queued from
+        // one runs right after it
+        requestAnimationFrame(function() {
+            setTimeout(callback, 0)
+        })
     }
 }
 
-try {
-    window.webView = new TLWebView(Turbolinks.controller)
-} catch (e) { // Most likely reached a page where Turbolinks.controller returned "Uncaught ReferenceError: Turbolinks is not defined"
-    TurbolinksNative.turbolinksDoesNotExist()
-}
+// Without the semicolon the function would call the prototype object above
+;(function() {
+    // The bridge can be injected as early as the page commit, so guard against a second injection
+    // from onPageFinished and wait for deferred scripts before deciding Turbolinks doesn't exist
+    if (window.webView != null) return
+
+    function start() {
+        try {
+            window.webView = new TLWebView(Turbolinks.controller)
+        } catch (e) { // Most likely reached a page where Turbolinks.controller returned "Uncaught ReferenceError: Turbolinks is not defined"
+            TurbolinksNative.turbolinksDoesNotExist()
+        }
+    }
+
+    if (typeof Turbolinks === "undefined" && document.readyState == "loading") {
+        document.addEventListener("DOMContentLoaded", start)
+    } else {
+        start()
+    }
+})()
@@ -0,0 +1,211 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.os.Handler;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * <p>Moves work from the Javascript bridge thread to the main thread through a bounded queue that
+ * only keeps the latest event of each kind for each visit.</p>
+ *
+ * <p>During bursts -- rapid taps, or a page firing many visit events -- posting every callback to
+ * the main looper piles up work for visits that have already been superseded. Here, events for a
+ * visit that's no longer current are dropped before they reach the main thread, and a newer event
+ * replaces a pending one of the same kind and visit, keeping its place in the queue. Pending events
+ * are run together in a single main thread message.</p>
+ *
+ * <p>Once the queue is full, an event is evicted to make room: one for a visit that has gone stale
+ * first, then the oldest progress event, then the oldest of any other kind. Lifecycle events --
+ * Turbolinks ready or missing, a completed or failed visit, an invalidated page -- are never
+ * evicted, since losing one would leave a progress view up or a cold boot unfinished. The queue can
+ * go over its limit when nothing else is left to evict.</p>
+ *
+ * <p>The number of events run per message is reported as
+ * {@link TurbolinksMetricsListener#BRIDGE_QUEUE_DEPTH}, and the number dropped as
+ * {@link TurbolinksMetricsListener#BRIDGE_EVENTS_DROPPED}.</p>
+ */
+class TurbolinksBridgeDispatcher {
+    static final String VISIT_PROPOSED = "visitProposed";
+    static final String REQUEST_COMPLETED = "requestCompleted";
+    static final String REQUEST_FAILED = "requestFailed";
+    static final String HIDE_PROGRESS = "hideProgress";
+    static final String VISUAL_STATE = "visualState";
+    static final String VISIT_COMPLETED = "visitCompleted";
+    static final String PAGE_INVALIDATED = "pageInvalidated";
+    static final String TURBOLINKS_READY = "turbolinksReady";
+    static final String TURBOLINKS_DOES_NOT_EXIST = "turbolinksDoesNotExist";
+    static final int MAX_PENDING_EVENTS = 64;
+
+    private final TurbolinksSession session;
+    private final Handler handler;
+    private final LinkedHashMap<String, Event> pendingEvents = new LinkedHashMap<>();
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private boolean drainScheduled;
+    private int droppedCount;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates a dispatcher for a session.</p>
+     *
+     * @param session The session whose current visit decides which events are stale.
+     * @param context Any Android context.
+     */
+    TurbolinksBridgeDispatcher(TurbolinksSession session, Context context) {
+        this.session = session;
+        this.handler = new Handler(context.getMainLooper());
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Queues work to run on the main thread. Safe to call from any thread.</p>
+     *
+     * @param kind            The kind of event. A pending event of the same kind and visit is replaced.
+     * @param visitIdentifier The visit the event belongs to, or null if it doesn't belong to a visit.
+     * @param runnable        The work to run on the main thread.
+     */
+    void dispatch(String kind, String visitIdentifier, Runnable runnable) {
+        synchronized (pendingEvents) {
+            if (isStale(visitIdentifier)) {
+                droppedCount++;
+                return;
+            }
+
+            String key = kind + ":" + visitIdentifier;
+
+            if (pendingEvents.containsKey(key)) {
+                droppedCount++; // Superseded, the latest event takes its place in the queue
+            } else if (pendingEvents.size() >= MAX_PENDING_EVENTS && evictOne()) {
+                droppedCount++;
+            }
+
+            pendingEvents.put(key, new Event(kind, visitIdentifier, runnable));
+
+            if (!drainScheduled) {
+                drainScheduled = true;
+                handler.post(drainRunnable);
+            }
+        }
+    }
+
+    /**
+     * @return The number of events waiting for the main thread.
+     */
+    int getPendingCount() {
+        synchronized (pendingEvents) {
+            return pendingEvents.size();
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Runs all pending events on the main thread, skipping those that went stale while
+     * queued.</p>
+     */
+    private void drain() {
+        List<Event> events;
+        int dropped;
+
+        synchronized (pendingEvents) {
+            events = new ArrayList<>(pendingEvents.values());
+            pendingEvents.clear();
+            drainScheduled = false;
+            dropped = droppedCount;
+            droppedCount = 0;
+        }
+
+        session.recordMetric(TurbolinksMetricsListener.BRIDGE_QUEUE_DEPTH, events.size());
+
+        long start = session.frameMonitor.begin();
+
+        for (Event event : events) {
+            if (isStale(event.visitIdentifier)) {
+                dropped++;
+            } else {
+                event.runnable.run();
+            }
+        }
+
+        session.frameMonitor.end(TurbolinksJankListener.SECTION_ADAPTER_CALLBACKS, start);
+
+        if (dropped > 0) {
+            session.recordMetric(TurbolinksMetricsListener.BRIDGE_EVENTS_DROPPED, dropped);
+        }
+    }
+
+    /**
+     * <p>Evicts the pending event that's least missed, never a lifecycle event. Must hold the
+     * queue's lock.</p>
+     *
+     * @return True if an event was evicted.
+     */
+    private boolean evictOne() {
+        for (Iterator<Event> iterator = pendingEvents.values().iterator(); iterator.hasNext(); ) {
+            Event event = iterator.next();
+
+            if (isStale(event.visitIdentifier)) {
+                iterator.remove();
+                return true;
+            }
+        }
+
+        Event progressEvent = null;
+        Event otherEvent = null;
+
+        for (Event event : pendingEvents.values()) {
+            if (isLifecycle(event.kind)) continue;
+
+            if (isProgress(event.kind)) {
+                if (progressEvent == null) progressEvent = event;
+            } else if (otherEvent == null) {
+                otherEvent = event;
+            }
+        }
+
+        Event evicted = progressEvent != null ? progressEvent : otherEvent;
+        return evicted != null && pendingEvents.values().remove(evicted);
+    }
+
+    private static boolean isProgress(String kind) {
+        return HIDE_PROGRESS.equals(kind) || VISUAL_STATE.equals(kind);
+    }
+
+    private static boolean isLifecycle(String kind) {
+        return TURBOLINKS_READY.equals(kind) || TURBOLINKS_DOES_NOT_EXIST.equals(kind) || VISIT_COMPLETED.equals(kind)
+            || REQUEST_FAILED.equals(kind) || PAGE_INVALIDATED.equals(kind);
+    }
+
+    private boolean isStale(String visitIdentifier) {
+        return visitIdentifier != null && !TextUtils.equals(visitIdentifier, session.currentVisitIdentifier);
+    }
+
+    private static class Event {
+        final String kind;
+        final String visitIdentifier;
+        final Runnable runnable;
+
+        Event(String kind, String visitIdentifier, Runnable runnable) {
+            this.kind = kind;
+            this.visitIdentifier = visitIdentifier;
+            this.runnable = runnable;
+        }
+    }
+}
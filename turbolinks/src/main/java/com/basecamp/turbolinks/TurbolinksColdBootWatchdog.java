@@ -0,0 +1,163 @@
+package com.basecamp.turbolinks;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Watches a cold boot for a phase that never completes, like an onPageFinished that never fires
+ * or a bridge injection that never returns. Each phase has its own deadline, starting when the
+ * previous phase completes.</p>
+ *
+ * <p>The phases, in order, are {@link TurbolinksSession#COLD_BOOT_PHASE_PAGE_STARTED},
+ * {@link TurbolinksSession#COLD_BOOT_PHASE_PAGE_FINISHED},
+ * {@link TurbolinksSession#COLD_BOOT_PHASE_BRIDGE_INJECTED} and
+ * {@link TurbolinksSession#COLD_BOOT_PHASE_READY}. Phases may be skipped, like the page finishing
+ * when the bridge is injected as soon as the page is committed. Safe to call from any thread, the
+ * listener is called on the main thread.</p>
+ */
+class TurbolinksColdBootWatchdog {
+    static final String[] PHASES = {
+        TurbolinksSession.COLD_BOOT_PHASE_PAGE_STARTED,
+        TurbolinksSession.COLD_BOOT_PHASE_PAGE_FINISHED,
+        TurbolinksSession.COLD_BOOT_PHASE_BRIDGE_INJECTED,
+        TurbolinksSession.COLD_BOOT_PHASE_READY
+    };
+    static final long[] DEFAULT_TIMEOUTS = {30000, 30000, 10000, 15000};
+
+    /**
+     * <p>Called on the main thread when a phase misses its deadline.</p>
+     */
+    interface Listener {
+        void onColdBootStalled(String phase);
+    }
+
+    private final Handler handler;
+    private final Listener listener;
+    private final Map<String, Long> timeouts = new HashMap<>();
+    private final Runnable timeout;
+    private int phaseIndex = -1; // The phase being waited for, or -1 when idle
+    private long deadline;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * @param looper   The main looper.
+     * @param listener Called when a phase misses its deadline.
+     */
+    TurbolinksColdBootWatchdog(Looper looper, Listener listener) {
+        this.handler = new Handler(looper);
+        this.listener = listener;
+        this.timeout = new Runnable() {
+            @Override
+            public void run() {
+                String phase;
+
+                synchronized (TurbolinksColdBootWatchdog.this) {
+                    // A later phase may have started while this was already running
+                    if (phaseIndex < 0 || SystemClock.uptimeMillis() < deadline) return;
+
+                    phase = PHASES[phaseIndex];
+                    phaseIndex = -1;
+                }
+
+                TurbolinksColdBootWatchdog.this.listener.onColdBootStalled(phase);
+            }
+        };
+
+        for (int i = 0; i < PHASES.length; i++) {
+            timeouts.put(PHASES[i], DEFAULT_TIMEOUTS[i]);
+        }
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Sets the deadline for a phase.</p>
+     *
+     * @param phase   One of the cold boot phases.
+     * @param timeout The deadline in milliseconds, counted from the end of the previous phase, or 0
+     *                to wait forever.
+     */
+    synchronized void setTimeout(String phase, long timeout) {
+        if (indexOf(phase) < 0) {
+            throw new IllegalArgumentException("Unknown cold boot phase: " + phase);
+        }
+
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The cold boot timeout must not be negative.");
+        }
+
+        timeouts.put(phase, timeout);
+    }
+
+    /**
+     * <p>Starts watching a cold boot, waiting for the page to start.</p>
+     */
+    synchronized void start() {
+        waitFor(0);
+    }
+
+    /**
+     * <p>Marks a phase as completed, and starts the deadline for the next one. Ignored when idle,
+     * or when the phase has already completed.</p>
+     *
+     * @param phase One of the cold boot phases.
+     */
+    synchronized void phaseCompleted(String phase) {
+        int index = indexOf(phase);
+        if (phaseIndex < 0 || index < phaseIndex) return;
+
+        if (index + 1 < PHASES.length) {
+            waitFor(index + 1);
+        } else {
+            stop();
+        }
+    }
+
+    /**
+     * <p>Stops watching, once the cold boot has finished one way or another.</p>
+     */
+    synchronized void stop() {
+        handler.removeCallbacks(timeout);
+        phaseIndex = -1;
+    }
+
+    /**
+     * @return The phase being waited for, or null when idle.
+     */
+    synchronized String getPhase() {
+        return phaseIndex >= 0 ? PHASES[phaseIndex] : null;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void waitFor(int index) {
+        handler.removeCallbacks(timeout);
+        phaseIndex = index;
+
+        long delay = timeouts.get(PHASES[index]);
+        deadline = delay > 0 ? SystemClock.uptimeMillis() + delay : Long.MAX_VALUE;
+
+        if (delay > 0) {
+            handler.postDelayed(timeout, delay);
+        }
+    }
+
+    private static int indexOf(String phase) {
+        for (int i = 0; i < PHASES.length; i++) {
+            if (PHASES[i].equals(phase)) return i;
+        }
+
+        return -1;
+    }
+}
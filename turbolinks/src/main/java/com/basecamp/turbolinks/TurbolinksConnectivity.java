@@ -0,0 +1,27 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Tells whether the device is online, so failures while offline aren't retried in vain, and
+ * when it comes back online.</p>
+ */
+interface TurbolinksConnectivity {
+    /**
+     * <p>Called on the main thread when the device is back online.</p>
+     */
+    interface Listener {
+        void onConnectivityRestored();
+    }
+
+    /**
+     * @return True if there's a connected network, or if it can't be determined.
+     */
+    boolean isOnline();
+
+    /**
+     * <p>Starts listening for the device coming back online, or stops if the listener is null. Only
+     * one listener is kept.</p>
+     *
+     * @param listener The listener, or null.
+     */
+    void setListener(Listener listener);
+}
@@ -0,0 +1,274 @@
+package com.basecamp.turbolinks;
+
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+/**
+ * <p>Times the current visit, and shows the timings in a small overlay on top of the
+ * TurbolinksView: the cold boot if the visit needed one, the network request, the render, the last
+ * screenshot and the total. Each span is also traced with {@link TurbolinksTrace}.</p>
+ *
+ * <p>Off by default. The visit callbacks do nothing unless the overlay is shown or tracing is
+ * enabled. They're safe to call from any thread, the overlay is only touched on the main
+ * thread.</p>
+ */
+class TurbolinksDebugOverlay {
+    private final Object coldBootCookie = new Object();
+    private final Runnable update;
+    private TextView textView;
+    private volatile boolean enabled;
+
+    private String visitIdentifier;
+    private long coldBootStart = -1;
+    private long coldBootDuration = -1;
+    private long visitStart;
+    private long requestEnd = -1;
+    private long visitColdBootDuration = -1;
+    private long requestDuration = -1;
+    private long renderDuration = -1;
+    private long screenshotDuration = -1;
+    private long totalDuration = -1;
+    private String failure;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    TurbolinksDebugOverlay() {
+        this.update = new Runnable() {
+            @Override
+            public void run() {
+                updateText();
+            }
+        };
+    }
+
+    // ---------------------------------------------------
+    // Overlay
+    // ---------------------------------------------------
+
+    /**
+     * <p>Shows or hides the overlay. Must be called on the main thread.</p>
+     *
+     * @param enabled True to show the overlay.
+     */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+
+        if (!enabled && textView != null && textView.getParent() != null) {
+            ((ViewGroup) textView.getParent()).removeView(textView);
+        }
+    }
+
+    /**
+     * <p>Moves the overlay to a TurbolinksView, and has the view report its screenshots. Must be
+     * called on the main thread.</p>
+     *
+     * @param turbolinksView The view the session's WebView is attached to.
+     */
+    void attachTo(TurbolinksView turbolinksView) {
+        if (turbolinksView == null) return;
+
+        turbolinksView.debugOverlay = this;
+        if (!enabled) return;
+
+        if (textView == null) {
+            textView = createTextView(turbolinksView);
+        }
+
+        if (textView.getParent() != turbolinksView) {
+            if (textView.getParent() != null) {
+                ((ViewGroup) textView.getParent()).removeView(textView);
+            }
+
+            turbolinksView.addView(textView, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.END));
+        }
+
+        updateText();
+    }
+
+    // ---------------------------------------------------
+    // Visit callbacks
+    // ---------------------------------------------------
+
+    synchronized void coldBootStarted() {
+        if (!isTiming()) return;
+
+        endColdBoot(false);
+        coldBootStart = SystemClock.uptimeMillis();
+        TurbolinksTrace.beginAsyncSection(TurbolinksTrace.COLD_BOOT, coldBootCookie);
+    }
+
+    /**
+     * @param ready True if Turbolinks is ready, false if the cold boot failed or was reset.
+     */
+    synchronized void coldBootFinished(boolean ready) {
+        if (!isTiming()) return;
+
+        endColdBoot(ready);
+    }
+
+    synchronized void visitStarted(String visitIdentifier) {
+        if (!isTiming()) return;
+
+        endVisit();
+
+        this.visitIdentifier = visitIdentifier;
+        visitStart = SystemClock.uptimeMillis();
+        visitColdBootDuration = coldBootDuration; // The cold boot is counted toward the visit that follows it
+        coldBootDuration = -1;
+        requestEnd = -1;
+        requestDuration = -1;
+        renderDuration = -1;
+        totalDuration = -1;
+        failure = null;
+
+        TurbolinksTrace.beginAsyncSection(TurbolinksTrace.VISIT, visitIdentifier);
+        TurbolinksTrace.beginAsyncSection(TurbolinksTrace.REQUEST, visitIdentifier);
+        postUpdate();
+    }
+
+    synchronized void requestCompleted(String visitIdentifier) {
+        if (!isTiming() || !isCurrentVisit(visitIdentifier) || requestEnd >= 0) return;
+
+        requestEnd = SystemClock.uptimeMillis();
+        requestDuration = requestEnd - visitStart;
+        TurbolinksTrace.endAsyncSection(TurbolinksTrace.REQUEST, visitIdentifier);
+        TurbolinksTrace.beginAsyncSection(TurbolinksTrace.RENDER, visitIdentifier);
+        postUpdate();
+    }
+
+    synchronized void requestFailed(String visitIdentifier, int statusCode) {
+        if (!isTiming() || !isCurrentVisit(visitIdentifier)) return;
+
+        failure = "failed " + statusCode;
+        endVisit();
+        postUpdate();
+    }
+
+    synchronized void rendered(String visitIdentifier) {
+        if (!isTiming() || !isCurrentVisit(visitIdentifier) || requestEnd < 0 || renderDuration >= 0) return;
+
+        renderDuration = SystemClock.uptimeMillis() - requestEnd;
+        TurbolinksTrace.endAsyncSection(TurbolinksTrace.RENDER, visitIdentifier);
+        postUpdate();
+    }
+
+    synchronized void completed(String visitIdentifier) {
+        if (!isTiming() || !isCurrentVisit(visitIdentifier)) return;
+
+        endVisit();
+        postUpdate();
+    }
+
+    synchronized void screenshotTaken(long duration) {
+        if (!isTiming()) return;
+
+        screenshotDuration = duration;
+        postUpdate();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * @return Whether visits are timed, for the overlay or for tracing.
+     */
+    private boolean isTiming() {
+        return enabled || TurbolinksTrace.isEnabled();
+    }
+
+    private boolean isCurrentVisit(String visitIdentifier) {
+        return visitIdentifier != null && visitIdentifier.equals(this.visitIdentifier);
+    }
+
+    private void endColdBoot(boolean ready) {
+        if (coldBootStart < 0) return;
+
+        coldBootDuration = ready ? SystemClock.uptimeMillis() - coldBootStart : -1;
+        coldBootStart = -1;
+        TurbolinksTrace.endAsyncSection(TurbolinksTrace.COLD_BOOT, coldBootCookie);
+    }
+
+    /**
+     * <p>Ends whichever of the visit's spans are still open.</p>
+     */
+    private void endVisit() {
+        if (visitIdentifier == null || totalDuration >= 0) return;
+
+        if (requestEnd < 0) {
+            TurbolinksTrace.endAsyncSection(TurbolinksTrace.REQUEST, visitIdentifier);
+        } else if (renderDuration < 0) {
+            TurbolinksTrace.endAsyncSection(TurbolinksTrace.RENDER, visitIdentifier);
+        }
+
+        totalDuration = SystemClock.uptimeMillis() - visitStart;
+        TurbolinksTrace.endAsyncSection(TurbolinksTrace.VISIT, visitIdentifier);
+    }
+
+    private void postUpdate() {
+        TextView textView = this.textView;
+
+        if (enabled && textView != null) {
+            textView.post(update);
+        }
+    }
+
+    private void updateText() {
+        if (!enabled || textView == null) return;
+
+        StringBuilder text = new StringBuilder();
+
+        synchronized (this) {
+            if (visitColdBootDuration >= 0) {
+                appendLine(text, "cold boot", visitColdBootDuration);
+            } else {
+                text.append("turbolinks visit");
+            }
+
+            appendLine(text, "network", requestDuration);
+            appendLine(text, "render", renderDuration);
+            appendLine(text, "screenshot", screenshotDuration);
+            appendLine(text, failure != null ? failure : "total", totalDuration);
+        }
+
+        textView.setText(text);
+        textView.bringToFront();
+    }
+
+    private static void appendLine(StringBuilder text, String label, long duration) {
+        if (text.length() > 0) text.append('\n');
+
+        text.append(String.format(Locale.US, "%-10s %6s", label, duration >= 0 ? duration + " ms" : "-"));
+    }
+
+    /**
+     * <p>Uses the application context, since the overlay outlives the activity of the view it's
+     * first attached to.</p>
+     */
+    private static TextView createTextView(TurbolinksView turbolinksView) {
+        TextView textView = new TextView(turbolinksView.getContext().getApplicationContext());
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4, turbolinksView.getResources().getDisplayMetrics());
+
+        textView.setPadding(padding, padding, padding, padding);
+        textView.setBackgroundColor(0xB0000000);
+        textView.setTextColor(Color.WHITE);
+        textView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        textView.setTypeface(Typeface.MONOSPACE);
+        textView.setClickable(false);
+        textView.setImportantForAccessibility(View.IMPORTANT_FOR_ACCESSIBILITY_NO);
+
+        return textView;
+    }
+}
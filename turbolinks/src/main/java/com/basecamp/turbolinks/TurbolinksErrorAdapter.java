@@ -0,0 +1,25 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>An optional extension of {@link TurbolinksAdapter} for apps that want to hear about errors
+ * that are otherwise only logged.</p>
+ */
+public interface TurbolinksErrorAdapter extends TurbolinksAdapter {
+    /**
+     * <p>Called on the main thread when a visit can't start because its location isn't a valid
+     * absolute URL. No visit is made.</p>
+     *
+     * @param location The location that was visited.
+     * @param reason   Why the location is invalid.
+     */
+    void onInvalidLocation(String location, String reason);
+
+    /**
+     * <p>Called on the main thread when a cold boot stalls again after being retried. The session
+     * has been reset, so the next visit cold boots again. Called instead of
+     * {@link TurbolinksAdapter#onReceivedError(int)} with a timeout error.</p>
+     *
+     * @param phase The COLD_BOOT_PHASE constant of the phase that stalled.
+     */
+    void onColdBootTimeout(String phase);
+}
@@ -0,0 +1,179 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.WindowManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Times the library's own main-thread sections and attributes them to frames, to tell how much
+ * of the jank during navigation is the library's.</p>
+ *
+ * <p>A section that goes over its budget is reported to the {@link TurbolinksJankListener} at the
+ * next frame, with the number of frames dropped since the previous one, as seen by a
+ * Choreographer frame callback. The callback is only posted while sections are running, and stops
+ * after a frame without any. In strict mode, any section over the threshold is logged right
+ * away.</p>
+ *
+ * <p>Nothing is timed unless there's a listener or strict mode is on. Main thread only.</p>
+ */
+class TurbolinksFrameMonitor implements Choreographer.FrameCallback {
+    static final String[] SECTIONS = {
+        TurbolinksJankListener.SECTION_SCREENSHOT,
+        TurbolinksJankListener.SECTION_ATTACH_WEBVIEW,
+        TurbolinksJankListener.SECTION_PROGRESS_VIEW,
+        TurbolinksJankListener.SECTION_ADAPTER_CALLBACKS
+    };
+    static final long DEFAULT_BUDGET_MILLIS = 8; // Half a frame at 60 Hz
+    static final int MAX_PENDING_SECTIONS = 16;
+
+    private final long frameIntervalNanos;
+    private final Map<String, Long> budgetNanos = new HashMap<>();
+    private TurbolinksJankListener listener;
+    private long strictModeThresholdNanos;
+
+    // Sections over budget since the last frame, in fixed arrays so timing doesn't allocate
+    private final String[] pendingSections = new String[MAX_PENDING_SECTIONS];
+    private final long[] pendingDurations = new long[MAX_PENDING_SECTIONS];
+    private int pendingCount;
+    private boolean sectionsSinceLastFrame;
+    private boolean tracking;
+    private long lastFrameTimeNanos;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * @param context Any Android context, to find the display's refresh rate.
+     */
+    TurbolinksFrameMonitor(Context context) {
+        this.frameIntervalNanos = frameIntervalNanos(context);
+
+        for (String section : SECTIONS) {
+            budgetNanos.put(section, TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUDGET_MILLIS));
+        }
+    }
+
+    // ---------------------------------------------------
+    // Settings
+    // ---------------------------------------------------
+
+    void setListener(TurbolinksJankListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param thresholdMillis Log sections that run longer, or 0 to turn strict mode off.
+     */
+    void setStrictModeThreshold(long thresholdMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("The strict mode threshold must not be negative.");
+        }
+
+        this.strictModeThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    void setBudget(String section, long budgetMillis) {
+        if (!budgetNanos.containsKey(section)) {
+            throw new IllegalArgumentException("Unknown main thread section: " + section);
+        }
+
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("The section budget must not be negative.");
+        }
+
+        budgetNanos.put(section, TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+    }
+
+    // ---------------------------------------------------
+    // Timing
+    // ---------------------------------------------------
+
+    /**
+     * <p>Starts timing a section.</p>
+     *
+     * @return The start time to pass to {@link #end(String, long)}, or 0 when nothing is timed.
+     */
+    long begin() {
+        if (listener == null && strictModeThresholdNanos == 0) return 0;
+
+        long now = System.nanoTime();
+
+        if (listener != null && !tracking) {
+            // The main thread was idle until now, so the last frame can't be much older
+            tracking = true;
+            lastFrameTimeNanos = now;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        sectionsSinceLastFrame = true;
+        return now;
+    }
+
+    /**
+     * <p>Stops timing a section.</p>
+     *
+     * @param section One of the SECTION constants.
+     * @param start   The time returned by {@link #begin()}.
+     */
+    void end(String section, long start) {
+        if (start == 0) return;
+
+        long duration = System.nanoTime() - start;
+
+        if (strictModeThresholdNanos > 0 && duration > strictModeThresholdNanos) {
+            TurbolinksLog.e("Strict mode: " + section + " took " + TimeUnit.NANOSECONDS.toMillis(duration) + " ms on the main thread");
+        }
+
+        Long budget = budgetNanos.get(section);
+        if (tracking && budget != null && duration > budget && pendingCount < MAX_PENDING_SECTIONS) {
+            pendingSections[pendingCount] = section;
+            pendingDurations[pendingCount] = duration;
+            pendingCount++;
+        }
+    }
+
+    // ---------------------------------------------------
+    // Choreographer.FrameCallback
+    // ---------------------------------------------------
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        int droppedFrames = (int) Math.max(0, (frameTimeNanos - lastFrameTimeNanos) / frameIntervalNanos - 1);
+        TurbolinksJankListener listener = this.listener;
+
+        for (int i = 0; i < pendingCount; i++) {
+            if (listener != null) {
+                listener.onSectionOverBudget(pendingSections[i], TimeUnit.NANOSECONDS.toMillis(pendingDurations[i]), droppedFrames);
+            }
+            pendingSections[i] = null;
+        }
+
+        pendingCount = 0;
+        lastFrameTimeNanos = frameTimeNanos;
+
+        if (sectionsSinceLastFrame && listener != null) {
+            sectionsSinceLastFrame = false;
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            tracking = false;
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static long frameIntervalNanos(Context context) {
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        Display display = windowManager != null ? windowManager.getDefaultDisplay() : null;
+        float refreshRate = display != null && display.getRefreshRate() >= 1 ? display.getRefreshRate() : 60;
+
+        return (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate);
+    }
+}
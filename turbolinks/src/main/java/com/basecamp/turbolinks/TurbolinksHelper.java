@@ -3,7 +3,9 @@ package com.basecamp.turbolinks;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.MutableContextWrapper;
+import android.os.Bundle;
 import android.os.Handler;
+import android.os.Parcel;
 import android.util.Base64;
 import android.view.ViewGroup;
 import android.webkit.WebChromeClient;
@@ -11,15 +13,9 @@ import android.webkit.WebSettings;
 import android.webkit.WebView;
 
 import android.widget.FrameLayout;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
-import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URL;
 
 class TurbolinksHelper {
     private static String scriptInjectionFormat = "(function(){var parent = document.getElementsByTagName('head').item(0);var script = document.createElement('script');script.type = 'text/javascript';script.innerHTML = window.atob('%s');parent.appendChild(script);return true;})()";
@@ -44,20 +40,15 @@ class TurbolinksHelper {
     }
 
     /**
-     * <p>Encodes URLs so they are properly escaped, specifically for Javascript calls. Liberally
-     * borrowed from: http://stackoverflow.com/questions/3286067/url-encoding-in-android/8962879#8962879</p>
+     * <p>Encodes URLs so they are properly escaped, specifically for Javascript calls. See
+     * {@link TurbolinksUrlNormalizer}.</p>
      *
      * @param originalUrl Original URL string.
      * @return Encoded, escaped URL string.
+     * @throws IllegalArgumentException If the URL isn't a valid absolute URL.
      */
     static String encodeUrl(String originalUrl) {
-        try {
-            URL newUrl = new URL(originalUrl);
-            URI uri = new URI(newUrl.getProtocol(), newUrl.getUserInfo(), newUrl.getHost(), newUrl.getPort(), newUrl.getPath(), newUrl.getQuery(), newUrl.getRef());
-            return uri.toURL().toString();
-        } catch (Exception e) {
-            return null;
-        }
+        return TurbolinksUrlNormalizer.normalize(originalUrl);
     }
 
     /**
@@ -76,6 +67,23 @@ class TurbolinksHelper {
         return Base64.encodeToString(buffer, Base64.NO_WRAP);
     }
 
+    /**
+     * <p>Measures how many bytes a bundle takes up once parcelled, which is what counts against
+     * the Binder transaction limit when saving instance state.</p>
+     *
+     * @param bundle The bundle to measure.
+     * @return The parcelled size of the bundle in bytes.
+     */
+    static int getParcelledSize(Bundle bundle) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(bundle);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
     /**
      * <p>Injects Javascript into the webView.</p>
      *
@@ -98,22 +106,13 @@ class TurbolinksHelper {
      *
      * @param context      An activity context.
      * @param webView      The shared webView.
+     * @param encoder      Encodes params the library can't encode itself, or null.
      * @param functionName The Javascript function name only (no parenthesis or parameters).
      * @param params       A comma delimited list of parameter values.
+     * @throws IllegalArgumentException If a param can't be encoded.
      */
-    static void runJavascript(Context context, final WebView webView, String functionName, Object... params) {
-        final String fullJs;
-
-        if (params != null) {
-            Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-            for (int i = 0; i < params.length; i++) {
-                params[i] = gson.toJson(params[i]);
-            }
-
-            fullJs = String.format("javascript: %s(%s);", functionName, StringUtils.join(params, ","));
-        } else {
-            fullJs = String.format("javascript: %s();", functionName);
-        }
+    static void runJavascript(Context context, final WebView webView, TurbolinksJsonEncoder encoder, String functionName, Object... params) {
+        final String fullJs = "javascript: " + functionName + "(" + TurbolinksJsonWriter.encodeArguments(params, encoder) + ");";
 
         runOnMainThread(context, new Runnable() {
             @Override
@@ -0,0 +1,127 @@
+package com.basecamp.turbolinks;
+
+import android.os.SystemClock;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+
+/**
+ * <p>Holds back a WebView's network images while a visit or cold boot loads the page itself, so
+ * they don't compete with it for bandwidth, and releases them once the page has rendered.</p>
+ *
+ * <p>Before releasing, images in the viewport are marked with a high fetch priority and the rest
+ * with a low one, so the images on screen load first where the WebView supports priority hints.
+ * Elsewhere the hint is ignored and images load in document order, as they would have.</p>
+ *
+ * <p>Deferring and releasing must happen on the main thread. Whether the current visit's images
+ * are deferred can be read from any thread.</p>
+ */
+class TurbolinksImageDeferral {
+    static final String PRIORITIZE_IMAGES_SCRIPT = "(function(){var height=window.innerHeight;" +
+        "var images=document.images;for(var i=0;i<images.length;i++){var image=images[i];" +
+        "if(image.hasAttribute('fetchpriority'))continue;var rect=image.getBoundingClientRect();" +
+        "image.setAttribute('fetchpriority',rect.bottom>=0&&rect.top<=height?'high':'low')}})()";
+
+    private final TurbolinksSession session;
+    private WebView deferredWebView;
+    private long deferredSince;
+    private boolean coldBootReleased;
+    private volatile boolean visitDeferred;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * @param session The session whose WebView's images are deferred.
+     */
+    TurbolinksImageDeferral(TurbolinksSession session) {
+        this.session = session;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Holds back network images for a cold boot.</p>
+     *
+     * @param webView The session's WebView.
+     * @param enabled Whether images are deferred for the location being cold booted.
+     */
+    void deferForColdBoot(WebView webView, boolean enabled) {
+        coldBootReleased = false;
+        visitDeferred = false;
+
+        if (enabled) block(webView);
+    }
+
+    /**
+     * <p>Holds back network images for a Turbolinks visit. The visit Turbolinks makes right after a
+     * cold boot renders the page that's already showing, so its images aren't held back again.</p>
+     *
+     * @param webView The session's WebView.
+     * @param enabled Whether images are deferred for the location being visited.
+     */
+    void deferForVisit(WebView webView, boolean enabled) {
+        boolean afterColdBoot = coldBootReleased;
+        coldBootReleased = false;
+
+        visitDeferred = enabled && !afterColdBoot;
+        if (visitDeferred) block(webView);
+    }
+
+    /**
+     * <p>Releases images held back for a cold boot, once its page has loaded.</p>
+     */
+    void releaseAfterColdBoot() {
+        coldBootReleased = deferredSince > 0;
+        release();
+    }
+
+    /**
+     * <p>Releases images held back for a visit or cold boot, if any: prioritizes the images in
+     * the viewport, then lets the WebView load them.</p>
+     */
+    void release() {
+        final WebView webView = deferredWebView;
+        if (webView == null) return;
+
+        session.recordMetric(TurbolinksMetricsListener.IMAGES_DEFERRED_TIME, SystemClock.uptimeMillis() - deferredSince);
+        deferredWebView = null;
+        deferredSince = 0;
+
+        webView.evaluateJavascript(PRIORITIZE_IMAGES_SCRIPT, new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                // Unless images were deferred again for the next visit in the meantime
+                if (deferredWebView != webView) {
+                    webView.getSettings().setBlockNetworkImage(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Whether the current visit's images were held back until it rendered.
+     */
+    boolean isVisitDeferred() {
+        return visitDeferred;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void block(WebView webView) {
+        if (deferredWebView != null && deferredWebView != webView) {
+            deferredWebView.getSettings().setBlockNetworkImage(false); // The session moved on to a new WebView
+        }
+
+        if (deferredWebView != webView) {
+            deferredSince = SystemClock.uptimeMillis();
+        }
+
+        deferredWebView = webView;
+        webView.getSettings().setBlockNetworkImage(true);
+    }
+}
@@ -0,0 +1,37 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Receives the library's own main-thread sections that went over their budget, with the frames
+ * dropped around them. Set one with
+ * {@link TurbolinksSession#setJankListener(TurbolinksJankListener)}.</p>
+ */
+public interface TurbolinksJankListener {
+    /**
+     * Taking a screenshot of the WebView before it leaves a TurbolinksView.
+     */
+    String SECTION_SCREENSHOT = "screenshot";
+
+    /**
+     * Moving the WebView into a TurbolinksView, including the screenshot of the view it leaves.
+     */
+    String SECTION_ATTACH_WEBVIEW = "attachWebView";
+
+    /**
+     * Inflating and showing the progress view.
+     */
+    String SECTION_PROGRESS_VIEW = "progressView";
+
+    /**
+     * Running the adapter callbacks for events from the page.
+     */
+    String SECTION_ADAPTER_CALLBACKS = "adapterCallbacks";
+
+    /**
+     * <p>Called on the main thread at the frame after a section that went over its budget.</p>
+     *
+     * @param section        One of the SECTION constants.
+     * @param durationMillis How long the section ran.
+     * @param droppedFrames  How many frames were dropped before the next frame, 0 if none.
+     */
+    void onSectionOverBudget(String section, long durationMillis, int droppedFrames);
+}
@@ -0,0 +1,21 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Encodes the objects you pass to {@link TurbolinksSession#runJavascript(String, Object...)}
+ * that the library doesn't encode itself. Set one with
+ * {@link TurbolinksSession#setJsonEncoder(TurbolinksJsonEncoder)}, for instance to hand your own
+ * model objects to the JSON library your app already uses.</p>
+ *
+ * <p>Strings, numbers, booleans, characters, enums, org.json values, maps, collections and object
+ * arrays of those are encoded without it.</p>
+ */
+public interface TurbolinksJsonEncoder {
+    /**
+     * <p>Called on the thread that runs the Javascript, for every value the library can't encode,
+     * including values nested in maps, collections and arrays.</p>
+     *
+     * @param value The value, never null.
+     * @return The value as JSON, to be passed to Javascript as is.
+     */
+    String encode(Object value);
+}
@@ -0,0 +1,175 @@
+package com.basecamp.turbolinks;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * <p>Encodes Javascript function arguments as JSON, without reflection on the values or any
+ * third-party library.</p>
+ *
+ * <p>Strings are escaped the same way Gson does with HTML escaping disabled: quotes, backslashes
+ * and control characters, as well as U+2028 and U+2029, which end a line in Javascript even inside
+ * a string literal. Nothing else is escaped, so non-ASCII text is passed through as is.</p>
+ */
+class TurbolinksJsonWriter {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Encodes each argument and joins them with commas, ready to go between a function call's
+     * parentheses.</p>
+     *
+     * @param params  The arguments, or null for none.
+     * @param encoder Encodes values the writer doesn't know, or null.
+     * @return The encoded arguments.
+     * @throws IllegalArgumentException If an argument can't be encoded.
+     */
+    static String encodeArguments(Object[] params, TurbolinksJsonEncoder encoder) {
+        if (params == null) return "";
+
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) json.append(',');
+            write(json, params[i], encoder);
+        }
+
+        return json.toString();
+    }
+
+    /**
+     * <p>Encodes a single value.</p>
+     *
+     * @param value   The value.
+     * @param encoder Encodes values the writer doesn't know, or null.
+     * @return The value as JSON.
+     * @throws IllegalArgumentException If the value can't be encoded.
+     */
+    static String encode(Object value, TurbolinksJsonEncoder encoder) {
+        StringBuilder json = new StringBuilder();
+        write(json, value, encoder);
+        return json.toString();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static void write(StringBuilder json, Object value, TurbolinksJsonEncoder encoder) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            writeString(json, value.toString());
+        } else if (value instanceof Boolean) {
+            json.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new IllegalArgumentException(number + " is not a valid JSON number.");
+            }
+            json.append(value.toString());
+        } else if (value instanceof Number) {
+            json.append(value.toString());
+        } else if (value instanceof Enum) {
+            writeString(json, ((Enum) value).name());
+        } else if (value instanceof JSONObject || value instanceof JSONArray) {
+            json.append(value.toString());
+        } else if (value instanceof Map) {
+            writeMap(json, (Map<?, ?>) value, encoder);
+        } else if (value instanceof Iterable) {
+            writeIterable(json, ((Iterable<?>) value).iterator(), encoder);
+        } else if (value instanceof Object[]) {
+            writeIterable(json, Arrays.asList((Object[]) value).iterator(), encoder);
+        } else if (encoder != null) {
+            json.append(encoder.encode(value));
+        } else {
+            throw new IllegalArgumentException("Can't encode " + value.getClass().getName() +
+                " as JSON. Set a TurbolinksJsonEncoder to encode it.");
+        }
+    }
+
+    private static void writeMap(StringBuilder json, Map<?, ?> map, TurbolinksJsonEncoder encoder) {
+        boolean first = true;
+        json.append('{');
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) json.append(',');
+            first = false;
+
+            writeString(json, String.valueOf(entry.getKey()));
+            json.append(':');
+            write(json, entry.getValue(), encoder);
+        }
+
+        json.append('}');
+    }
+
+    private static void writeIterable(StringBuilder json, Iterator<?> iterator, TurbolinksJsonEncoder encoder) {
+        json.append('[');
+
+        while (iterator.hasNext()) {
+            write(json, iterator.next(), encoder);
+            if (iterator.hasNext()) json.append(',');
+        }
+
+        json.append(']');
+    }
+
+    private static void writeString(StringBuilder json, String value) {
+        json.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                case '\b':
+                    json.append("\\b");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\f':
+                    json.append("\\f");
+                    break;
+                case '\u2028':
+                case '\u2029':
+                    appendUnicodeEscape(json, c);
+                    break;
+                default:
+                    if (c < 0x20) {
+                        appendUnicodeEscape(json, c);
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+
+        json.append('"');
+    }
+
+    private static void appendUnicodeEscape(StringBuilder json, char c) {
+        json.append("\\u")
+            .append(HEX_DIGITS[(c >> 12) & 0xf])
+            .append(HEX_DIGITS[(c >> 8) & 0xf])
+            .append(HEX_DIGITS[(c >> 4) & 0xf])
+            .append(HEX_DIGITS[c & 0xf]);
+    }
+}
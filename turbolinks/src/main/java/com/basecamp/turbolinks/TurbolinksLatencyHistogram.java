@@ -0,0 +1,129 @@
+package com.basecamp.turbolinks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A fixed-size, lock-free histogram of latencies in milliseconds, with logarithmic buckets like
+ * HdrHistogram's: every power of two is split into {@link #SUB_BUCKETS} linear buckets, so a
+ * recorded value is off by at most 12.5%. Values from 0 up to {@link #MAX_VALUE} fit in
+ * {@link #BUCKET_COUNT} buckets, larger ones are clamped.</p>
+ *
+ * <p>Recording never allocates or locks, and is safe from any thread. A snapshot resets the
+ * counts it reads, so a value recorded concurrently lands in either this snapshot or the next one,
+ * and is never lost.</p>
+ */
+class TurbolinksLatencyHistogram {
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 21;
+    static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1; // About 70 minutes
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Records a latency.</p>
+     *
+     * @param value The latency in milliseconds. Negative values count as 0.
+     */
+    void record(long value) {
+        long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+
+        counts.incrementAndGet(bucketIndex(clamped));
+        sum.addAndGet(clamped);
+
+        long currentMax = max.get();
+        while (clamped > currentMax && !max.compareAndSet(currentMax, clamped)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * <p>Copies the counts recorded so far and resets them.</p>
+     *
+     * @return The counts, indexed by bucket, followed by the sum and the max.
+     */
+    long[] snapshotAndReset() {
+        long[] snapshot = new long[BUCKET_COUNT + 2];
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.getAndSet(i, 0);
+        }
+
+        snapshot[BUCKET_COUNT] = sum.getAndSet(0);
+        snapshot[BUCKET_COUNT + 1] = max.getAndSet(0);
+
+        return snapshot;
+    }
+
+    /**
+     * <p>Finds the bucket a value is counted in.</p>
+     *
+     * @param value A value from 0 to {@link #MAX_VALUE}.
+     * @return The bucket index.
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index A bucket index.
+     * @return The lowest value counted in the bucket.
+     */
+    static long lowestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param index A bucket index.
+     * @return The highest value counted in the bucket.
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return lowestValue(index) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * <p>Finds a percentile in a snapshot, as the highest value of the bucket it falls in, but no
+     * higher than the max.</p>
+     *
+     * @param snapshot   A snapshot from {@link #snapshotAndReset()}.
+     * @param count      The total count in the snapshot.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The percentile value, or 0 if the snapshot is empty.
+     */
+    static long percentile(long[] snapshot, long count, double percentile) {
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), snapshot[BUCKET_COUNT + 1]);
+            }
+        }
+
+        return snapshot[BUCKET_COUNT + 1];
+    }
+}
@@ -0,0 +1,250 @@
+package com.basecamp.turbolinks;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Aggregates the session's cold boot, visit and render times per route, in fixed-size
+ * latency histograms, so apps can report percentiles for a whole fleet instead of every visit.
+ * Get it with {@link TurbolinksSession#getLatencyStats()}, and export it on your own schedule with
+ * {@link #snapshotAndResetJson()}.</p>
+ *
+ * <p>Locations are collapsed into routes by their path, with numeric and identifier-like segments
+ * replaced by ":id", so /projects/12/todos/34 and /projects/56/todos/78 share a route. At most
+ * {@link #MAX_ROUTES} routes are kept, later ones are counted under {@link #OTHER_ROUTE}, so memory
+ * stays bounded no matter how many distinct locations are visited.</p>
+ */
+public class TurbolinksLatencyStats {
+    /**
+     * Milliseconds from the start of a cold boot until Turbolinks is ready.
+     */
+    public static final String COLD_BOOT_TIME = "coldBootTime";
+
+    /**
+     * Milliseconds from the start of a Turbolinks visit until it completes.
+     */
+    public static final String VISIT_TIME = "visitTime";
+
+    /**
+     * Milliseconds from a visit's response until it's rendered.
+     */
+    public static final String RENDER_TIME = "renderTime";
+
+    public static final String OTHER_ROUTE = "other";
+    public static final int MAX_ROUTES = 32;
+
+    static final String[] METRICS = {COLD_BOOT_TIME, VISIT_TIME, RENDER_TIME};
+    static final double[] PERCENTILES = {50, 95, 99};
+    static final String ID_SEGMENT = ":id";
+
+    private final ConcurrentHashMap<String, TurbolinksLatencyHistogram[]> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger routeCount = new AtomicInteger();
+    private volatile long intervalStart = System.currentTimeMillis();
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Exports the latencies recorded since the last export, and resets them. Routes without
+     * any latencies are left out.</p>
+     *
+     * <p>The blob has the interval's start and end, in milliseconds since the epoch, and for each
+     * route and metric the count, sum, max, p50, p95 and p99, plus the non-empty buckets as
+     * [lowest value, count] pairs so that exports from many devices can be merged.</p>
+     *
+     * <pre>
+     * {"start":1570000000000,"end":1570000060000,"routes":{"/projects/:id":{"visitTime":
+     * {"count":3,"sum":420,"max":180,"p50":127,"p95":180,"p99":180,"buckets":[[112,1],[120,1],[176,1]]}}}}
+     * </pre>
+     *
+     * @return The JSON blob.
+     */
+    public String snapshotAndResetJson() {
+        JSONObject json = new JSONObject();
+        JSONObject routesJson = new JSONObject();
+        long end = System.currentTimeMillis();
+
+        try {
+            json.put("start", intervalStart);
+            json.put("end", end);
+            intervalStart = end;
+
+            for (Map.Entry<String, TurbolinksLatencyHistogram[]> route : routes.entrySet()) {
+                JSONObject routeJson = new JSONObject();
+
+                for (int i = 0; i < METRICS.length; i++) {
+                    JSONObject metricJson = toJson(route.getValue()[i].snapshotAndReset());
+                    if (metricJson != null) routeJson.put(METRICS[i], metricJson);
+                }
+
+                if (routeJson.length() > 0) routesJson.put(route.getKey(), routeJson);
+            }
+
+            json.put("routes", routesJson);
+        } catch (JSONException e) {
+            TurbolinksLog.e("Error exporting latency stats: " + e.toString());
+        }
+
+        return json.toString();
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Records a latency for a route. Doesn't allocate unless it's the route's first latency.</p>
+     *
+     * @param route  A route from {@link #routeFor(String)}.
+     * @param metric One of the metric constants.
+     * @param value  The latency in milliseconds.
+     */
+    void record(String route, String metric, long value) {
+        int metricIndex = indexOf(metric);
+        if (route == null || metricIndex < 0) return;
+
+        histogramsFor(route)[metricIndex].record(value);
+    }
+
+    /**
+     * <p>Collapses a location into its route: its path, with numeric and identifier-like segments
+     * replaced by ":id", and without its query or fragment.</p>
+     *
+     * @param location An absolute URL.
+     * @return The route.
+     */
+    static String routeFor(String location) {
+        if (location == null) return OTHER_ROUTE;
+
+        int start = location.indexOf("://");
+        start = start < 0 ? 0 : location.indexOf('/', start + 3);
+        if (start < 0) return "/";
+
+        StringBuilder route = new StringBuilder();
+        int i = start;
+
+        while (i < location.length()) {
+            char c = location.charAt(i);
+            if (c == '?' || c == '#') break;
+
+            if (c == '/') {
+                route.append('/');
+                i++;
+                continue;
+            }
+
+            int segmentEnd = i;
+            while (segmentEnd < location.length() && "/?#".indexOf(location.charAt(segmentEnd)) < 0) {
+                segmentEnd++;
+            }
+
+            if (isIdentifier(location, i, segmentEnd)) {
+                route.append(ID_SEGMENT);
+            } else {
+                route.append(location, i, segmentEnd);
+            }
+            i = segmentEnd;
+        }
+
+        return route.length() > 0 ? route.toString() : "/";
+    }
+
+    /**
+     * @return The number of routes kept, including {@link #OTHER_ROUTE}.
+     */
+    int getRouteCount() {
+        return routes.size();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private TurbolinksLatencyHistogram[] histogramsFor(String route) {
+        TurbolinksLatencyHistogram[] histograms = routes.get(route);
+        if (histograms != null) return histograms;
+
+        // Reserve a slot before adding, so racing threads can't push the table over its bound
+        boolean reserved = routeCount.incrementAndGet() <= MAX_ROUTES;
+        if (!reserved) {
+            routeCount.decrementAndGet();
+            route = OTHER_ROUTE;
+
+            histograms = routes.get(route);
+            if (histograms != null) return histograms;
+        }
+
+        TurbolinksLatencyHistogram[] created = new TurbolinksLatencyHistogram[METRICS.length];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = new TurbolinksLatencyHistogram();
+        }
+
+        histograms = routes.putIfAbsent(route, created);
+        if (histograms != null) {
+            if (reserved) routeCount.decrementAndGet(); // Lost the race, give the slot back
+            return histograms;
+        }
+
+        return created;
+    }
+
+    private static JSONObject toJson(long[] snapshot) throws JSONException {
+        int bucketCount = TurbolinksLatencyHistogram.BUCKET_COUNT;
+        JSONArray buckets = new JSONArray();
+        long count = 0;
+
+        for (int i = 0; i < bucketCount; i++) {
+            if (snapshot[i] == 0) continue;
+
+            count += snapshot[i];
+            buckets.put(new JSONArray().put(TurbolinksLatencyHistogram.lowestValue(i)).put(snapshot[i]));
+        }
+
+        if (count == 0) return null;
+
+        JSONObject json = new JSONObject();
+        json.put("count", count);
+        json.put("sum", snapshot[bucketCount]);
+        json.put("max", snapshot[bucketCount + 1]);
+
+        for (double percentile : PERCENTILES) {
+            json.put("p" + (int) percentile, TurbolinksLatencyHistogram.percentile(snapshot, count, percentile));
+        }
+
+        json.put("buckets", buckets);
+        return json;
+    }
+
+    private static int indexOf(String metric) {
+        for (int i = 0; i < METRICS.length; i++) {
+            if (METRICS[i].equals(metric)) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * <p>Determines whether a path segment is an identifier rather than a name: all digits, or a
+     * long run of hex digits and dashes, like a UUID or a digest.</p>
+     */
+    private static boolean isIdentifier(String location, int start, int end) {
+        boolean digitsOnly = true;
+        boolean hexOnly = true;
+
+        for (int i = start; i < end; i++) {
+            char c = location.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+
+            digitsOnly = digitsOnly && digit;
+            hexOnly = hexOnly && (digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-');
+        }
+
+        return end > start && (digitsOnly || (hexOnly && end - start >= 16));
+    }
+}
@@ -0,0 +1,110 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.os.Handler;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Carries named messages from the page to app handlers over the session's single Javascript
+ * interface, instead of a Javascript interface per app object.</p>
+ *
+ * <p>The bridge batches the messages posted during an animation frame into one JSON array, so
+ * there's a single call into Java per frame however many messages the page posts. That call only
+ * hands the batch to the executor and returns, so the page's Javascript never waits on parsing or
+ * app code.</p>
+ */
+class TurbolinksMessageChannel {
+    static final String NAME = "name";
+    static final String PAYLOAD = "payload";
+
+    private final Map<String, TurbolinksMessageHandler> handlers = new ConcurrentHashMap<>();
+    private volatile Executor executor;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates a channel that dispatches on the main thread.</p>
+     *
+     * @param context Any Android context.
+     */
+    TurbolinksMessageChannel(Context context) {
+        final Handler handler = new Handler(context.getMainLooper());
+
+        this.executor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                handler.post(runnable);
+            }
+        };
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    void addHandler(String name, TurbolinksMessageHandler handler) {
+        handlers.put(name, handler);
+    }
+
+    void removeHandler(String name) {
+        handlers.remove(name);
+    }
+
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * <p>Hands a batch of messages to the executor. Returns right away, so it's safe to call from
+     * the Javascript bridge thread.</p>
+     *
+     * @param messagesJson A JSON array of objects with a name and a payload.
+     */
+    void receive(final String messagesJson) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(messagesJson);
+            }
+        });
+    }
+
+    /**
+     * <p>Parses a batch of messages and passes each one to its handler, in order.</p>
+     *
+     * @param messagesJson A JSON array of objects with a name and a payload.
+     */
+    void dispatch(String messagesJson) {
+        JSONArray messages;
+
+        try {
+            messages = new JSONArray(messagesJson);
+        } catch (JSONException e) {
+            TurbolinksLog.e("Error parsing bridge messages: " + e.toString());
+            return;
+        }
+
+        for (int i = 0; i < messages.length(); i++) {
+            JSONObject message = messages.optJSONObject(i);
+            if (message == null) continue;
+
+            String name = message.optString(NAME);
+            TurbolinksMessageHandler handler = handlers.get(name);
+
+            if (handler != null) {
+                handler.onMessage(name, message.optJSONObject(PAYLOAD));
+            } else {
+                TurbolinksLog.d("No handler for bridge message: " + name);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.basecamp.turbolinks;
+
+import org.json.JSONObject;
+
+/**
+ * <p>Receives named messages posted by the page with
+ * <code>window.webView.postMessage(name, payload)</code>. Register one with
+ * {@link TurbolinksSession#addMessageHandler(String, TurbolinksMessageHandler)}.</p>
+ */
+public interface TurbolinksMessageHandler {
+    /**
+     * <p>Called on the session's message executor -- the main thread unless set otherwise with
+     * {@link TurbolinksSession#setMessageExecutor(java.util.concurrent.Executor)}. Messages are
+     * delivered in the order the page posted them.</p>
+     *
+     * @param name    The message name the handler was registered for.
+     * @param payload The message payload, or null if the page didn't post an object.
+     */
+    void onMessage(String name, JSONObject payload);
+}
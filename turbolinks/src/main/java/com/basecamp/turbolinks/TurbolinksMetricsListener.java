@@ -0,0 +1,112 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Receives timing and counter metrics recorded by a {@link TurbolinksSession}. Set one with
+ * {@link TurbolinksSession#setMetricsListener(TurbolinksMetricsListener)}.</p>
+ *
+ * <p>Metrics can be recorded from the main thread or from the WebView's Javascript bridge thread,
+ * so implementations should be thread safe and return quickly.</p>
+ */
+public interface TurbolinksMetricsListener {
+    /**
+     * Bridge events run together in one main thread message, after stale and superseded events
+     * were dropped.
+     */
+    String BRIDGE_QUEUE_DEPTH = "bridgeQueueDepth";
+
+    /**
+     * Bridge events dropped before running on the main thread, because their visit was no longer
+     * current, a newer event replaced them, or the queue was full.
+     */
+    String BRIDGE_EVENTS_DROPPED = "bridgeEventsDropped";
+
+    /**
+     * Turbolinks adapter events delivered together in one call across the Javascript bridge.
+     */
+    String BRIDGE_EVENTS_PER_BATCH = "bridgeEventsPerBatch";
+
+    /**
+     * Counted when a failed cold boot is retried, according to the session's retry policy.
+     */
+    String COLD_BOOT_RETRIED = "coldBootRetried";
+
+    /**
+     * Counted when a cold boot phase misses its deadline. See
+     * {@link TurbolinksSession#setColdBootTimeout(String, long)}.
+     */
+    String COLD_BOOT_STALLED = "coldBootStalled";
+
+    /**
+     * Counted when a failed visit is retried as a Turbolinks visit, according to the session's
+     * retry policy.
+     */
+    String VISIT_RETRIED = "visitRetried";
+
+    /**
+     * Milliseconds between Turbolinks rendering a visit and the render detection strategy
+     * reporting it as visible.
+     */
+    String RENDER_DETECTION_LATENCY = "renderDetectionLatency";
+
+    /**
+     * Counted when the WebView's render process crashed and the WebView was replaced.
+     */
+    String RENDER_PROCESS_CRASHED = "renderProcessCrashed";
+
+    /**
+     * Counted when the WebView's render process was killed by the system, typically to reclaim
+     * memory, and the WebView was replaced.
+     */
+    String RENDER_PROCESS_KILLED = "renderProcessKilled";
+
+    /**
+     * Milliseconds between the render process going away and Turbolinks being ready again in the
+     * replacement WebView.
+     */
+    String RENDER_PROCESS_RECOVERY_TIME = "renderProcessRecoveryTime";
+
+    /**
+     * Milliseconds a visit or cold boot held back network images before releasing them. See
+     * {@link TurbolinksWebViewProfile#networkImagesBlockedUntilRender(boolean)}.
+     */
+    String IMAGES_DEFERRED_TIME = "imagesDeferredTime";
+
+    /**
+     * Milliseconds from the start of a visit until its response is rendered, for visits that
+     * loaded network images alongside the page.
+     */
+    String TIME_TO_RENDER = "timeToRender";
+
+    /**
+     * Milliseconds from the start of a visit until its response is rendered, for visits that held
+     * back network images until then. Compare with {@link #TIME_TO_RENDER} to see what deferring
+     * images saves.
+     */
+    String TIME_TO_RENDER_IMAGES_DEFERRED = "timeToRenderImagesDeferred";
+
+    /**
+     * Counted when navigating back to a page swapped in its cached WebView, without a visit.
+     */
+    String WEBVIEW_CACHE_HIT = "webViewCacheHit";
+
+    /**
+     * Counted when navigating back to a page whose cached WebView was evicted, so it was restored
+     * with a visit instead.
+     */
+    String WEBVIEW_CACHE_MISS = "webViewCacheMiss";
+
+    /**
+     * Milliseconds a background throttled WebView ran before being paused. Summed per session, it
+     * shows which sessions keep their WebView busy.
+     */
+    String WEBVIEW_RUNNING_TIME = "webViewRunningTime";
+
+    /**
+     * <p>Called when the session records a metric.</p>
+     *
+     * @param metric   The metric name, one of the constants defined in this interface.
+     * @param location The session's current location when the metric was recorded.
+     * @param value    The metric value. Timings are in milliseconds.
+     */
+    void onMetricRecorded(String metric, String location, long value);
+}
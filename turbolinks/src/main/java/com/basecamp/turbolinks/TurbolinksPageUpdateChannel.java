@@ -0,0 +1,412 @@
+package com.basecamp.turbolinks;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.webkit.CookieManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Receives HTML fragment updates for the current page from a server-sent events stream, and
+ * hands them to the page in batches, so a live page stays current without a full visit for every
+ * change.</p>
+ *
+ * <p>Each event's data is a JSON object with an action, the id of the target element, and the
+ * HTML for the action, like {"action":"append","target":"messages","html":"&lt;li&gt;...&lt;/li&gt;"}.
+ * The actions are replace, update, append, prepend and remove. The bridge applies every update
+ * received during an animation frame at once.</p>
+ *
+ * <p>The stream belongs to the page it was connected for, and is closed as soon as the session
+ * moves to another location. Each request sends the WebView's cookies for the stream URL and its
+ * User-Agent, so the server sees the same user as the page.</p>
+ *
+ * <p>The stream is read on its own thread, and reconnects with jittered backoff when it fails or
+ * ends, resuming from the last event id. Updates are buffered on the main thread while the page
+ * can't take them, like while the WebView is paused. If the buffer fills up, the updates are
+ * dropped and the page is refreshed with a visit once it can take updates again.</p>
+ */
+class TurbolinksPageUpdateChannel {
+    static final int MAX_BUFFERED_UPDATES = 200;
+    static final int CONNECT_TIMEOUT = 10 * 1000;
+    static final int READ_TIMEOUT = 60 * 1000; // Servers should send a comment line more often than this
+    static final List<String> ACTIONS = Arrays.asList("replace", "update", "append", "prepend", "remove");
+    static final TurbolinksRetryPolicy DEFAULT_RECONNECT_POLICY = new TurbolinksRetryPolicy(Integer.MAX_VALUE, 1000, 60 * 1000);
+
+    private final Target target;
+    private final Handler handler;
+    private final Random random;
+    private final ArrayDeque<JSONObject> buffer = new ArrayDeque<>();
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            flush();
+        }
+    };
+    private boolean flushScheduled;
+    private boolean overflowed;
+    private Stream stream;
+
+    /**
+     * <p>Where page updates are applied. Called on the main thread.</p>
+     */
+    interface Target {
+        /**
+         * @return Whether the page can take updates now.
+         */
+        boolean isReadyForUpdates();
+
+        /**
+         * @param updates The updates to apply to the page, in order.
+         */
+        void applyUpdates(JSONArray updates);
+
+        /**
+         * <p>Refreshes the page, since updates for it were dropped.</p>
+         */
+        void refresh();
+    }
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * @param target The page updates are applied to.
+     * @param looper The main looper.
+     * @param random The source of the reconnect jitter.
+     */
+    TurbolinksPageUpdateChannel(Target target, Looper looper, Random random) {
+        this.target = target;
+        this.handler = new Handler(looper);
+        this.random = random;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Starts reading a stream, closing the current one. Must be called on the main thread.</p>
+     *
+     * @param url             The stream URL.
+     * @param pageLocation    The location of the page the updates are for.
+     * @param userAgent       The WebView's User-Agent, or null.
+     * @param reconnectPolicy When and how many times to reconnect.
+     */
+    void connect(String url, String pageLocation, String userAgent, TurbolinksRetryPolicy reconnectPolicy) {
+        disconnect();
+
+        stream = new Stream(url, pageLocation, userAgent, reconnectPolicy);
+        stream.start();
+    }
+
+    /**
+     * <p>Closes the current stream if it was connected for another page. Must be called on the main
+     * thread.</p>
+     *
+     * @param location The location the session is moving to.
+     */
+    void locationChanged(String location) {
+        if (stream == null || TextUtils.equals(location, stream.pageLocation)) return;
+
+        TurbolinksLog.d("Page update stream closed, location changed: " + location);
+        disconnect();
+    }
+
+    /**
+     * @return Whether a stream is connected, or reconnecting.
+     */
+    boolean isConnected() {
+        return stream != null;
+    }
+
+    /**
+     * <p>Closes the current stream, if any, and drops buffered updates. Must be called on the main
+     * thread.</p>
+     */
+    void disconnect() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+
+        buffer.clear();
+        overflowed = false;
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+    }
+
+    /**
+     * <p>Hands buffered updates to the page in one batch if it can take them, or refreshes the page
+     * if updates were dropped. Must be called on the main thread.</p>
+     */
+    void flush() {
+        if (buffer.isEmpty() && !overflowed) return;
+        if (!target.isReadyForUpdates()) return;
+
+        if (overflowed) {
+            overflowed = false;
+            buffer.clear();
+            target.refresh();
+            return;
+        }
+
+        JSONArray updates = new JSONArray();
+        for (JSONObject update : buffer) {
+            updates.put(update);
+        }
+        buffer.clear();
+
+        target.applyUpdates(updates);
+    }
+
+    /**
+     * <p>Buffers an update and schedules a flush, so updates arriving together go to the page in
+     * one batch. Must be called on the main thread.</p>
+     *
+     * @param update A validated update.
+     */
+    void enqueue(JSONObject update) {
+        if (overflowed) return;
+
+        if (buffer.size() >= MAX_BUFFERED_UPDATES) {
+            TurbolinksLog.d("Page update buffer full, dropping " + buffer.size() + " updates");
+            overflowed = true;
+            buffer.clear();
+            return;
+        }
+
+        buffer.add(update);
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.post(flushRunnable);
+        }
+    }
+
+    /**
+     * @return The number of buffered updates.
+     */
+    int getBufferedCount() {
+        return buffer.size();
+    }
+
+    /**
+     * @return Whether updates were dropped since the last flush.
+     */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * <p>Parses an event's data into an update.</p>
+     *
+     * @param data The event data.
+     * @return The update, or null if it isn't a valid update.
+     */
+    static JSONObject parseUpdate(String data) {
+        try {
+            JSONObject update = new JSONObject(data);
+            String action = update.optString("action");
+
+            if (!ACTIONS.contains(action) || update.optString("target").isEmpty()) return null;
+            if (!action.equals("remove") && !update.has("html")) return null;
+
+            return update;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------
+    // Stream
+    // ---------------------------------------------------
+
+    /**
+     * <p>Reads one stream URL on its own thread, reconnecting until it's closed, the server sends
+     * a status that isn't worth retrying, or the reconnect policy runs out.</p>
+     */
+    private class Stream implements Runnable {
+        private final String url;
+        private final String pageLocation;
+        private final String userAgent;
+        private final TurbolinksRetryPolicy reconnectPolicy;
+        private final Thread thread;
+        private volatile boolean closed;
+        private volatile HttpURLConnection connection;
+        private String lastEventId;
+        private long reconnectDelay;
+
+        Stream(String url, String pageLocation, String userAgent, TurbolinksRetryPolicy reconnectPolicy) {
+            this.url = url;
+            this.pageLocation = pageLocation;
+            this.userAgent = userAgent;
+            this.reconnectPolicy = reconnectPolicy;
+            this.thread = new Thread(this, "Turbolinks page updates");
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void close() {
+            closed = true;
+            thread.interrupt();
+
+            HttpURLConnection connection = this.connection;
+            if (connection != null) connection.disconnect(); // Unblocks a pending read
+        }
+
+        @Override
+        public void run() {
+            int retry = 0;
+
+            while (!closed) {
+                int statusCode = read();
+                if (closed) return;
+
+                if (statusCode == HttpURLConnection.HTTP_OK) {
+                    retry = 0; // The stream was up, start over with the shortest delay
+                } else if (statusCode == HttpURLConnection.HTTP_NO_CONTENT) {
+                    TurbolinksLog.d("Page update stream closed by the server");
+                    return;
+                } else if (!reconnectPolicy.isRetryable(statusCode) || retry >= reconnectPolicy.getMaxRetries()) {
+                    TurbolinksLog.e("Page update stream closed, status code: " + statusCode);
+                    return;
+                }
+
+                long delay = Math.max(reconnectDelay, reconnectPolicy.getDelay(retry++, random));
+                TurbolinksLog.d("Page update stream reconnecting in " + delay + " ms");
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * <p>Connects and reads events until the stream ends or fails.</p>
+         *
+         * @return The response status code, or 0 if the connection failed.
+         */
+        private int read() {
+            HttpURLConnection connection = null;
+            int statusCode = 0;
+
+            try {
+                connection = (HttpURLConnection) new URL(url).openConnection();
+                connection.setConnectTimeout(CONNECT_TIMEOUT);
+                connection.setReadTimeout(READ_TIMEOUT);
+                connection.setRequestProperty("Accept", "text/event-stream");
+                connection.setRequestProperty("Cache-Control", "no-cache");
+                if (userAgent != null) {
+                    connection.setRequestProperty("User-Agent", userAgent);
+                }
+
+                String cookie = CookieManager.getInstance().getCookie(url); // Read on every connect, so reconnects pick up new sessions
+                if (cookie != null) {
+                    connection.setRequestProperty("Cookie", cookie);
+                }
+
+                if (lastEventId != null) {
+                    connection.setRequestProperty("Last-Event-ID", lastEventId);
+                }
+
+                this.connection = connection;
+                if (closed) return 0;
+
+                statusCode = connection.getResponseCode();
+                if (statusCode != HttpURLConnection.HTTP_OK) return statusCode;
+
+                TurbolinksLog.d("Page update stream connected: " + url);
+                readEvents(new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8")));
+                return statusCode;
+            } catch (IOException e) {
+                if (!closed) TurbolinksLog.d("Page update stream failed: " + e.toString());
+                return statusCode;
+            } finally {
+                if (connection != null) connection.disconnect();
+            }
+        }
+
+        /**
+         * <p>Parses server-sent events, as in the EventSource spec: fields until a blank line, which
+         * dispatches the event. Only "message" and "update" events carry page updates.</p>
+         */
+        private void readEvents(BufferedReader reader) throws IOException {
+            StringBuilder data = new StringBuilder();
+            String event = null;
+            String line;
+
+            while (!closed && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    if (data.length() > 0 && (event == null || event.equals("message") || event.equals("update"))) {
+                        dispatch(data.toString());
+                    }
+
+                    data.setLength(0);
+                    event = null;
+                    continue;
+                }
+
+                if (line.startsWith(":")) continue; // A comment, typically a keep-alive
+
+                int colon = line.indexOf(':');
+                String field = colon < 0 ? line : line.substring(0, colon);
+                String value = colon < 0 ? "" : line.substring(line.startsWith(" ", colon + 1) ? colon + 2 : colon + 1);
+
+                switch (field) {
+                    case "data":
+                        if (data.length() > 0) data.append('\n');
+                        data.append(value);
+                        break;
+                    case "event":
+                        event = value;
+                        break;
+                    case "id":
+                        lastEventId = value;
+                        break;
+                    case "retry":
+                        try {
+                            reconnectDelay = Long.parseLong(value);
+                        } catch (NumberFormatException e) {
+                            // Ignored, as the spec says
+                        }
+                        break;
+                }
+            }
+        }
+
+        private void dispatch(String data) {
+            final JSONObject update = parseUpdate(data);
+
+            if (update == null) {
+                TurbolinksLog.d("Ignoring invalid page update: " + data);
+                return;
+            }
+
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!closed) enqueue(update);
+                }
+            });
+        }
+    }
+}
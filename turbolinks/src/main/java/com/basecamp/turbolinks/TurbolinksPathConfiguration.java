@@ -0,0 +1,364 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Per-URL navigation rules loaded from a JSON file bundled with the app, and optionally
+ * refreshed from your server so behavior can change without shipping a release.</p>
+ *
+ * <pre>
+ * {
+ *   "rules": [
+ *     {
+ *       "patterns": ["/projects/:id/edit", "/messages/new"],
+ *       "properties": { "presentation": "modal", "pull_to_refresh_enabled": false }
+ *     },
+ *     {
+ *       "host": "*.example.com",
+ *       "patterns": ["/reports/*"],
+ *       "properties": { "screenshots_enabled": false }
+ *     }
+ *   ]
+ * }
+ * </pre>
+ *
+ * <p>Patterns use the {@link TurbolinksRoute} syntax. Rules are parsed once, on a background
+ * thread, into a {@link TurbolinksRouter} index, so looking up a location's properties doesn't
+ * parse anything on the main thread. When several rules match, the most specific pattern applies:
+ * literal segments win over parameters, parameters win over wildcards, and otherwise the first
+ * rule listed wins.</p>
+ *
+ * <p>The server copy is saved to disk and used on the next launch instead of the bundled file, as
+ * long as the app hasn't been updated since. After an update the bundled file shipped with the new
+ * version is used until the server copy is refreshed. It's refreshed with a conditional request,
+ * using the ETag of the saved copy.</p>
+ */
+public class TurbolinksPathConfiguration {
+    static final String CACHE_FILE_NAME = "turbolinks_path_configuration.json";
+    static final String ETAG_FILE_NAME = "turbolinks_path_configuration.etag";
+    static final String VERSION_FILE_NAME = "turbolinks_path_configuration.version";
+    static final int TIMEOUT = 10 * 1000;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Context applicationContext;
+    private final String assetFilePath;
+    private final String remoteUrl;
+    private volatile RuleSet ruleSet = new RuleSet();
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates a path configuration. Call {@link #load()} to read the rules.</p>
+     *
+     * @param context       Any Android context.
+     * @param assetFilePath The bundled configuration file, relative to the assets directory, or null.
+     * @param remoteUrl     The URL to refresh the configuration from, or null.
+     */
+    public TurbolinksPathConfiguration(Context context, String assetFilePath, String remoteUrl) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context must not be null.");
+        }
+
+        this.applicationContext = context.getApplicationContext();
+        this.assetFilePath = assetFilePath;
+        this.remoteUrl = remoteUrl;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Loads the saved server copy, or the bundled file if there isn't one saved by this version
+     * of the app, then refreshes from
+     * the server. Runs in the background; until the rules are loaded every location gets the
+     * default properties.</p>
+     */
+    public void load() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadSavedOrBundled();
+                refreshFromServer();
+            }
+        });
+    }
+
+    /**
+     * <p>Refreshes the rules from the server in the background, if a remote URL was given.</p>
+     */
+    public void refresh() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                refreshFromServer();
+            }
+        });
+    }
+
+    /**
+     * <p>Gets the properties for a location. Safe to call from any thread.</p>
+     *
+     * @param location The location to look up.
+     * @return The properties of the most specific rule that matches, or default properties.
+     */
+    public TurbolinksPathProperties getProperties(String location) {
+        RuleSet rules = ruleSet;
+        TurbolinksRouteMatch match = rules.router.match(location);
+
+        if (match == null) return TurbolinksPathProperties.EMPTY;
+
+        return rules.properties.get(match.getRoute());
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Reads and applies the saved server copy, or the bundled file if the copy was saved by
+     * another version of the app or can't be read. Blocks, so never call on the main thread.</p>
+     */
+    void loadSavedOrBundled() {
+        File savedFile = new File(applicationContext.getFilesDir(), CACHE_FILE_NAME);
+
+        if (savedFile.exists() && !isSavedCopyCurrent()) {
+            TurbolinksLog.d("Path configuration saved by another app version, discarding it");
+            deleteSavedCopy();
+        }
+
+        if (savedFile.exists()) {
+            try {
+                ruleSet = parse(readString(new FileInputStream(savedFile)));
+                TurbolinksLog.d("Path configuration loaded from saved copy");
+                return;
+            } catch (IOException | JSONException e) {
+                TurbolinksLog.e("Error loading saved path configuration, discarding it: " + e.toString());
+                deleteSavedCopy();
+            }
+        }
+
+        if (assetFilePath == null) return;
+
+        try {
+            ruleSet = parse(readString(applicationContext.getAssets().open(assetFilePath)));
+            TurbolinksLog.d("Path configuration loaded from " + assetFilePath);
+        } catch (IOException | JSONException e) {
+            TurbolinksLog.e("Error loading path configuration: " + e.toString());
+        }
+    }
+
+    /**
+     * <p>Fetches the configuration from the server, unless it hasn't changed since the saved copy.
+     * Blocks, so never call on the main thread.</p>
+     *
+     * @return True if new rules were fetched and applied.
+     */
+    boolean refreshFromServer() {
+        if (remoteUrl == null) return false;
+
+        File savedFile = new File(applicationContext.getFilesDir(), CACHE_FILE_NAME);
+        File etagFile = new File(applicationContext.getFilesDir(), ETAG_FILE_NAME);
+        File versionFile = new File(applicationContext.getFilesDir(), VERSION_FILE_NAME);
+        HttpURLConnection connection = null;
+
+        try {
+            connection = (HttpURLConnection) new URL(remoteUrl).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+
+            if (savedFile.exists() && etagFile.exists() && isSavedCopyCurrent()) {
+                connection.setRequestProperty("If-None-Match", readString(new FileInputStream(etagFile)));
+            }
+
+            int statusCode = connection.getResponseCode();
+            if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                TurbolinksLog.d("Path configuration not modified");
+                return false;
+            }
+
+            if (statusCode != HttpURLConnection.HTTP_OK) {
+                TurbolinksLog.e("Error refreshing path configuration, status code: " + statusCode);
+                return false;
+            }
+
+            String json = readString(connection.getInputStream());
+            RuleSet refreshedRuleSet = parse(json); // Only save a copy that parses
+
+            writeString(savedFile, json);
+            writeString(versionFile, getAppVersion());
+
+            String etag = connection.getHeaderField("ETag");
+            if (etag != null) {
+                writeString(etagFile, etag);
+            } else {
+                etagFile.delete();
+            }
+
+            ruleSet = refreshedRuleSet;
+            TurbolinksLog.d("Path configuration refreshed from " + remoteUrl);
+            return true;
+        } catch (IOException | JSONException e) {
+            TurbolinksLog.e("Error refreshing path configuration: " + e.toString());
+            return false;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    /**
+     * <p>Applies rules parsed from a JSON string.</p>
+     *
+     * @param json The configuration JSON.
+     * @throws JSONException If the JSON isn't a valid configuration.
+     */
+    void loadJson(String json) throws JSONException {
+        ruleSet = parse(json);
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Parses the configuration JSON into an indexed rule set.</p>
+     */
+    private static RuleSet parse(String json) throws JSONException {
+        RuleSet rules = new RuleSet();
+        JSONArray rulesJson = new JSONObject(json).optJSONArray("rules");
+        if (rulesJson == null) return rules;
+
+        for (int i = 0; i < rulesJson.length(); i++) {
+            JSONObject ruleJson = rulesJson.getJSONObject(i);
+            JSONArray patterns = ruleJson.getJSONArray("patterns");
+            String host = ruleJson.isNull("host") ? null : ruleJson.getString("host");
+
+            Map<String, Object> propertyValues = new HashMap<>();
+            JSONObject propertiesJson = ruleJson.optJSONObject("properties");
+            if (propertiesJson != null) {
+                Iterator<String> keys = propertiesJson.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    propertyValues.put(key, propertiesJson.get(key));
+                }
+            }
+
+            TurbolinksPathProperties properties = new TurbolinksPathProperties(propertyValues);
+
+            for (int j = 0; j < patterns.length(); j++) {
+                try {
+                    TurbolinksRoute route = new TurbolinksRoute(null, host, patterns.getString(j), properties.getPresentation());
+                    rules.router.add(route);
+                    rules.properties.put(route, properties);
+                } catch (IllegalArgumentException e) {
+                    TurbolinksLog.e("Skipping invalid path configuration pattern: " + e.getMessage());
+                }
+            }
+        }
+
+        return rules;
+    }
+
+    /**
+     * <p>Whether the saved server copy was saved by the running version of the app.</p>
+     */
+    private boolean isSavedCopyCurrent() {
+        File versionFile = new File(applicationContext.getFilesDir(), VERSION_FILE_NAME);
+
+        try {
+            return versionFile.exists() && readString(new FileInputStream(versionFile)).equals(getAppVersion());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void deleteSavedCopy() {
+        new File(applicationContext.getFilesDir(), CACHE_FILE_NAME).delete();
+        new File(applicationContext.getFilesDir(), ETAG_FILE_NAME).delete();
+        new File(applicationContext.getFilesDir(), VERSION_FILE_NAME).delete();
+    }
+
+    /**
+     * <p>Identifies the installed build of the app, which changes with every update.</p>
+     */
+    @SuppressWarnings("deprecation") // versionCode is only read before API 28
+    private String getAppVersion() {
+        try {
+            PackageInfo packageInfo = applicationContext.getPackageManager().getPackageInfo(applicationContext.getPackageName(), 0);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                return String.valueOf(packageInfo.getLongVersionCode());
+            }
+
+            return String.valueOf(packageInfo.versionCode);
+        } catch (PackageManager.NameNotFoundException e) {
+            return "";
+        }
+    }
+
+    private static String readString(InputStream inputStream) throws IOException {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toString("UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * <p>Writes to a temporary file first, so a failed write never leaves a partial copy.</p>
+     */
+    private static void writeString(File file, String value) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+
+        try {
+            outputStream.write(value.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not save " + file.getName());
+        }
+    }
+
+    /**
+     * <p>An immutable set of parsed rules, swapped in as a whole so lookups never see a partially
+     * loaded configuration.</p>
+     */
+    private static class RuleSet {
+        final TurbolinksRouter router = new TurbolinksRouter();
+        final Map<TurbolinksRoute, TurbolinksPathProperties> properties = new IdentityHashMap<>();
+    }
+}
@@ -0,0 +1,93 @@
+package com.basecamp.turbolinks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>The properties a {@link TurbolinksPathConfiguration} rule applies to matching locations.</p>
+ *
+ * <p>The session applies the built-in properties itself. Any other keys in a rule's "properties"
+ * object are passed through for the app to use.</p>
+ */
+public class TurbolinksPathProperties {
+    public static final String DEFER_IMAGES = "defer_images";
+    public static final String PRESENTATION = "presentation";
+    public static final String PULL_TO_REFRESH_ENABLED = "pull_to_refresh_enabled";
+    public static final String SCREENSHOTS_ENABLED = "screenshots_enabled";
+
+    static final TurbolinksPathProperties EMPTY = new TurbolinksPathProperties(new HashMap<String, Object>());
+
+    private final Map<String, Object> properties;
+
+    /**
+     * <p>Wraps the properties parsed from a rule.</p>
+     *
+     * @param properties Property values by key: strings, booleans or numbers.
+     */
+    TurbolinksPathProperties(Map<String, Object> properties) {
+        this.properties = Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * @return How matching locations should be presented, one of the TurbolinksRouter
+     * PRESENTATION constants, or null if the rule doesn't say.
+     */
+    public String getPresentation() {
+        return getString(PRESENTATION, null);
+    }
+
+    /**
+     * @param fallback The value to return if the rule doesn't say, typically the session's
+     *                 {@link TurbolinksWebViewProfile} setting.
+     * @return Whether network images are held back until matching locations render.
+     */
+    public boolean isImagesDeferred(boolean fallback) {
+        return getBoolean(DEFER_IMAGES, fallback);
+    }
+
+    /**
+     * @return Whether pull to refresh is enabled for matching locations. Default is true.
+     */
+    public boolean isPullToRefreshEnabled() {
+        return getBoolean(PULL_TO_REFRESH_ENABLED, true);
+    }
+
+    /**
+     * @return Whether a screenshot is taken when leaving matching locations. Default is true.
+     */
+    public boolean isScreenshotsEnabled() {
+        return getBoolean(SCREENSHOTS_ENABLED, true);
+    }
+
+    /**
+     * <p>Gets a string property.</p>
+     *
+     * @param key      The property key.
+     * @param fallback The value to return if the property isn't set or isn't a string.
+     * @return The property value.
+     */
+    public String getString(String key, String fallback) {
+        Object value = properties.get(key);
+        return value instanceof String ? (String) value : fallback;
+    }
+
+    /**
+     * <p>Gets a boolean property.</p>
+     *
+     * @param key      The property key.
+     * @param fallback The value to return if the property isn't set or isn't a boolean.
+     * @return The property value.
+     */
+    public boolean getBoolean(String key, boolean fallback) {
+        Object value = properties.get(key);
+        return value instanceof Boolean ? (Boolean) value : fallback;
+    }
+
+    /**
+     * @return All properties, by key.
+     */
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+}
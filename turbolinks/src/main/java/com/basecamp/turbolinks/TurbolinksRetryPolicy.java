@@ -0,0 +1,107 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.WebViewClient;
+
+import java.util.Random;
+
+/**
+ * <p>Decides whether and when the session retries a failed cold boot or visit. Set one with
+ * {@link TurbolinksSession#setRetryPolicy(TurbolinksRetryPolicy)}.</p>
+ *
+ * <p>Only transient failures are retried: timeouts, failed host lookups and connections, and the
+ * 408, 502, 503 and 504 status codes. The delay doubles with each retry, up to the maximum
+ * delay, and is jittered so that many devices don't retry in lockstep.</p>
+ */
+public class TurbolinksRetryPolicy {
+    private final int maxRetries;
+    private final long initialDelay;
+    private final long maxDelay;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates a retry policy with exponential backoff.</p>
+     *
+     * @param maxRetries   The number of retries before the failure is reported to the adapter.
+     * @param initialDelay The delay before the first retry, in milliseconds.
+     * @param maxDelay     The longest delay between retries, in milliseconds.
+     */
+    public TurbolinksRetryPolicy(int maxRetries, long initialDelay, long maxDelay) {
+        if (maxRetries < 0 || initialDelay < 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Retries and delays must not be negative, and the max delay must not be shorter than the initial delay.");
+        }
+
+        this.maxRetries = maxRetries;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * @return The number of retries before the failure is reported to the adapter.
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * <p>Gets the delay before a retry.</p>
+     *
+     * @param retry The retry number, starting at 0.
+     * @return The delay, in milliseconds.
+     */
+    public long getDelay(int retry) {
+        long delay = initialDelay;
+
+        for (int i = 0; i < retry && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+
+        return Math.min(delay, maxDelay);
+    }
+
+    /**
+     * <p>Gets the delay before a retry, randomized between half and all of
+     * {@link #getDelay(int)}.</p>
+     *
+     * @param retry  The retry number, starting at 0.
+     * @param random The source of the jitter.
+     * @return The delay, in milliseconds.
+     */
+    public long getDelay(int retry, Random random) {
+        long delay = getDelay(retry);
+        long half = delay / 2;
+
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+
+    /**
+     * <p>Determines whether a failure is transient, and worth retrying.</p>
+     *
+     * @param errorCode A WebViewClient ERROR constant, an HTTP status code, or one of Turbolinks'
+     *                  request failures: 0 for a network failure and -1 for a timeout.
+     * @return True if the failure should be retried.
+     */
+    public boolean isRetryable(int errorCode) {
+        switch (errorCode) {
+            case 0: // Turbolinks network failure
+            case WebViewClient.ERROR_UNKNOWN: // Also Turbolinks timeout
+            case WebViewClient.ERROR_TIMEOUT:
+            case WebViewClient.ERROR_HOST_LOOKUP:
+            case WebViewClient.ERROR_CONNECT:
+            case WebViewClient.ERROR_IO:
+            case 408: // Request Timeout
+            case 502: // Bad Gateway
+            case 503: // Service Unavailable
+            case 504: // Gateway Timeout
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.basecamp.turbolinks;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A route added to a {@link TurbolinksRouter}: a path template, optional host and query rules,
+ * and how locations matching it should be presented.</p>
+ *
+ * <p>Path templates are made of literal segments, named parameters and an optional trailing
+ * wildcard, like <code>/projects/:project_id/messages/*</code>. Query rules follow a
+ * <code>?</code>, like <code>/projects/:id?tab=archived&amp;modal</code>, where a key without a
+ * value only needs to be present.</p>
+ */
+public class TurbolinksRoute {
+    static final String WILDCARD = "*";
+    static final char PARAM_PREFIX = ':';
+
+    private final String name;
+    private final String pattern;
+    private final String host;
+    private final String presentation;
+    private final String[] segments;
+    private final Map<String, String> queryRules;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * <p>Compiles a route from its pattern.</p>
+     *
+     * @param name         A name identifying the route, like the native screen to show.
+     * @param host         The host the route applies to, "*.example.com" for a domain and its
+     *                     subdomains, or null for any host.
+     * @param pattern      The path template, optionally followed by query rules.
+     * @param presentation How matching locations are presented, one of the TurbolinksRouter
+     *                     PRESENTATION constants.
+     */
+    TurbolinksRoute(String name, String host, String pattern, String presentation) {
+        if (TextUtils.isEmpty(pattern) || pattern.charAt(0) != '/') {
+            throw new IllegalArgumentException("Route pattern must start with a '/': " + pattern);
+        }
+
+        this.name = name != null ? name : pattern;
+        this.pattern = pattern;
+        this.host = TextUtils.equals(host, WILDCARD) ? null : host;
+        this.presentation = presentation;
+
+        int queryIndex = pattern.indexOf('?');
+        String path = queryIndex >= 0 ? pattern.substring(0, queryIndex) : pattern;
+        this.segments = TurbolinksRouter.splitPath(path);
+        this.queryRules = queryIndex >= 0 ? TurbolinksRouter.parseQuery(pattern.substring(queryIndex + 1)) : Collections.<String, String>emptyMap();
+
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (TextUtils.equals(segments[i], WILDCARD)) {
+                throw new IllegalArgumentException("A route wildcard must be the last segment: " + pattern);
+            }
+        }
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Returns the route's name, or its pattern if it wasn't given one.</p>
+     *
+     * @return The route name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * <p>Returns the pattern the route was added with.</p>
+     *
+     * @return The route pattern.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * <p>Returns how locations matching the route should be presented.</p>
+     *
+     * @return One of the TurbolinksRouter PRESENTATION constants.
+     */
+    public String getPresentation() {
+        return presentation;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @return The path template split into segments.
+     */
+    String[] getSegments() {
+        return segments;
+    }
+
+    /**
+     * <p>Checks the route's host and query rules, which aren't part of the router's path index.</p>
+     *
+     * @param locationHost The host of the location being matched.
+     * @param query        The parsed query of the location being matched.
+     * @return True if the location satisfies the host and query rules.
+     */
+    boolean matchesHostAndQuery(String locationHost, Map<String, String> query) {
+        if (host != null) {
+            if (locationHost == null) return false;
+
+            if (host.startsWith("*.")) {
+                String domain = host.substring(2);
+                if (!locationHost.equalsIgnoreCase(domain) && !endsWithIgnoreCase(locationHost, host.substring(1))) {
+                    return false;
+                }
+            } else if (!locationHost.equalsIgnoreCase(host)) {
+                return false;
+            }
+        }
+
+        for (Map.Entry<String, String> rule : queryRules.entrySet()) {
+            if (!query.containsKey(rule.getKey())) return false;
+            if (rule.getValue() != null && !TextUtils.equals(rule.getValue(), query.get(rule.getKey()))) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * <p>Captures the named parameters and wildcard remainder from the segments of a matched
+     * path.</p>
+     *
+     * @param pathSegments The segments of the matched path.
+     * @return The captured parameters by name, the wildcard remainder under "*".
+     */
+    Map<String, String> captureParams(String[] pathSegments) {
+        Map<String, String> params = new HashMap<>();
+
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+
+            if (segment.charAt(0) == PARAM_PREFIX) {
+                params.put(segment.substring(1), TurbolinksRouter.decode(pathSegments[i]));
+            } else if (TextUtils.equals(segment, WILDCARD)) {
+                List<String> remainder = new ArrayList<>();
+                for (int j = i; j < pathSegments.length; j++) {
+                    remainder.add(pathSegments[j]);
+                }
+                params.put(WILDCARD, TextUtils.join("/", remainder));
+            }
+        }
+
+        return params;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static boolean endsWithIgnoreCase(String value, String suffix) {
+        return value.regionMatches(true, value.length() - suffix.length(), suffix, 0, suffix.length());
+    }
+}
@@ -0,0 +1,69 @@
+package com.basecamp.turbolinks;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * <p>The result of matching a location against a {@link TurbolinksRouter}.</p>
+ */
+public class TurbolinksRouteMatch {
+    private final String location;
+    private final TurbolinksRoute route;
+    private final Map<String, String> params;
+
+    /**
+     * <p>Creates a match of a location to a route.</p>
+     *
+     * @param location The matched location.
+     * @param route    The route it matched.
+     * @param params   The parameters captured from the location's path.
+     */
+    TurbolinksRouteMatch(String location, TurbolinksRoute route, Map<String, String> params) {
+        this.location = location;
+        this.route = route;
+        this.params = Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * @return The matched location.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return The route the location matched.
+     */
+    public TurbolinksRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * <p>Convenience for the matched route's presentation.</p>
+     *
+     * @return One of the TurbolinksRouter PRESENTATION constants.
+     */
+    public String getPresentation() {
+        return route.getPresentation();
+    }
+
+    /**
+     * <p>Returns the parameters captured from the location's path, by the names used in the route
+     * pattern. A trailing wildcard's remainder is captured under "*".</p>
+     *
+     * @return An unmodifiable map of captured parameters.
+     */
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    /**
+     * <p>Gets a single captured parameter.</p>
+     *
+     * @param name The parameter name, without the leading ':'.
+     * @return The decoded parameter value, or null if it wasn't captured.
+     */
+    public String getParam(String name) {
+        return params.get(name);
+    }
+}
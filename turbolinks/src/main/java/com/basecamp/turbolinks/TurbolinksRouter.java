@@ -0,0 +1,298 @@
+package com.basecamp.turbolinks;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Matches locations to native presentation rules, so apps don't have to run their own chain of
+ * regular expressions for every proposed visit.</p>
+ *
+ * <p>Routes are compiled into an index of path segments when they're added, so matching a location
+ * takes time proportional to the number of segments in its path rather than the number of routes.
+ * When several routes could match, literal segments win over parameters, parameters win over
+ * wildcards, and otherwise the first route added wins.</p>
+ *
+ * <p>Set a router on a session with {@link TurbolinksSession#setRouter(TurbolinksRouter)}. Proposed
+ * visits are then matched on the Javascript bridge thread, before the adapter is called on the main
+ * thread. A router can be shared by several sessions.</p>
+ */
+public class TurbolinksRouter {
+    public static final String PRESENTATION_PUSH = "push";
+    public static final String PRESENTATION_REPLACE = "replace";
+    public static final String PRESENTATION_MODAL = "modal";
+    public static final String PRESENTATION_EXTERNAL = "external";
+    public static final String PRESENTATION_NATIVE = "native";
+
+    private final Node root = new Node();
+    private int routeCount;
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Adds a route for any host, named after its pattern.</p>
+     *
+     * @param pattern      The path template, optionally followed by query rules. See
+     *                     {@link TurbolinksRoute}.
+     * @param presentation How matching locations are presented, one of the PRESENTATION constants.
+     * @return The router to continue the chained calls.
+     */
+    public TurbolinksRouter addRoute(String pattern, String presentation) {
+        return addRoute(null, null, pattern, presentation);
+    }
+
+    /**
+     * <p>Adds a named route for any host.</p>
+     *
+     * @param name         A name identifying the route, like the native screen to show.
+     * @param pattern      The path template, optionally followed by query rules. See
+     *                     {@link TurbolinksRoute}.
+     * @param presentation How matching locations are presented, one of the PRESENTATION constants.
+     * @return The router to continue the chained calls.
+     */
+    public TurbolinksRouter addRoute(String name, String pattern, String presentation) {
+        return addRoute(name, null, pattern, presentation);
+    }
+
+    /**
+     * <p>Adds a named route that only applies to the given host.</p>
+     *
+     * @param name         A name identifying the route, like the native screen to show.
+     * @param host         The host the route applies to, "*.example.com" for a domain and its
+     *                     subdomains, or null for any host.
+     * @param pattern      The path template, optionally followed by query rules. See
+     *                     {@link TurbolinksRoute}.
+     * @param presentation How matching locations are presented, one of the PRESENTATION constants.
+     * @return The router to continue the chained calls.
+     */
+    public TurbolinksRouter addRoute(String name, String host, String pattern, String presentation) {
+        add(new TurbolinksRoute(name, host, pattern, presentation));
+        return this;
+    }
+
+    /**
+     * <p>Finds the route for a location.</p>
+     *
+     * @param location An absolute URL, or a path.
+     * @return The match, or null if no route matches.
+     */
+    public synchronized TurbolinksRouteMatch match(String location) {
+        if (location == null || routeCount == 0) return null;
+
+        int pathStart = 0;
+        String host = null;
+
+        int schemeEnd = location.indexOf("://");
+        if (schemeEnd >= 0) {
+            int hostStart = schemeEnd + 3;
+            pathStart = indexOfAny(location, "/?#", hostStart);
+            host = parseHost(location.substring(hostStart, pathStart));
+        }
+
+        int end = location.indexOf('#', pathStart);
+        if (end < 0) end = location.length();
+
+        int queryStart = location.indexOf('?', pathStart);
+        if (queryStart > end) queryStart = -1;
+
+        String[] segments = splitPath(location.substring(pathStart, queryStart >= 0 ? queryStart : end));
+        Map<String, String> query = queryStart >= 0 ? parseQuery(location.substring(queryStart + 1, end)) : Collections.<String, String>emptyMap();
+
+        TurbolinksRoute route = find(root, segments, 0, host, query);
+        if (route == null) return null;
+
+        return new TurbolinksRouteMatch(location, route, route.captureParams(segments));
+    }
+
+    /**
+     * @return The number of routes added to the router.
+     */
+    public synchronized int size() {
+        return routeCount;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Adds a compiled route to the index.</p>
+     *
+     * @param route The route to add.
+     */
+    synchronized void add(TurbolinksRoute route) {
+        Node node = root;
+
+        for (String segment : route.getSegments()) {
+            if (segment.equals(TurbolinksRoute.WILDCARD)) {
+                if (node.wildcard == null) node.wildcard = new Node();
+                node = node.wildcard;
+            } else if (segment.charAt(0) == TurbolinksRoute.PARAM_PREFIX) {
+                if (node.param == null) node.param = new Node();
+                node = node.param;
+            } else {
+                if (node.literals == null) node.literals = new HashMap<>();
+                Node child = node.literals.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.literals.put(segment, child);
+                }
+                node = child;
+            }
+        }
+
+        if (node.routes == null) node.routes = new ArrayList<>(1);
+        node.routes.add(route);
+        routeCount++;
+    }
+
+    /**
+     * <p>Splits a path into its non-empty segments.</p>
+     *
+     * @param path A URL path, like "/projects/1/".
+     * @return The path segments, like ["projects", "1"].
+     */
+    static String[] splitPath(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = path.length();
+            if (end > start) segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    /**
+     * <p>Parses a query string. Keys without a value map to null.</p>
+     *
+     * @param query A query string without the leading '?', like "tab=archived&amp;modal".
+     * @return The decoded query parameters.
+     */
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        int start = 0;
+
+        while (start < query.length()) {
+            int end = query.indexOf('&', start);
+            if (end < 0) end = query.length();
+
+            if (end > start) {
+                int equals = query.indexOf('=', start);
+                if (equals < 0 || equals > end) {
+                    params.put(decodeQuery(query.substring(start, end)), null);
+                } else {
+                    params.put(decodeQuery(query.substring(start, equals)), decodeQuery(query.substring(equals + 1, end)));
+                }
+            }
+
+            start = end + 1;
+        }
+
+        return params;
+    }
+
+    /**
+     * <p>Decodes percent-encoded characters, leaving '+' untouched as it's literal in paths.</p>
+     *
+     * @param value An encoded path segment.
+     * @return The decoded value.
+     */
+    static String decode(String value) {
+        return value.indexOf('%') >= 0 ? Uri.decode(value) : value;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Walks the index depth first, preferring literal segments over parameters over
+     * wildcards.</p>
+     */
+    private static TurbolinksRoute find(Node node, String[] segments, int index, String host, Map<String, String> query) {
+        if (index == segments.length) {
+            TurbolinksRoute route = firstMatching(node.routes, host, query);
+            if (route != null) return route;
+
+            // A trailing wildcard also matches nothing at all
+            return node.wildcard != null ? firstMatching(node.wildcard.routes, host, query) : null;
+        }
+
+        if (node.literals != null) {
+            Node child = node.literals.get(segments[index]);
+            if (child != null) {
+                TurbolinksRoute route = find(child, segments, index + 1, host, query);
+                if (route != null) return route;
+            }
+        }
+
+        if (node.param != null) {
+            TurbolinksRoute route = find(node.param, segments, index + 1, host, query);
+            if (route != null) return route;
+        }
+
+        if (node.wildcard != null) {
+            return firstMatching(node.wildcard.routes, host, query);
+        }
+
+        return null;
+    }
+
+    private static TurbolinksRoute firstMatching(List<TurbolinksRoute> routes, String host, Map<String, String> query) {
+        if (routes == null) return null;
+
+        for (int i = 0; i < routes.size(); i++) {
+            TurbolinksRoute route = routes.get(i);
+            if (route.matchesHostAndQuery(host, query)) return route;
+        }
+
+        return null;
+    }
+
+    private static String decodeQuery(String value) {
+        return Uri.decode(value.replace('+', ' '));
+    }
+
+    /**
+     * <p>Strips the user info and port from a URL authority.</p>
+     */
+    private static String parseHost(String authority) {
+        int userInfoEnd = authority.lastIndexOf('@');
+        String host = userInfoEnd >= 0 ? authority.substring(userInfoEnd + 1) : authority;
+
+        int portStart = host.lastIndexOf(':');
+        if (portStart >= 0 && host.indexOf(']', portStart) < 0) {
+            host = host.substring(0, portStart);
+        }
+
+        return host;
+    }
+
+    private static int indexOfAny(String value, String chars, int start) {
+        for (int i = start; i < value.length(); i++) {
+            if (chars.indexOf(value.charAt(i)) >= 0) return i;
+        }
+
+        return value.length();
+    }
+
+    /**
+     * <p>A node of the path segment index.</p>
+     */
+    private static class Node {
+        HashMap<String, Node> literals;
+        Node param;
+        Node wildcard;
+        List<TurbolinksRoute> routes;
+    }
+}
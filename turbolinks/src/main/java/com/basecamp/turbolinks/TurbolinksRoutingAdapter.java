@@ -0,0 +1,19 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>An optional extension of {@link TurbolinksAdapter} for apps that set a
+ * {@link TurbolinksRouter} on their session. Proposed visits to locations that match a route are
+ * passed here, along with the route and its captured parameters, instead of to
+ * {@link TurbolinksAdapter#visitProposedToLocationWithAction(String, String)}. Locations that don't
+ * match any route still go to the regular adapter method.</p>
+ */
+public interface TurbolinksRoutingAdapter extends TurbolinksAdapter {
+    /**
+     * <p>Called on the main thread when Turbolinks proposes a visit to a location that matched a
+     * route. The match was evaluated off the main thread.</p>
+     *
+     * @param match  The matched route, its presentation and captured parameters.
+     * @param action Whether to treat the request as an advance (navigating forward) or a replace (back).
+     */
+    void visitProposedToRoute(TurbolinksRouteMatch match, String action);
+}
@@ -9,18 +9,31 @@ import android.graphics.Bitmap;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.webkit.RenderProcessGoneDetail;
 import android.webkit.ValueCallback;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
+import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
 
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
@@ -34,21 +47,37 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     // ---------------------------------------------------
 
     boolean bridgeInjectionInProgress; // Ensures the bridge is only injected once
+    boolean bridgeInjectedOnCommit; // Bridge was injected early, before onPageFinished
+    boolean cachedResponsePreferred; // The visit's request may come from the HTTP cache, until it ends
     boolean coldBootInProgress;
+    boolean coldBootFailed; // The main frame failed, the rest of the cold boot's page load is ignored
+    boolean coldBootStallRetried; // A stalled cold boot is retried once before it's reported
     boolean restoreWithCachedSnapshot;
     boolean turbolinksIsReady; // Script finished and TL fully instantiated
     boolean screenshotsEnabled;
     boolean pullToRefreshEnabled;
     boolean webViewAttachedToNewParent;
+    boolean webViewRestoredFromCache; // The next visit can be skipped, the cached page is already showing
     int progressIndicatorDelay;
     long previousOverrideTime;
     Activity activity;
     HashMap<String, Object> javascriptInterfaces = new HashMap<>();
-    HashMap<String, String> restorationIdentifierMap = new HashMap<>();
+    HashMap<String, String> restorationIdentifierMap = new HashMap<>(); // By activity
+    HashMap<String, String> restorationLocationMap = new HashMap<>(); // The location each activity's identifier belongs to
+    HashMap<String, String> savedRestorationIdentifierMap = new HashMap<>(); // By location, restored after the process was killed
     String location;
-    String currentVisitIdentifier;
+    volatile String currentVisitIdentifier; // Set on the Javascript bridge thread
+    String renderDetection;
     TurbolinksAdapter turbolinksAdapter;
+    TurbolinksMetricsListener metricsListener;
+    TurbolinksRouter router;
+    TurbolinksPathConfiguration pathConfiguration;
     TurbolinksView turbolinksView;
+    TurbolinksVisitOptions visitOptions = new TurbolinksVisitOptions(); // Effective options of the current visit
+    volatile TurbolinksJsonEncoder jsonEncoder;
+    TurbolinksWebViewCache webViewCache;
+    TurbolinksWebViewProfile webViewProfile;
+    TurbolinksVisitRegistry visitRegistry; // Shared by every session
     View progressView;
     View progressIndicator;
 
@@ -61,11 +90,51 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     static final String ACTION_ADVANCE = "advance";
     static final String ACTION_RESTORE = "restore";
     static final String ACTION_REPLACE = "replace";
+    public static final String RENDER_DETECTION_ANIMATION_FRAME = "animationFrame";
+    public static final String RENDER_DETECTION_PAINT = "paint";
+    public static final String RENDER_DETECTION_VISUAL_STATE = "visualState";
+    public static final String COLD_BOOT_PHASE_PAGE_STARTED = "pageStarted";
+    public static final String COLD_BOOT_PHASE_PAGE_FINISHED = "pageFinished";
+    public static final String COLD_BOOT_PHASE_BRIDGE_INJECTED = "bridgeInjected";
+    public static final String COLD_BOOT_PHASE_READY = "ready";
     static final String JAVASCRIPT_INTERFACE_NAME = "TurbolinksNative";
+    static final String BRIDGE_EVENTS = "events";
+    static final String BRIDGE_EVENTS_SENT_AT = "sentAt";
+    static final String BRIDGE_EVENT_NAME = "name";
+    static final String BRIDGE_EVENT_ARGUMENTS = "args";
+    static final String BRIDGE_EVENT_TIME = "time";
     static final int PROGRESS_INDICATOR_DELAY = 500;
+    static final int MAX_SAVED_WEBVIEW_STATE_BYTES = 100 * 1024;
+    static final String STATE_KEY = "com.basecamp.turbolinks.TurbolinksSession";
+    static final String STATE_LOCATION = "location";
+    static final String STATE_RESTORATION_LOCATIONS = "restorationLocations";
+    static final String STATE_RESTORATION_VALUES = "restorationValues";
+    static final String STATE_WEBVIEW = "webView";
 
     final Context applicationContext;
-    final WebView webView;
+    final Handler handler;
+    final TurbolinksBridgeDispatcher bridgeDispatcher;
+    final TurbolinksVisitRetrier visitRetrier;
+    final TurbolinksColdBootWatchdog coldBootWatchdog;
+    final TurbolinksDebugOverlay debugOverlay;
+    final TurbolinksLatencyStats latencyStats;
+    final TurbolinksFrameMonitor frameMonitor;
+    final TurbolinksImageDeferral imageDeferral;
+    final TurbolinksPageUpdateChannel pageUpdateChannel;
+    volatile String route; // The current location's route in the latency stats, kept so bridge callbacks don't allocate
+    volatile long coldBootStartTime;
+    volatile long visitStartTime;
+    volatile long visitResponseTime;
+    final TurbolinksMessageChannel messageChannel;
+    final TurbolinksWebViewThrottle webViewThrottle;
+    final WebViewClient webViewClient;
+
+    // ---------------------------------------------------
+    // Replaceable vars
+    // ---------------------------------------------------
+
+    volatile WebView webView; // Replaced with a fresh WebView if the render process is gone, read on the JavaBridge thread
+    long renderProcessGoneTime;
 
     // ---------------------------------------------------
     // Constructor
@@ -85,26 +154,127 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         this.screenshotsEnabled = true;
         this.pullToRefreshEnabled = true;
         this.webViewAttachedToNewParent = false;
+        this.renderDetection = RENDER_DETECTION_ANIMATION_FRAME;
+        this.handler = new Handler(applicationContext.getMainLooper());
+        this.bridgeDispatcher = new TurbolinksBridgeDispatcher(this, applicationContext);
+        this.messageChannel = new TurbolinksMessageChannel(applicationContext);
+        this.debugOverlay = new TurbolinksDebugOverlay();
+        this.latencyStats = new TurbolinksLatencyStats();
+        this.frameMonitor = new TurbolinksFrameMonitor(applicationContext);
+        this.imageDeferral = new TurbolinksImageDeferral(this);
+        this.webViewThrottle = new TurbolinksWebViewThrottle(this);
+        this.webViewProfile = TurbolinksWebViewProfile.forDevice(applicationContext);
+        this.visitRegistry = TurbolinksVisitRegistry.getShared();
+
+        this.visitRetrier = new TurbolinksVisitRetrier(new TurbolinksVisitRetrier.Target() {
+            @Override
+            public void retryVisit(String location) {
+                retryFailedVisit(location);
+            }
+        }, new TurbolinksVisitRetrier.Scheduler() {
+            @Override
+            public void postDelayed(Runnable task, long delay) {
+                handler.postDelayed(task, delay);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        }, new TurbolinksSystemConnectivity(applicationContext), new Random());
+
+        this.pageUpdateChannel = new TurbolinksPageUpdateChannel(new TurbolinksPageUpdateChannel.Target() {
+            @Override
+            public boolean isReadyForUpdates() {
+                return turbolinksIsReady && !coldBootInProgress && !webViewThrottle.paused;
+            }
+
+            @Override
+            public void applyUpdates(JSONArray updates) {
+                runJavascript("webView.applyPageUpdates", updates);
+            }
+
+            @Override
+            public void refresh() {
+                TurbolinksLog.d("Page updates were dropped, refreshing: " + location);
+                visitLocationWithAction(location, ACTION_REPLACE);
+            }
+        }, applicationContext.getMainLooper(), new Random());
+
+        this.coldBootWatchdog = new TurbolinksColdBootWatchdog(applicationContext.getMainLooper(), new TurbolinksColdBootWatchdog.Listener() {
+            @Override
+            public void onColdBootStalled(String phase) {
+                coldBootStalled(phase);
+            }
+        });
 
-        this.webView = TurbolinksHelper.createWebView(applicationContext);
-        this.webView.addJavascriptInterface(this, JAVASCRIPT_INTERFACE_NAME);
-        this.webView.setWebViewClient(new WebViewClient() {
+        this.webViewClient = new WebViewClient() {
             @Override
             public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                if (view != webView) return; // A cached WebView, not the session's current one
+
                 coldBootInProgress = true;
+                bridgeInjectedOnCommit = false;
+                coldBootWatchdog.phaseCompleted(COLD_BOOT_PHASE_PAGE_STARTED);
+            }
+
+            /**
+             * The page body is committed well before onPageFinished, which waits for every
+             * subresource (images included). Injecting here lets the bridge report Turbolinks as
+             * ready as soon as the controller exists, without the window.webView round trip.
+             * The bridge itself waits for deferred scripts if Turbolinks isn't defined yet.
+             */
+            @Override
+            @TargetApi(Build.VERSION_CODES.M)
+            public void onPageCommitVisible(WebView view, String url) {
+                super.onPageCommitVisible(view, url);
+
+                if (view == webView && !coldBootFailed && !bridgeInjectionInProgress && !turbolinksIsReady) {
+                    bridgeInjectionInProgress = true;
+                    bridgeInjectedOnCommit = true;
+                    TurbolinksHelper.injectTurbolinksBridge(TurbolinksSession.this, applicationContext, webView);
+                    TurbolinksLog.d("Bridge injected on page commit");
+                    coldBootWatchdog.phaseCompleted(COLD_BOOT_PHASE_BRIDGE_INJECTED);
+                }
             }
 
             @Override
             public void onPageFinished(WebView view, final String location) {
+                if (view != webView) return;
+
+                if (coldBootFailed) { // An error page has no bridge to inject
+                    imageDeferral.release();
+                    return;
+                }
+
+                imageDeferral.releaseAfterColdBoot();
+
+                final boolean injectedOnCommit = bridgeInjectedOnCommit;
+                bridgeInjectedOnCommit = false;
+
+                if (injectedOnCommit && turbolinksIsReady) {
+                    turbolinksAdapter.onPageFinished();
+                    return;
+                }
+
+                // The bridge injected on commit may not have found Turbolinks, like when it's loaded
+                // by an async script that runs after DOMContentLoaded, so check again now that every
+                // script has run
+                coldBootWatchdog.phaseCompleted(COLD_BOOT_PHASE_PAGE_FINISHED);
+
                 String jsCall = "window.webView == null";
                 webView.evaluateJavascript(jsCall, new ValueCallback<String>() {
                     @Override
                     public void onReceiveValue(String s) {
-                        if (Boolean.parseBoolean(s) && !bridgeInjectionInProgress) {
+                        coldBootWatchdog.phaseCompleted(COLD_BOOT_PHASE_BRIDGE_INJECTED);
+
+                        if (Boolean.parseBoolean(s) && (!bridgeInjectionInProgress || injectedOnCommit)) {
                             bridgeInjectionInProgress = true;
                             TurbolinksHelper.injectTurbolinksBridge(TurbolinksSession.this, applicationContext, webView);
                             TurbolinksLog.d("Bridge injected");
 
+                            turbolinksAdapter.onPageFinished();
+                        } else if (injectedOnCommit) {
                             turbolinksAdapter.onPageFinished();
                         }
                     }
@@ -121,6 +291,10 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
              */
             @Override
             public boolean shouldOverrideUrlLoading(WebView view, String location) {
+                if (view != webView) {
+                    return true; // A cached page stays put until it's shown again
+                }
+
                 if (!turbolinksIsReady || coldBootInProgress) {
                     return false;
                 }
@@ -143,10 +317,10 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
             @Override
             public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
                 super.onReceivedError(view, errorCode, description, failingUrl);
-                resetToColdBoot();
+                if (view != webView) return;
 
-                turbolinksAdapter.onReceivedError(errorCode);
                 TurbolinksLog.d("onReceivedError: " + errorCode);
+                coldBootFailedWithError(errorCode);
             }
 
             @Override
@@ -154,13 +328,37 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
             public void onReceivedHttpError(WebView view, WebResourceRequest request, WebResourceResponse errorResponse) {
                 super.onReceivedHttpError(view, request, errorResponse);
 
-                if (request.isForMainFrame()) {
-                    resetToColdBoot();
-                    turbolinksAdapter.onReceivedError(errorResponse.getStatusCode());
+                // Called as soon as the response headers arrive, well before the error page loads
+                if (view == webView && request.isForMainFrame()) {
                     TurbolinksLog.d("onReceivedHttpError: " + errorResponse.getStatusCode());
+                    coldBootFailedWithError(errorResponse.getStatusCode());
                 }
             }
-        });
+
+            /**
+             * Chromium's renderer is commonly killed under memory pressure on low-end devices. The
+             * WebView can't be used again, so replace it rather than letting the app crash.
+             */
+            @Override
+            @TargetApi(Build.VERSION_CODES.O)
+            public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+                TurbolinksLog.e("Render process gone, crashed: " + detail.didCrash());
+
+                if (view != webView) {
+                    // A cached WebView, or one we already replaced, nothing left to recover
+                    if (webViewCache == null || !webViewCache.remove(view)) {
+                        view.destroy();
+                    }
+                    return true;
+                }
+
+                recordMetric(detail.didCrash() ? TurbolinksMetricsListener.RENDER_PROCESS_CRASHED : TurbolinksMetricsListener.RENDER_PROCESS_KILLED, 1);
+                recoverFromRenderProcessGone();
+                return true;
+            }
+        };
+
+        initWebView();
     }
 
     // ---------------------------------------------------
@@ -216,6 +414,18 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         TurbolinksLog.setDebugLoggingEnabled(enabled);
     }
 
+    /**
+     * <p>Traces cold boots, visits, requests, renders and screenshots with android.os.Trace, so they
+     * show up in Perfetto and systrace next to Chromium's own trace events. Pass your app's own
+     * <code>BuildConfig.DEBUG</code>, since the library itself is always published as a release
+     * build.</p>
+     *
+     * @param enabled If true, tracing is enabled. Default is false.
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        TurbolinksTrace.setEnabled(enabled);
+    }
+
     // ---------------------------------------------------
     // Required chained methods
     // ---------------------------------------------------
@@ -239,6 +449,8 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
             ((MutableContextWrapper) webViewContext).setBaseContext(this.activity);
         }
 
+        webViewThrottle.activityChanged();
+
         return this;
     }
 
@@ -263,15 +475,25 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      * @return The TurbolinksSession to continue the chained calls.
      */
     public TurbolinksSession view(TurbolinksView turbolinksView) {
+        if (webViewCache != null) {
+            swapCachedWebView(turbolinksView);
+        }
+
         this.turbolinksView = turbolinksView;
         this.turbolinksView.getRefreshLayout().setCallback(this);
         this.turbolinksView.getRefreshLayout().setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
             @Override
             public void onRefresh() {
-                visitLocationWithAction(location, ACTION_ADVANCE);
+                pullToRefresh();
             }
         });
-        this.webViewAttachedToNewParent = this.turbolinksView.attachWebView(webView, screenshotsEnabled, pullToRefreshEnabled);
+        this.turbolinksView.frameMonitor = frameMonitor;
+
+        long attachStart = frameMonitor.begin();
+        this.webViewAttachedToNewParent = this.turbolinksView.attachWebView(webView, screenshotsEnabled && visitOptions.isScreenshotsEnabled(), pullToRefreshEnabled);
+        frameMonitor.end(TurbolinksJankListener.SECTION_ATTACH_WEBVIEW, attachStart);
+        this.webViewThrottle.resume();
+        this.debugOverlay.attachTo(turbolinksView);
 
         return this;
     }
@@ -283,11 +505,41 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      * @param location The URL to visit.
      */
     public void visit(String location) {
+        visit(location, null);
+    }
+
+    /**
+     * <p><b>REQUIRED</b> Executes a Turbolinks visit with settings that only apply to this visit.
+     * Must be called at the end of the chain -- all required parameters will first be validated
+     * before firing.</p>
+     *
+     * @param location The URL to visit.
+     * @param options  The settings for this visit, or null for the defaults.
+     */
+    public void visit(String location, TurbolinksVisitOptions options) {
         TurbolinksLog.d("visit called");
 
+        // The cached WebView is already showing this location, as it was left
+        boolean showingCachedWebView = webViewRestoredFromCache && turbolinksIsReady && TextUtils.equals(location, this.location);
+        webViewRestoredFromCache = false;
+
         this.location = location;
+        pageUpdateChannel.locationChanged(location);
 
         validateRequiredParams();
+        applyVisitOptions(options);
+
+        // A new visit replaces any retry that's pending
+        visitRetrier.cancel();
+        coldBootStallRetried = false;
+
+        if (showingCachedWebView) {
+            TurbolinksLog.d("Showing cached WebView, no visit needed: " + location);
+            recordMetric(TurbolinksMetricsListener.WEBVIEW_CACHE_HIT, 1);
+            turbolinksView.hideProgress();
+            restoreWithCachedSnapshot = false;
+            return;
+        }
 
         if (!turbolinksIsReady || webViewAttachedToNewParent) {
             initProgressView();
@@ -298,8 +550,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         }
 
         if (!turbolinksIsReady && !coldBootInProgress) {
-            TurbolinksLog.d("Cold booting: " + location);
-            webView.loadUrl(location);
+            coldBoot();
         }
 
         // Reset so that cached snapshot is not the default for the next visit
@@ -360,131 +611,167 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     // ---------------------------------------------------
 
     /**
-     * <p><b>JavascriptInterface only</b> Called by Turbolinks when a new visit is initiated from a
+     * <p><b>Bridge only</b> Called by Turbolinks when a new visit is initiated from a
      * webView link.</p>
      *
-     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
-     * never call this directly as it could lead to unintended behavior.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      *
      * @param location URL to be visited.
      * @param action   Whether to treat the request as an advance (navigating forward) or a replace (back).
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void visitProposedToLocationWithAction(final String location, final String action) {
         TurbolinksLog.d("visitProposedToLocationWithAction called");
 
-        TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+        // Matched here, usually on the Javascript bridge thread, to keep routing off the main thread
+        TurbolinksRouter router = this.router;
+        final TurbolinksRouteMatch match = router != null ? router.match(location) : null;
+
+        bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.VISIT_PROPOSED, null, new Runnable() {
             @Override
             public void run() {
-                turbolinksAdapter.visitProposedToLocationWithAction(location, action);
+                if (match != null && turbolinksAdapter instanceof TurbolinksRoutingAdapter) {
+                    ((TurbolinksRoutingAdapter) turbolinksAdapter).visitProposedToRoute(match, action);
+                } else {
+                    turbolinksAdapter.visitProposedToLocationWithAction(location, action);
+                }
             }
         });
     }
 
     /**
-     * <p><b>JavascriptInterface only</b> Called by Turbolinks when a new visit has just started.</p>
+     * <p><b>Bridge only</b> Called by Turbolinks when a new visit has just started.
+     * Delivered in a batch of events, see {@link #receiveEvents(String)}.</p>
      *
-     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
-     * never call this directly as it could lead to unintended behavior.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      *
      * @param visitIdentifier        A unique identifier for the visit.
      * @param visitHasCachedSnapshot Whether the visit has a cached snapshot available.
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void visitStarted(String visitIdentifier, boolean visitHasCachedSnapshot) {
         TurbolinksLog.d("visitStarted called");
 
+        // The bridge has already changed history, issued the request and loaded the cached snapshot
         currentVisitIdentifier = visitIdentifier;
-
-        runJavascript("webView.changeHistoryForVisitWithIdentifier", visitIdentifier);
-        runJavascript("webView.issueRequestForVisitWithIdentifier", visitIdentifier);
-        runJavascript("webView.loadCachedSnapshotForVisitWithIdentifier", visitIdentifier);
+        visitStartTime = SystemClock.uptimeMillis();
+        visitResponseTime = 0;
+        debugOverlay.visitStarted(visitIdentifier);
     }
 
     /**
-     * <p><b>JavascriptInterface only</b> Called by Turbolinks when the HTTP request has been
+     * <p><b>Bridge only</b> Called by Turbolinks when the HTTP request has been
      * completed.</p>
      *
-     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
-     * never call this directly as it could lead to unintended behavior.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      *
      * @param visitIdentifier A unique identifier for the visit.
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void visitRequestCompleted(String visitIdentifier) {
         TurbolinksLog.d("visitRequestCompleted called");
+        debugOverlay.requestCompleted(visitIdentifier);
 
+        // The bridge has already loaded the response
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-            runJavascript("webView.loadResponseForVisitWithIdentifier", visitIdentifier);
+            visitResponseTime = SystemClock.uptimeMillis();
+
+            bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.REQUEST_COMPLETED, visitIdentifier, new Runnable() {
+                @Override
+                public void run() {
+                    restoreCacheMode();
+                }
+            });
         }
     }
 
     /**
-     * <p><b>JavascriptInterface only</b> Called by Turbolinks when the HTTP request has failed.</p>
+     * <p><b>Bridge only</b> Called by Turbolinks when the HTTP request has failed.</p>
      *
-     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
-     * never call this directly as it could lead to unintended behavior.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      *
      * @param visitIdentifier A unique identifier for the visit.
      * @param statusCode      The HTTP status code that caused the failure.
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void visitRequestFailedWithStatusCode(final String visitIdentifier, final int statusCode) {
         TurbolinksLog.d("visitRequestFailedWithStatusCode called");
+        debugOverlay.requestFailed(visitIdentifier, statusCode);
         hideProgressView(visitIdentifier);
 
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-            TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+            visitRegistry.finish(this, false);
+
+            bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.REQUEST_FAILED, visitIdentifier, new Runnable() {
                 @Override
                 public void run() {
-                    turbolinksAdapter.requestFailedWithStatusCode(statusCode);
+                    restoreCacheMode();
+                    imageDeferral.release();
+
+                    if (!visitRetrier.visitFailed(location, statusCode)) {
+                        turbolinksAdapter.requestFailedWithStatusCode(statusCode);
+                    }
                 }
             });
         }
     }
 
     /**
-     * <p><b>JavascriptInterface only</b> Called by Turbolinks once the page has been fully rendered
+     * <p><b>Bridge only</b> Called by Turbolinks once the page has been fully rendered
      * in the webView.</p>
      *
-     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
-     * never call this directly as it could lead to unintended behavior.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      *
-     * @param visitIdentifier A unique identifier for the visit.
+     * @param visitIdentifier        A unique identifier for the visit.
+     * @param renderDetectionLatency The time, in milliseconds, the bridge waited to detect the render.
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
-    public void visitRendered(String visitIdentifier) {
+    public void visitRendered(final String visitIdentifier, int renderDetectionLatency) {
         TurbolinksLog.d("visitRendered called, hiding progress view for identifier: " + visitIdentifier);
+
+        if (TextUtils.equals(renderDetection, RENDER_DETECTION_VISUAL_STATE)) {
+            hideProgressViewAfterVisualStateCommitted(visitIdentifier);
+            return;
+        }
+
+        recordMetric(TurbolinksMetricsListener.RENDER_DETECTION_LATENCY, renderDetectionLatency);
+        debugOverlay.rendered(visitIdentifier);
+        recordRenderTime(visitIdentifier);
         hideProgressView(visitIdentifier);
     }
 
     /**
-     * <p><b>JavascriptInterface only</b> Called by Turbolinks when the visit is fully completed --
+     * <p><b>Bridge only</b> Called by Turbolinks when the visit is fully completed --
      * request successful and page rendered.</p>
      *
-     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
-     * never call this directly as it could lead to unintended behavior.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      *
      * @param visitIdentifier       A unique identifier for the visit.
      * @param restorationIdentifier A unique identifier for restoring the page and scroll position
      *                              from cache.
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void visitCompleted(String visitIdentifier, String restorationIdentifier) {
         TurbolinksLog.d("visitCompleted called");
+        debugOverlay.completed(visitIdentifier);
 
         addRestorationIdentifierToMap(restorationIdentifier);
 
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-            TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+            latencyStats.record(route, TurbolinksLatencyStats.VISIT_TIME, SystemClock.uptimeMillis() - visitStartTime);
+            visitRegistry.finish(this, true);
+
+            bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.VISIT_COMPLETED, visitIdentifier, new Runnable() {
                 @Override
                 public void run() {
+                    restoreCacheMode(); // In case the request completed event was evicted
+                    visitRetrier.cancel();
                     turbolinksAdapter.visitCompleted();
                     turbolinksView.getRefreshLayout().setRefreshing(false);
                 }
@@ -493,20 +780,19 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     }
 
     /**
-     * <p><b>JavascriptInterface only</b> Called when Turbolinks detects that the page being visited
+     * <p><b>Bridge only</b> Called when Turbolinks detects that the page being visited
      * has been invalidated, typically by new resources in the the page HEAD.</p>
      *
-     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
-     * never call this directly as it could lead to unintended behavior.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void pageInvalidated() {
         TurbolinksLog.d("pageInvalidated called");
 
         resetToColdBoot();
 
-        TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+        bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.PAGE_INVALIDATED, null, new Runnable() {
             @Override
             public void run() { // route through normal chain so progress view is shown, regular logging, etc.
                 turbolinksAdapter.pageInvalidated();
@@ -516,22 +802,74 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         });
     }
 
+    /**
+     * <p><b>Bridge only</b> Called by the bridge with the messages the page posted
+     * during the last animation frame.</p>
+     *
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
+     *
+     * @param messagesJson A JSON array of messages, each with a name and a payload.
+     */
+    public void receiveMessages(String messagesJson) {
+        messageChannel.receive(messagesJson);
+    }
+
+    /**
+     * <p><b>Bridge only</b> Called by the bridge with the adapter events Turbolinks
+     * raised since the last call, so a visit crosses the bridge a couple of times instead of once
+     * per event. Each event is passed to its TurbolinksNative adapter method, in order.</p>
+     *
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
+     *
+     * @param batchJson A JSON object with the time the batch was sent and an array of events, each
+     *                  with a name, its arguments and the time it was raised.
+     */
+    public void receiveEvents(String batchJson) {
+        long receivedAt = SystemClock.uptimeMillis();
+        JSONObject batch;
+
+        try {
+            batch = new JSONObject(batchJson);
+        } catch (JSONException e) {
+            TurbolinksLog.e("Error parsing bridge events: " + e.toString());
+            return;
+        }
+
+        long sentAt = batch.optLong(BRIDGE_EVENTS_SENT_AT);
+        JSONArray events = batch.optJSONArray(BRIDGE_EVENTS);
+        if (events == null) return;
+
+        recordMetric(TurbolinksMetricsListener.BRIDGE_EVENTS_PER_BATCH, events.length());
+
+        for (int i = 0; i < events.length(); i++) {
+            JSONObject event = events.optJSONObject(i);
+            if (event == null) continue;
+
+            // Events wait in the bridge for the rest of their batch, so time them from when Turbolinks raised them
+            long raisedAt = receivedAt - Math.max(0, sentAt - event.optLong(BRIDGE_EVENT_TIME, sentAt));
+            dispatchEvent(event.optString(BRIDGE_EVENT_NAME), event.optJSONArray(BRIDGE_EVENT_ARGUMENTS), raisedAt);
+        }
+    }
+
     // ---------------------------------------------------
     // TurbolinksNative helper methods
     // ---------------------------------------------------
 
     /**
-     * <p><b>JavascriptInterface only</b> Hides the progress view when the page is fully rendered.</p>
+     * <p><b>Bridge only</b> Hides the progress view when the page is fully rendered.</p>
      *
-     * <p>Note: This method is public so it can be used as a Javascript Interface. For all practical
-     * purposes, you should never call this directly.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      *
      * @param visitIdentifier A unique identifier for the visit.
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void hideProgressView(final String visitIdentifier) {
-        TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+        bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.HIDE_PROGRESS, visitIdentifier, new Runnable() {
             @Override
             public void run() {
                 /**
@@ -539,37 +877,48 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
                  * visitResponseLoaded could attempt to hide the progress view. Checking
                  * turbolinksIsReady ensures progress view isn't hidden too soon by the non cold boot.
                  */
-                if (turbolinksIsReady && TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-                    TurbolinksLog.d("Hiding progress view for visitIdentifier: " + visitIdentifier + ", currentVisitIdentifier: " + currentVisitIdentifier);
-                    turbolinksView.hideProgress();
-                }
+                hideProgressViewIfCurrentVisit(visitIdentifier);
             }
         });
     }
 
     /**
-     * <p><b>JavascriptInterface only</b> Sets internal flags that indicate whether Turbolinks in
+     * <p><b>Bridge only</b> Sets internal flags that indicate whether Turbolinks in
      * the webView is ready for use.</p>
      *
-     * <p>Note: This method is public so it can be used as a Javascript Interface. For all practical
-     * purposes, you should never call this directly.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      *
      * @param turbolinksIsReady The Javascript bridge checks the current page for Turbolinks, and
      *                          sends the results of that check here.
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void setTurbolinksIsReady(boolean turbolinksIsReady) {
         this.turbolinksIsReady = turbolinksIsReady;
 
         if (turbolinksIsReady) {
             bridgeInjectionInProgress = false;
+            coldBootStallRetried = false;
+            coldBootWatchdog.phaseCompleted(COLD_BOOT_PHASE_READY);
+            debugOverlay.coldBootFinished(true);
+
+            if (coldBootStartTime > 0) {
+                latencyStats.record(route, TurbolinksLatencyStats.COLD_BOOT_TIME, SystemClock.uptimeMillis() - coldBootStartTime);
+                coldBootStartTime = 0;
+            }
 
-            TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+            if (renderProcessGoneTime > 0) {
+                recordMetric(TurbolinksMetricsListener.RENDER_PROCESS_RECOVERY_TIME, SystemClock.uptimeMillis() - renderProcessGoneTime);
+                renderProcessGoneTime = 0;
+            }
+
+            bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.TURBOLINKS_READY, null, new Runnable() {
                 @Override
                 public void run() {
                     TurbolinksLog.d("TurbolinksSession is ready");
+                    runJavascript("webView.setRenderDetection", renderDetection);
                     visitCurrentLocationWithTurbolinks();
+                    pageUpdateChannel.flush();
                 }
             });
 
@@ -577,25 +926,29 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         } else {
             TurbolinksLog.d("TurbolinksSession is not ready. Resetting and throw error.");
             resetToColdBoot();
-            visitRequestFailedWithStatusCode(currentVisitIdentifier, 500);
+
+            if (!coldBootFailed) { // Already reported when the main frame failed
+                visitRequestFailedWithStatusCode(currentVisitIdentifier, 500);
+            }
         }
     }
 
     /**
-     * <p><b>JavascriptInterface only</b> Handles the error condition when reaching a page without
+     * <p><b>Bridge only</b> Handles the error condition when reaching a page without
      * Turbolinks.</p>
      *
-     * <p>Note: This method is public so it can be used as a Javascript Interface. For all practical
-     * purposes, you should never call this directly.</p>
+     * <p>Warning: This method is called through the session's Javascript bridge, and is only public
+     * so existing code keeps compiling. You should never call this directly as it could lead to
+     * unintended behavior.</p>
      */
-    @SuppressWarnings("unused")
-    @android.webkit.JavascriptInterface
     public void turbolinksDoesNotExist() {
-        TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+        bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.TURBOLINKS_DOES_NOT_EXIST, null, new Runnable() {
             @Override
             public void run() {
                 TurbolinksLog.d("Error instantiating turbolinks_bridge.js - resetting to cold boot.");
                 resetToColdBoot();
+                bridgeInjectedOnCommit = false; // So onPageFinished injects the bridge again
+                imageDeferral.release();
                 turbolinksView.hideProgress();
             }
         });
@@ -626,6 +979,101 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         }
     }
 
+    /**
+     * <p>Registers a handler for messages the page posts with
+     * <code>window.webView.postMessage(name, payload)</code>.</p>
+     *
+     * <p>Unlike {@link #addJavascriptInterface(Object, String)}, messages don't each cross into
+     * Java on their own: the bridge sends everything posted during an animation frame in a single
+     * call, and the page's Javascript never waits for the handler. Prefer it for frequent messages,
+     * like analytics or scroll events.</p>
+     *
+     * @param name    The message name.
+     * @param handler The handler to call with each message of that name.
+     */
+    public void addMessageHandler(String name, TurbolinksMessageHandler handler) {
+        if (TextUtils.isEmpty(name) || handler == null) {
+            throw new IllegalArgumentException("A message handler must have a name and must not be null.");
+        }
+
+        messageChannel.addHandler(name, handler);
+    }
+
+    /**
+     * <p>Removes the handler for a message name. Messages of that name are ignored from now on.</p>
+     *
+     * @param name The message name.
+     */
+    public void removeMessageHandler(String name) {
+        messageChannel.removeHandler(name);
+    }
+
+    /**
+     * <p>Streams HTML fragment updates for the current page from a server-sent events URL, so a
+     * live page stays current without a visit for every change. Replaces the current stream, if
+     * any. Must be called on the main thread.</p>
+     *
+     * <p>Each event's data is a JSON object with an action (replace, update, append, prepend or
+     * remove), the id of the target element, and the HTML, like
+     * {"action":"append","target":"messages","html":"&lt;li&gt;Hi&lt;/li&gt;"}. Updates received
+     * during the same animation frame are applied together. While the page can't take updates, like
+     * during a cold boot or while the WebView is paused, they're buffered. If too many pile up, they're
+     * dropped and the page is refreshed with a visit instead.</p>
+     *
+     * <p>The stream is for the current location, and is closed when the session visits another one.
+     * Its requests carry the WebView's cookies and User-Agent. It reconnects with jittered backoff
+     * whenever it fails or ends, sending the last event id it received. It stops for good on a 204
+     * or other status the default policy doesn't retry, or when {@link #disconnectPageUpdates()} is
+     * called.</p>
+     *
+     * @param streamUrl The http or https URL of the event stream.
+     */
+    public void connectPageUpdates(String streamUrl) {
+        connectPageUpdates(streamUrl, TurbolinksPageUpdateChannel.DEFAULT_RECONNECT_POLICY);
+    }
+
+    /**
+     * <p>Streams HTML fragment updates for the current page, like
+     * {@link #connectPageUpdates(String)}, reconnecting according to a policy.</p>
+     *
+     * @param streamUrl       The http or https URL of the event stream.
+     * @param reconnectPolicy Which failures are reconnected, and how many times in a row.
+     */
+    public void connectPageUpdates(String streamUrl, TurbolinksRetryPolicy reconnectPolicy) {
+        if (streamUrl == null || !(streamUrl.startsWith("http://") || streamUrl.startsWith("https://"))) {
+            throw new IllegalArgumentException("Page update stream URL must be an http or https URL.");
+        }
+
+        if (reconnectPolicy == null) {
+            throw new IllegalArgumentException("Reconnect policy must not be null.");
+        }
+
+        pageUpdateChannel.connect(streamUrl, location, webView.getSettings().getUserAgentString(), reconnectPolicy);
+    }
+
+    /**
+     * <p>Closes the page update stream, if any, and drops updates that weren't applied yet. Must be
+     * called on the main thread.</p>
+     */
+    public void disconnectPageUpdates() {
+        pageUpdateChannel.disconnect();
+    }
+
+    /**
+     * <p>Sets the executor that message handlers are called on. Default is the main thread. Each
+     * batch of messages is passed to the executor as one task, so messages stay in order as long as
+     * the executor runs tasks in order.</p>
+     *
+     * @param executor The executor to call message handlers on.
+     */
+    public void setMessageExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Message executor must not be null.");
+        }
+
+        messageChannel.setExecutor(executor);
+    }
+
     /**
      * <p>Returns the activity attached to the Turbolinks call.</p>
      *
@@ -638,6 +1086,8 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     /**
      * <p>Returns the internal WebView used by Turbolinks.</p>
      *
+     * <p>The WebView is replaced if its render process is gone, so avoid holding on to it.</p>
+     *
      * @return The WebView used by Turbolinks.
      */
     public WebView getWebView() {
@@ -652,16 +1102,22 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         bridgeInjectionInProgress = false;
         turbolinksIsReady = false;
         coldBootInProgress = false;
+        coldBootWatchdog.stop();
+        debugOverlay.coldBootFinished(false);
+        visitRegistry.detach(this);
+        visitRegistry.finish(this, false);
     }
 
     /**
      * <p>Runs a Javascript function with any number of arbitrary params in the Turbolinks webView.</p>
      *
      * @param functionName The name of the function, without any parenthesis or params
-     * @param params       A comma delimited list of params. Params will be automatically JSONified.
+     * @param params       A comma delimited list of params. Params will be automatically JSONified,
+     *                     see {@link #setJsonEncoder(TurbolinksJsonEncoder)}.
+     * @throws IllegalArgumentException If a param can't be encoded.
      */
     public void runJavascript(final String functionName, final Object... params) {
-        TurbolinksHelper.runJavascript(applicationContext, webView, functionName, params);
+        TurbolinksHelper.runJavascript(applicationContext, webView, jsonEncoder, functionName, params);
     }
 
     /**
@@ -684,115 +1140,988 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     }
 
     /**
-     * <p>Determines whether WebViews can be refreshed by pulling/swiping from the top
-     * of the WebView. Default is true.</p>
+     * <p>Sets how the bridge decides a visit has been rendered before the progress view is hidden.
+     * Default is {@link #RENDER_DETECTION_ANIMATION_FRAME}.</p>
      *
-     * @param enabled If true pulling to refresh the WebView is enabled
+     * <ul>
+     * <li>{@link #RENDER_DETECTION_ANIMATION_FRAME} waits for two animation frames.</li>
+     * <li>{@link #RENDER_DETECTION_PAINT} waits for the next paint, about one frame sooner, and
+     * doesn't wait at all for hidden pages.</li>
+     * <li>{@link #RENDER_DETECTION_VISUAL_STATE} waits for the WebView to commit the rendered content
+     * to the screen. Requires API 23, older versions fall back to animation frames.</li>
+     * </ul>
+     *
+     * <p>The latency each strategy adds is reported to the metrics listener as
+     * {@link TurbolinksMetricsListener#RENDER_DETECTION_LATENCY}.</p>
+     *
+     * @param renderDetection One of the RENDER_DETECTION constants.
      */
-    public void setPullToRefreshEnabled(boolean enabled) {
-        pullToRefreshEnabled = enabled;
+    public void setRenderDetection(String renderDetection) {
+        if (!TextUtils.equals(renderDetection, RENDER_DETECTION_ANIMATION_FRAME) &&
+            !TextUtils.equals(renderDetection, RENDER_DETECTION_PAINT) &&
+            !TextUtils.equals(renderDetection, RENDER_DETECTION_VISUAL_STATE)) {
+            throw new IllegalArgumentException("Unknown render detection strategy: " + renderDetection);
+        }
+
+        if (TextUtils.equals(renderDetection, RENDER_DETECTION_VISUAL_STATE) && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            TurbolinksLog.d("Visual state callbacks require API 23, falling back to animation frames");
+            renderDetection = RENDER_DETECTION_ANIMATION_FRAME;
+        }
+
+        this.renderDetection = renderDetection;
+
+        if (turbolinksIsReady) {
+            runJavascript("webView.setRenderDetection", renderDetection);
+        }
     }
 
     /**
-     * <p>Provides the status of whether Turbolinks is initialized and ready for use.</p>
+     * <p>Sets a router to match proposed visits against. If the adapter implements
+     * {@link TurbolinksRoutingAdapter}, proposed visits that match a route are passed to
+     * {@link TurbolinksRoutingAdapter#visitProposedToRoute(TurbolinksRouteMatch, String)}. Pass null
+     * to stop routing.</p>
      *
-     * @return True if Turbolinks has been fully loaded and detected on the page.
+     * @param router The router to match proposed visits against.
      */
-    public boolean turbolinksIsReady() {
-        return turbolinksIsReady;
+    public void setRouter(TurbolinksRouter router) {
+        this.router = router;
     }
 
     /**
-     * <p>A convenience method to fire a Turbolinks visit manually.</p>
+     * <p>Sets a path configuration to look up per-URL settings in. Each visit applies the settings
+     * of its location, on top of the session-wide settings: pull to refresh and screenshots can be
+     * turned off for a location, but not turned on if they're disabled for the session. Pass null
+     * to go back to session-wide settings only.</p>
      *
-     * @param location URL to visit.
-     * @param action   Whether to treat the request as an advance (navigating forward) or a replace (back).
+     * @param pathConfiguration A loaded {@link TurbolinksPathConfiguration}.
      */
-    public void visitLocationWithAction(String location, String action) {
-        this.location = location;
-        runJavascript("webView.visitLocationWithActionAndRestorationIdentifier", TurbolinksHelper.encodeUrl(location), action, getRestorationIdentifierFromMap());
+    public void setPathConfiguration(TurbolinksPathConfiguration pathConfiguration) {
+        this.pathConfiguration = pathConfiguration;
     }
 
-    // ---------------------------------------------------
-    // Private
-    // ---------------------------------------------------
+    /**
+     * <p>Sets how failed cold boots and visits are retried. Transient failures are retried with
+     * jittered exponential backoff while the device is online, and only reported to the adapter once
+     * the retries run out. Once Turbolinks is ready, a failed visit is retried as a Turbolinks visit,
+     * without cold booting.</p>
+     *
+     * <p>Failures while offline are reported right away, and the last failed location is visited
+     * again once the device is back online. Pass null to report every failure right away, which is
+     * the default.</p>
+     *
+     * @param retryPolicy The retry policy, or null.
+     */
+    public void setRetryPolicy(TurbolinksRetryPolicy retryPolicy) {
+        visitRetrier.setPolicy(retryPolicy);
+    }
 
     /**
-     * <p>Adds the restoration (cached scroll position) identifier to the local Hashmap.</p>
+     * <p>Sets how {@link #runJavascript(String, Object...)} encodes params other than strings,
+     * numbers, booleans, characters, enums, org.json values, maps, collections and object arrays,
+     * which are always encoded by the library. Without an encoder, other params are rejected with
+     * an IllegalArgumentException. Default is null.</p>
      *
-     * @param value Restoration ID provided by Turbolinks.
+     * @param jsonEncoder The encoder, or null.
      */
-    private void addRestorationIdentifierToMap(String value) {
-        if (activity != null) {
-            restorationIdentifierMap.put(activity.toString(), value);
-        }
+    public void setJsonEncoder(TurbolinksJsonEncoder jsonEncoder) {
+        this.jsonEncoder = jsonEncoder;
     }
 
     /**
-     * <p>Gets the restoration ID for the current activity.</p>
+     * <p>Sets how long a cold boot may wait for one of its phases before it's considered stalled.
+     * Each deadline starts when the previous phase completes. A stalled cold boot is reset and
+     * retried once, then reported to the adapter.</p>
      *
-     * @return Restoration ID for the current activity.
+     * <ul>
+     * <li>{@link #COLD_BOOT_PHASE_PAGE_STARTED} waits for the page to start loading. Default is 30
+     * seconds.</li>
+     * <li>{@link #COLD_BOOT_PHASE_PAGE_FINISHED} waits for the page to finish loading, or to be
+     * committed where the bridge is injected early. Default is 30 seconds.</li>
+     * <li>{@link #COLD_BOOT_PHASE_BRIDGE_INJECTED} waits for the bridge to be injected. Default is 10
+     * seconds.</li>
+     * <li>{@link #COLD_BOOT_PHASE_READY} waits for the bridge to report whether Turbolinks is ready.
+     * Default is 15 seconds.</li>
+     * </ul>
+     *
+     * @param phase   One of the COLD_BOOT_PHASE constants.
+     * @param timeout The deadline in milliseconds, or 0 to wait forever.
      */
-    private String getRestorationIdentifierFromMap() {
-        return restorationIdentifierMap.get(activity.toString());
+    public void setColdBootTimeout(String phase, long timeout) {
+        coldBootWatchdog.setTimeout(phase, timeout);
     }
 
     /**
-     * <p>Shows the progress view, either a custom one provided or the default.</p>
+     * <p>Shows an overlay on top of the TurbolinksView with timings for the current visit: the
+     * cold boot if it needed one, the network request, the render, the last screenshot and the
+     * total. Meant for testing performance on real devices, so pass your app's own
+     * <code>BuildConfig.DEBUG</code> to keep it out of release builds. Must be called on the main
+     * thread.</p>
+     *
+     * <p>To also see these spans in Perfetto and systrace, use {@link #setTracingEnabled(boolean)}.</p>
      *
-     * <p>A default progress view is inflated if {@link #progressView} isn't called.
-     * If already inflated, progress view is fully detached before being shown since it's reused.</p>
+     * @param enabled True to show the overlay. Default is false.
      */
-    private void initProgressView() {
-        // No custom progress view provided, use default
-        if (progressView == null) {
-            progressView = LayoutInflater.from(activity).inflate(R.layout.turbolinks_progress, turbolinksView, false);
+    public void setDebugOverlayEnabled(boolean enabled) {
+        debugOverlay.setEnabled(enabled);
+        debugOverlay.attachTo(turbolinksView);
+    }
 
-            TurbolinksLog.d("TurbolinksSession background: " + turbolinksView.getBackground());
-            progressView.setBackground(turbolinksView.getBackground());
-            progressIndicator = progressView.findViewById(R.id.turbolinks_default_progress_indicator);
-            progressIndicatorDelay = PROGRESS_INDICATOR_DELAY;
+    /**
+     * <p>Gets the session's cold boot, visit and render times, aggregated per route. Export them
+     * periodically with {@link TurbolinksLatencyStats#snapshotAndResetJson()}.</p>
+     *
+     * @return The session's latency stats.
+     */
+    public TurbolinksLatencyStats getLatencyStats() {
+        return latencyStats;
+    }
 
-            Drawable background = turbolinksView.getBackground() != null ? turbolinksView.getBackground() : new ColorDrawable(activity.getResources().getColor(android.R.color.white));
-            progressView.setBackground(background);
-        }
+    /**
+     * <p>Sets a listener that receives the library's own main-thread sections that went over
+     * their budget, like screenshots and progress view inflation, with the frames dropped around
+     * them. Pass null to stop timing them.</p>
+     *
+     * @param jankListener The listener, or null.
+     */
+    public void setJankListener(TurbolinksJankListener jankListener) {
+        frameMonitor.setListener(jankListener);
+    }
 
-        // A progress view can be reused, so ensure it's detached from its previous parent first
-        if (progressView.getParent() != null) {
-            ((ViewGroup) progressView.getParent()).removeView(progressView);
-        }
+    /**
+     * <p>Sets how long one of the library's main-thread sections may run before it's reported to
+     * the jank listener. Default is 8 ms, half a frame at 60 Hz.</p>
+     *
+     * @param section      One of the {@link TurbolinksJankListener} SECTION constants.
+     * @param budgetMillis The budget in milliseconds.
+     */
+    public void setMainThreadBudget(String section, long budgetMillis) {
+        frameMonitor.setBudget(section, budgetMillis);
+    }
 
-        // Executed from here to account for progress indicator delay
-        turbolinksView.showProgress(progressView, progressIndicator, progressIndicatorDelay);
+    /**
+     * <p>Logs an error for every one of the library's main-thread sections that runs longer than a
+     * threshold, whether a jank listener is set or not. Meant for development builds.</p>
+     *
+     * @param thresholdMillis The threshold in milliseconds, or 0 to turn strict mode off, which is
+     *                        the default.
+     */
+    public void setMainThreadStrictMode(long thresholdMillis) {
+        frameMonitor.setStrictModeThreshold(thresholdMillis);
     }
 
     /**
-     * <p>Convenience method to simply revisit the current location in the TurbolinksSession. Useful
-     * so that different visit logic can be wrappered around this call in {@link #visit} or
-     * {@link #setTurbolinksIsReady(boolean)}</p>
+     * <p>Sets a listener that receives the session's timing metrics. Pass null to stop
+     * recording.</p>
+     *
+     * @param metricsListener Any class that implements {@link TurbolinksMetricsListener}.
      */
-    private void visitCurrentLocationWithTurbolinks() {
-        TurbolinksLog.d("Visiting current stored location: " + location);
+    public void setMetricsListener(TurbolinksMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
 
-        String action = restoreWithCachedSnapshot ? ACTION_RESTORE : ACTION_ADVANCE;
-        visitLocationWithAction(location, action);
+    /**
+     * <p>Determines whether the WebView is paused while nothing is showing it -- when the session's
+     * activity is paused or the WebView is detached from the screen. A paused WebView stops animations
+     * and rendering and throttles its Javascript timers, and resumes as soon as it's attached to a
+     * TurbolinksView again. Default is false.</p>
+     *
+     * <p>Only this session's WebView is paused, other WebViews in the app keep running. How long
+     * each session's WebView ran before pausing is reported as
+     * {@link TurbolinksMetricsListener#WEBVIEW_RUNNING_TIME}.</p>
+     *
+     * @param enabled If true the WebView is paused while it isn't showing.
+     */
+    public void setBackgroundThrottlingEnabled(boolean enabled) {
+        webViewThrottle.setEnabled(enabled);
     }
 
     /**
-     * <p>Ensures all required chained calls/parameters ({@link #activity}, {@link #turbolinksView},
-     * and location}) are set before calling {@link #visit(String)}.</p>
+     * <p>Determines whether a WebView paused by background throttling also waives its render process
+     * priority, so the system reclaims it first under memory pressure. Requires API 26, ignored on
+     * older versions. Default is false.</p>
+     *
+     * @param waived If true the renderer priority is waived while the WebView is paused.
      */
-    private void validateRequiredParams() {
-        if (activity == null) {
-            throw new IllegalArgumentException("TurbolinksSession.activity(activity) must be called with a non-null object.");
-        }
+    public void setBackgroundRendererPriorityWaived(boolean waived) {
+        webViewThrottle.setRendererPriorityWaived(waived);
+    }
 
-        if (turbolinksAdapter == null) {
-            throw new IllegalArgumentException("TurbolinksSession.adapter(turbolinksAdapter) must be called with a non-null object.");
-        }
+    /**
+     * <p>Sets the WebView settings that trade memory for speed, like rastering offscreen or holding
+     * back network images until each visit renders. The profile applies to the current WebView right
+     * away, and to every WebView the session creates afterwards. Defaults to the preset for the
+     * device, see {@link TurbolinksWebViewProfile#forDevice(Context)}. Must be called on the main
+     * thread.</p>
+     *
+     * @param webViewProfile The profile, or null for the device's preset.
+     */
+    public void setWebViewProfile(TurbolinksWebViewProfile webViewProfile) {
+        this.webViewProfile = webViewProfile != null ? webViewProfile : TurbolinksWebViewProfile.forDevice(applicationContext);
+        this.webViewProfile.applyTo(webView);
 
-        if (turbolinksView == null) {
-            throw new IllegalArgumentException("TurbolinksSession.view(turbolinksView) must be called with a non-null object.");
+        if (!this.webViewProfile.isNetworkImagesBlockedUntilRender()) {
+            imageDeferral.release();
+        }
+    }
+
+    /**
+     * <p>Keeps the pages you navigate away from alive in their own WebViews, still attached to their
+     * TurbolinksViews. Navigating back to one swaps its WebView back in, so the page shows exactly as
+     * it was left, without a restore visit. Disabled by default.</p>
+     *
+     * <p>Each TurbolinksView shown for the first time gets a fresh WebView, so forward navigations
+     * cold boot instead of running a Turbolinks visit. This trades memory and forward navigation
+     * speed for instant back navigation, so it's best suited to apps where users go back and forth
+     * between a few heavy pages. WebViews are evicted least recently used first, once there are more
+     * than maxWebViews or their estimated memory is over budget. Views whose WebView was evicted fall
+     * back to a restore visit. Hits and misses are reported as
+     * {@link TurbolinksMetricsListener#WEBVIEW_CACHE_HIT} and
+     * {@link TurbolinksMetricsListener#WEBVIEW_CACHE_MISS}.</p>
+     *
+     * @param maxWebViews  The maximum number of cached WebViews, or 0 to disable the cache and
+     *                     destroy any cached WebViews.
+     * @param memoryBudget The maximum estimated memory of the cached WebViews, in bytes.
+     */
+    public void setWebViewCacheSize(int maxWebViews, long memoryBudget) {
+        if (maxWebViews < 0 || memoryBudget < 0) {
+            throw new IllegalArgumentException("WebView cache size must not be negative.");
+        }
+
+        if (webViewCache != null) {
+            webViewCache.clear();
+        }
+
+        webViewCache = maxWebViews > 0 ? new TurbolinksWebViewCache(maxWebViews, memoryBudget) : null;
+    }
+
+    /**
+     * <p>Determines whether WebViews can be refreshed by pulling/swiping from the top
+     * of the WebView. Default is true.</p>
+     *
+     * @param enabled If true pulling to refresh the WebView is enabled
+     */
+    public void setPullToRefreshEnabled(boolean enabled) {
+        pullToRefreshEnabled = enabled;
+    }
+
+    /**
+     * <p>Saves the session's location, restoration identifiers and WebView history so the session
+     * can be rebuilt with {@link #restoreInstanceState(Bundle)} if the OS kills the process. Call
+     * this from your activity's onSaveInstanceState.</p>
+     *
+     * <p>Restoration identifiers are saved by location, since the activities they belong to don't
+     * survive the process. A recreated activity visiting the same location gets its identifier
+     * back.</p>
+     *
+     * <p>The WebView history is left out if it would push the bundle past a safe Binder
+     * transaction size -- the location alone is enough to cold boot.</p>
+     *
+     * @param outState The bundle provided to onSaveInstanceState.
+     */
+    public void saveInstanceState(Bundle outState) {
+        Bundle state = new Bundle();
+        state.putString(STATE_LOCATION, location);
+
+        HashMap<String, String> identifiersByLocation = new HashMap<>(savedRestorationIdentifierMap);
+        for (Map.Entry<String, String> entry : restorationIdentifierMap.entrySet()) {
+            String restorationLocation = restorationLocationMap.get(entry.getKey());
+            if (restorationLocation != null) {
+                identifiersByLocation.put(restorationLocation, entry.getValue());
+            }
+        }
+
+        state.putStringArray(STATE_RESTORATION_LOCATIONS, identifiersByLocation.keySet().toArray(new String[identifiersByLocation.size()]));
+        state.putStringArray(STATE_RESTORATION_VALUES, identifiersByLocation.values().toArray(new String[identifiersByLocation.size()]));
+
+        Bundle webViewState = new Bundle();
+        if (webView.saveState(webViewState) != null) {
+            int size = TurbolinksHelper.getParcelledSize(webViewState);
+
+            if (size <= MAX_SAVED_WEBVIEW_STATE_BYTES) {
+                state.putBundle(STATE_WEBVIEW, webViewState);
+            } else {
+                TurbolinksLog.d("WebView state too large to save (" + size + " bytes), only saving location");
+            }
+        }
+
+        outState.putBundle(STATE_KEY, state);
+    }
+
+    /**
+     * <p>Restores a session saved with {@link #saveInstanceState(Bundle)}. Call this from your
+     * activity's onCreate, before {@link #visit(String)}. A session that's already booted ignores
+     * the saved state, so it's safe to call on every onCreate.</p>
+     *
+     * <p>Only the top location is cold booted. The rest of the WebView history is restored as-is
+     * and each page is revisited lazily, as its activity is recreated.</p>
+     *
+     * @param savedInstanceState The bundle provided to onCreate, may be null.
+     */
+    public void restoreInstanceState(Bundle savedInstanceState) {
+        if (savedInstanceState == null) return;
+
+        Bundle state = savedInstanceState.getBundle(STATE_KEY);
+        if (state == null || turbolinksIsReady || coldBootInProgress) return;
+
+        location = state.getString(STATE_LOCATION);
+
+        String[] restorationLocations = state.getStringArray(STATE_RESTORATION_LOCATIONS);
+        String[] restorationValues = state.getStringArray(STATE_RESTORATION_VALUES);
+        if (restorationLocations != null && restorationValues != null) {
+            for (int i = 0; i < restorationLocations.length && i < restorationValues.length; i++) {
+                savedRestorationIdentifierMap.put(restorationLocations[i], restorationValues[i]);
+            }
+        }
+
+        Bundle webViewState = state.getBundle(STATE_WEBVIEW);
+        if (webViewState != null && webView.restoreState(webViewState) != null) {
+            // Restoring the history reloads the top page, which is our one cold boot. Flag it now
+            // so the visit that follows waits for it instead of loading the location again.
+            coldBootInProgress = true;
+            coldBootFailed = false;
+            coldBootWatchdog.start();
+            debugOverlay.coldBootStarted();
+            coldBootStartTime = SystemClock.uptimeMillis();
+            route = TurbolinksLatencyStats.routeFor(location);
+            imageDeferral.deferForColdBoot(webView, isImageDeferralEnabled(location));
+            TurbolinksLog.d("Restored WebView state, cold booting: " + location);
+        }
+    }
+
+    /**
+     * <p>Provides the status of whether Turbolinks is initialized and ready for use.</p>
+     *
+     * @return True if Turbolinks has been fully loaded and detected on the page.
+     */
+    public boolean turbolinksIsReady() {
+        return turbolinksIsReady;
+    }
+
+    /**
+     * <p>A convenience method to fire a Turbolinks visit manually, with settings that only apply to
+     * this visit.</p>
+     *
+     * @param location URL to visit.
+     * @param action   Whether to treat the request as an advance (navigating forward) or a replace
+     *                 (back). Restoring from the cached snapshot in the options makes it a restore.
+     * @param options  The settings for this visit, or null for the defaults.
+     */
+    public void visitLocationWithAction(String location, String action, TurbolinksVisitOptions options) {
+        this.location = location;
+        applyVisitOptions(options);
+        visitLocationWithAction(location, visitOptions.isRestoreWithCachedSnapshot() ? ACTION_RESTORE : action);
+    }
+
+    /**
+     * <p>A convenience method to fire a Turbolinks visit manually.</p>
+     *
+     * <p>If this session is already visiting the location with the same action, the visit in flight
+     * is kept instead. If another session is visiting it, this visit waits for that one to finish,
+     * so the response can come from the HTTP cache rather than a second request.</p>
+     *
+     * @param location URL to visit.
+     * @param action   Whether to treat the request as an advance (navigating forward) or a replace (back).
+     */
+    public void visitLocationWithAction(String location, String action) {
+        startVisit(location, action, false);
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Visits the current location again when the user pulls to refresh, canceling the visit in
+     * flight rather than keeping it.</p>
+     */
+    void pullToRefresh() {
+        startVisit(location, ACTION_ADVANCE, true);
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Starts a Turbolinks visit, unless the same location is already being visited.</p>
+     *
+     * @param location URL to visit.
+     * @param action   Whether to treat the request as an advance (navigating forward) or a replace (back).
+     * @param refresh  If true, the visit in flight is canceled and a fresh one is made, for pull to
+     *                 refresh.
+     */
+    private void startVisit(final String location, final String action, boolean refresh) {
+        this.location = location;
+        pageUpdateChannel.locationChanged(location);
+
+        final String encodedLocation;
+        try {
+            encodedLocation = TurbolinksHelper.encodeUrl(location);
+        } catch (IllegalArgumentException e) {
+            TurbolinksLog.e("Invalid location, not visiting: " + e.getMessage());
+
+            if (turbolinksAdapter instanceof TurbolinksErrorAdapter) {
+                ((TurbolinksErrorAdapter) turbolinksAdapter).onInvalidLocation(location, e.getMessage());
+            }
+            return;
+        }
+
+        visitRegistry.detach(this);
+
+        if (refresh) {
+            cancelCurrentVisit();
+        } else if (visitRegistry.isInFlight(encodedLocation, action, this)) {
+            TurbolinksLog.d("Already visiting, keeping the visit in flight: " + encodedLocation);
+            return;
+        } else if (visitRegistry.attach(encodedLocation, this, new TurbolinksVisitRegistry.Listener() {
+            @Override
+            public void onVisitFinished(boolean succeeded) {
+                issueVisit(location, encodedLocation, action, succeeded);
+            }
+        })) {
+            TurbolinksLog.d("Waiting for another session's visit to: " + encodedLocation);
+
+            // Like Turbolinks would when the new visit starts
+            cancelCurrentVisit();
+            return;
+        }
+
+        issueVisit(location, encodedLocation, action, false);
+    }
+
+    /**
+     * <p>Registers a visit and asks Turbolinks to make it.</p>
+     *
+     * @param location        URL to visit.
+     * @param encodedLocation The normalized URL.
+     * @param action          Whether to treat the request as an advance (navigating forward) or a replace (back).
+     * @param cached          Whether another session has just loaded the location, so the response
+     *                        can come from the HTTP cache.
+     */
+    private void issueVisit(String location, String encodedLocation, String action, boolean cached) {
+        // Set for every visit, and restored once the request ends, so a cached response is only preferred for this one
+        int cacheMode = getCacheMode(visitOptions);
+        cachedResponsePreferred = cached && cacheMode == WebSettings.LOAD_DEFAULT;
+        webView.getSettings().setCacheMode(cachedResponsePreferred ? WebSettings.LOAD_CACHE_ELSE_NETWORK : cacheMode);
+
+        visitRegistry.begin(encodedLocation, action, this);
+        route = TurbolinksLatencyStats.routeFor(location);
+        imageDeferral.deferForVisit(webView, isImageDeferralEnabled(location));
+        runJavascript("webView.visitLocationWithActionAndRestorationIdentifier", encodedLocation, action, getRestorationIdentifierFromMap());
+    }
+
+    /**
+     * <p>Cancels the visit Turbolinks is making, if it hasn't completed yet, and tells the sessions
+     * waiting on it that it didn't succeed.</p>
+     */
+    private void cancelCurrentVisit() {
+        String visitIdentifier = currentVisitIdentifier;
+
+        if (turbolinksIsReady && visitIdentifier != null) {
+            runJavascript("webView.cancelVisitWithIdentifier", visitIdentifier);
+        }
+
+        visitRegistry.finish(this, false);
+    }
+
+    /**
+     * <p>Goes back to the cache mode of the visit's options, once a request that preferred a cached
+     * response has ended. Must be called on the main thread.</p>
+     */
+    private void restoreCacheMode() {
+        if (!cachedResponsePreferred) return;
+
+        cachedResponsePreferred = false;
+        webView.getSettings().setCacheMode(getCacheMode(visitOptions));
+    }
+
+    /**
+     * <p>Creates the session's WebView and registers the Turbolinks and app Javascript interfaces
+     * with it.</p>
+     */
+    @SuppressLint("JavascriptInterface")
+    private void initWebView() {
+        webView = TurbolinksHelper.createWebView(applicationContext);
+        webViewProfile.applyTo(webView);
+        webView.addJavascriptInterface(new JavascriptBridge(webView), JAVASCRIPT_INTERFACE_NAME);
+        webView.setWebViewClient(webViewClient);
+
+        for (Map.Entry<String, Object> entry : javascriptInterfaces.entrySet()) {
+            webView.addJavascriptInterface(entry.getValue(), entry.getKey());
+        }
+
+        if (activity != null && webView.getContext() instanceof MutableContextWrapper) {
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(activity);
+        }
+    }
+
+    /**
+     * <p>Loads the current location in the WebView, starting a cold boot.</p>
+     */
+    private void coldBoot() {
+        TurbolinksLog.d("Cold booting: " + location);
+
+        coldBootFailed = false;
+        coldBootWatchdog.start();
+        debugOverlay.coldBootStarted();
+        coldBootStartTime = SystemClock.uptimeMillis();
+        route = TurbolinksLatencyStats.routeFor(location);
+        imageDeferral.deferForColdBoot(webView, isImageDeferralEnabled(location));
+        webView.loadUrl(location);
+    }
+
+    /**
+     * <p>Handles a cold boot whose main frame failed, whether the request itself failed or returned
+     * an HTTP error. Each cold boot reports at most one failure, as soon as the first one is known:
+     * the rest of the page load is ignored, so an error page doesn't go on to be reported again as a
+     * page without Turbolinks.</p>
+     *
+     * <p>Transient failures are retried by the {@link #visitRetrier}. Otherwise the failure is
+     * passed to the adapter.</p>
+     *
+     * @param errorCode A WebViewClient ERROR constant, or an HTTP status code.
+     */
+    private void coldBootFailedWithError(int errorCode) {
+        if (coldBootFailed) return;
+
+        coldBootFailed = true;
+        resetToColdBoot();
+
+        if (visitRetrier.visitFailed(location, errorCode)) {
+            webView.stopLoading(); // No need to load an error page that's about to be replaced
+            return;
+        }
+
+        turbolinksAdapter.onReceivedError(errorCode);
+    }
+
+    /**
+     * <p>Handles a cold boot that stalled in one of its phases. The WebView is stopped and the
+     * session is reset, so the next visit can cold boot again instead of waiting forever. The first
+     * stall is retried right away. A second one is reported to the adapter, with the phase if it's a
+     * {@link TurbolinksErrorAdapter}, otherwise as a timeout error.</p>
+     *
+     * @param phase The phase that missed its deadline.
+     */
+    private void coldBootStalled(String phase) {
+        TurbolinksLog.e("Cold boot stalled waiting for " + phase + ": " + location);
+        recordMetric(TurbolinksMetricsListener.COLD_BOOT_STALLED, 1);
+
+        webView.stopLoading();
+        resetToColdBoot();
+
+        if (!coldBootStallRetried && activity != null && !TextUtils.isEmpty(location)) {
+            coldBootStallRetried = true;
+            coldBoot();
+            return;
+        }
+
+        coldBootStallRetried = false;
+        coldBootFailed = true; // Ignore whatever the stopped page load still reports
+
+        if (turbolinksAdapter instanceof TurbolinksErrorAdapter) {
+            ((TurbolinksErrorAdapter) turbolinksAdapter).onColdBootTimeout(phase);
+        } else if (turbolinksAdapter != null) {
+            turbolinksAdapter.onReceivedError(WebViewClient.ERROR_TIMEOUT);
+        }
+    }
+
+    /**
+     * <p>Visits a failed location again: as a Turbolinks visit that replaces the failed one if
+     * Turbolinks is ready, otherwise with a new cold boot.</p>
+     *
+     * @param location The location that failed.
+     */
+    private void retryFailedVisit(String location) {
+        if (activity == null || turbolinksView == null) return;
+
+        if (turbolinksIsReady) {
+            recordMetric(TurbolinksMetricsListener.VISIT_RETRIED, 1);
+            initProgressView();
+            visitLocationWithAction(location, ACTION_REPLACE);
+        } else if (!coldBootInProgress) {
+            recordMetric(TurbolinksMetricsListener.COLD_BOOT_RETRIED, 1);
+            this.location = location;
+            initProgressView();
+            coldBoot();
+        }
+    }
+
+    /**
+     * <p>Swaps the session's WebView for the one cached for a TurbolinksView, or parks it in the
+     * cache and continues in a fresh WebView when moving to a view that has none.</p>
+     *
+     * <p>Only a WebView where Turbolinks is ready is worth parking. Otherwise it's destroyed when a
+     * cached WebView takes over, or moved to the new view as usual.</p>
+     *
+     * @param newTurbolinksView The TurbolinksView about to be shown.
+     */
+    private void swapCachedWebView(TurbolinksView newTurbolinksView) {
+        TurbolinksView previousTurbolinksView = getAttachedTurbolinksView();
+        if (previousTurbolinksView == newTurbolinksView) return;
+
+        boolean parkable = previousTurbolinksView != null && turbolinksIsReady && !TurbolinksWebViewCache.isFinishing(previousTurbolinksView);
+        TurbolinksWebViewCache.Entry entry = webViewCache.remove(newTurbolinksView);
+
+        if (entry == null) {
+            if (webViewCache.removeEvicted(newTurbolinksView)) {
+                recordMetric(TurbolinksMetricsListener.WEBVIEW_CACHE_MISS, 1);
+            }
+
+            if (parkable) {
+                parkWebView(previousTurbolinksView);
+                initWebView();
+                webViewThrottle.webViewReplaced(webView);
+                resetToColdBoot();
+                currentVisitIdentifier = null;
+                TurbolinksLog.d("WebView cached, continuing in a new WebView");
+            }
+            return;
+        }
+
+        if (parkable) {
+            parkWebView(previousTurbolinksView);
+        } else {
+            if (previousTurbolinksView != null) {
+                previousTurbolinksView.detachWebView(webView, screenshotsEnabled && visitOptions.isScreenshotsEnabled());
+            }
+            webView.destroy();
+        }
+
+        webView = entry.webView;
+        location = entry.location;
+        currentVisitIdentifier = entry.currentVisitIdentifier;
+        visitOptions = entry.visitOptions;
+        pageUpdateChannel.locationChanged(location);
+
+        resetToColdBoot();
+        bridgeInjectedOnCommit = false;
+        turbolinksIsReady = true;
+        webViewRestoredFromCache = true;
+
+        if (activity != null && webView.getContext() instanceof MutableContextWrapper) {
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(activity);
+        }
+
+        webView.onResume();
+        runJavascript("webView.setParked", false);
+        webViewThrottle.webViewReplaced(webView);
+        TurbolinksLog.d("Swapped in cached WebView: " + location);
+    }
+
+    /**
+     * <p>Puts the session's WebView and the state of its page in the cache, leaving it attached to
+     * its TurbolinksView. The page stops proposing visits and the WebView is paused until it's
+     * swapped back in.</p>
+     *
+     * @param turbolinksView The TurbolinksView showing the WebView.
+     */
+    private void parkWebView(TurbolinksView turbolinksView) {
+        TurbolinksWebViewCache.Entry entry = new TurbolinksWebViewCache.Entry();
+        entry.webView = webView;
+        entry.location = location;
+        entry.currentVisitIdentifier = currentVisitIdentifier;
+        entry.visitOptions = visitOptions;
+
+        // The session's activity has already moved on, so keep the WebView on its own activity
+        if (webView.getContext() instanceof MutableContextWrapper) {
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(turbolinksView.getContext());
+        }
+
+        runJavascript("webView.setParked", true);
+        webView.onPause();
+        webViewCache.put(turbolinksView, entry);
+    }
+
+    /**
+     * @return The TurbolinksView the session's WebView is attached to, or null.
+     */
+    private TurbolinksView getAttachedTurbolinksView() {
+        ViewParent refreshLayout = webView.getParent();
+
+        if (refreshLayout != null && refreshLayout.getParent() instanceof TurbolinksView) {
+            return (TurbolinksView) refreshLayout.getParent();
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>Destroys the dead WebView and replaces it with a fresh one, attached to the current
+     * TurbolinksView and cold booted to the last location.</p>
+     *
+     * <p>A warm spare WebView isn't kept around, since holding another one in memory would only add
+     * to the memory pressure that typically kills the render process.</p>
+     */
+    void recoverFromRenderProcessGone() {
+        renderProcessGoneTime = SystemClock.uptimeMillis();
+
+        WebView deadWebView = webView;
+        if (deadWebView.getParent() != null) {
+            ((ViewGroup) deadWebView.getParent()).removeView(deadWebView);
+        }
+        deadWebView.destroy();
+
+        initWebView();
+        webViewThrottle.webViewReplaced(webView);
+        resetToColdBoot();
+
+        if (turbolinksView == null) return;
+
+        webViewAttachedToNewParent = turbolinksView.attachWebView(webView, screenshotsEnabled && visitOptions.isScreenshotsEnabled(), pullToRefreshEnabled);
+
+        if (activity != null && turbolinksAdapter != null && !TextUtils.isEmpty(location)) {
+            TurbolinksLog.d("Recovering from render process gone, cold booting: " + location);
+            visit(location);
+        }
+    }
+
+    /**
+     * <p>Adds the restoration (cached scroll position) identifier to the local Hashmap.</p>
+     *
+     * @param value Restoration ID provided by Turbolinks.
+     */
+    private void addRestorationIdentifierToMap(String value) {
+        if (activity != null) {
+            restorationIdentifierMap.put(activity.toString(), value);
+
+            if (location != null) {
+                restorationLocationMap.put(activity.toString(), location);
+            }
+        }
+    }
+
+    /**
+     * <p>Gets the restoration ID for the current activity. An activity recreated after the process
+     * was killed has none yet, so it gets the one saved for its location, once.</p>
+     *
+     * @return Restoration ID for the current activity.
+     */
+    String getRestorationIdentifierFromMap() {
+        String restorationIdentifier = restorationIdentifierMap.get(activity.toString());
+
+        if (restorationIdentifier == null && location != null) {
+            restorationIdentifier = savedRestorationIdentifierMap.remove(location);
+        }
+
+        return restorationIdentifier;
+    }
+
+    /**
+     * <p>Hides the progress view, as long as the visit is still the current one. Must be called
+     * on the main thread.</p>
+     *
+     * @param visitIdentifier A unique identifier for the visit.
+     */
+    private void hideProgressViewIfCurrentVisit(String visitIdentifier) {
+        if (turbolinksIsReady && TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
+            imageDeferral.release();
+            TurbolinksLog.d("Hiding progress view for visitIdentifier: " + visitIdentifier + ", currentVisitIdentifier: " + currentVisitIdentifier);
+            turbolinksView.hideProgress();
+        }
+    }
+
+    /**
+     * <p>Determines whether network images are held back until the page renders at a location:
+     * the path configuration decides if it sets {@link TurbolinksPathProperties#DEFER_IMAGES},
+     * otherwise the WebView profile does.</p>
+     *
+     * @param location The location being visited or cold booted.
+     * @return True if images are deferred.
+     */
+    private boolean isImageDeferralEnabled(String location) {
+        boolean enabled = webViewProfile.isNetworkImagesBlockedUntilRender();
+
+        if (pathConfiguration != null) {
+            return pathConfiguration.getProperties(location).isImagesDeferred(enabled);
+        }
+
+        return enabled;
+    }
+
+    /**
+     * <p>Waits for the WebView to commit the rendered visit to the screen before hiding the
+     * progress view.</p>
+     *
+     * @param visitIdentifier A unique identifier for the visit.
+     */
+    private void hideProgressViewAfterVisualStateCommitted(final String visitIdentifier) {
+        bridgeDispatcher.dispatch(TurbolinksBridgeDispatcher.VISUAL_STATE, visitIdentifier, new Runnable() {
+            @Override
+            @TargetApi(Build.VERSION_CODES.M)
+            public void run() {
+                final long start = SystemClock.uptimeMillis();
+
+                webView.postVisualStateCallback(start, new WebView.VisualStateCallback() {
+                    @Override
+                    public void onComplete(long requestId) {
+                        recordMetric(TurbolinksMetricsListener.RENDER_DETECTION_LATENCY, SystemClock.uptimeMillis() - start);
+                        debugOverlay.rendered(visitIdentifier);
+                        recordRenderTime(visitIdentifier);
+                        hideProgressViewIfCurrentVisit(visitIdentifier);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * <p>Passes a batched bridge event to its TurbolinksNative adapter method, and backdates the
+     * visit timings it starts to when Turbolinks raised it.</p>
+     *
+     * @param name      The adapter method name.
+     * @param arguments The adapter method arguments.
+     * @param raisedAt  When Turbolinks raised the event, in uptime milliseconds.
+     */
+    private void dispatchEvent(String name, JSONArray arguments, long raisedAt) {
+        if (arguments == null) arguments = new JSONArray();
+
+        switch (name) {
+            case "visitProposedToLocationWithAction":
+                visitProposedToLocationWithAction(arguments.optString(0), arguments.optString(1));
+                break;
+            case "visitStarted":
+                visitStarted(arguments.optString(0), arguments.optBoolean(1));
+                visitStartTime = raisedAt;
+                break;
+            case "visitRequestCompleted":
+                visitRequestCompleted(arguments.optString(0));
+                if (TextUtils.equals(arguments.optString(0), currentVisitIdentifier)) visitResponseTime = raisedAt;
+                break;
+            case "visitRequestFailedWithStatusCode":
+                visitRequestFailedWithStatusCode(arguments.optString(0), arguments.optInt(1));
+                break;
+            case "visitRendered":
+                visitRendered(arguments.optString(0), arguments.optInt(1));
+                break;
+            case "visitCompleted":
+                visitCompleted(arguments.optString(0), arguments.optString(1));
+                break;
+            case "pageInvalidated":
+                pageInvalidated();
+                break;
+            default:
+                TurbolinksLog.d("Unknown bridge event: " + name);
+        }
+    }
+
+    /**
+     * <p>Records the time from a visit's response until it's rendered, and from its start until
+     * it's rendered, told apart by whether its images were deferred. Visits rendered from a cached
+     * snapshot before their response arrives aren't counted.</p>
+     *
+     * @param visitIdentifier The visit that was rendered.
+     */
+    private void recordRenderTime(String visitIdentifier) {
+        long responseTime = visitResponseTime;
+
+        if (responseTime > 0 && TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
+            long now = SystemClock.uptimeMillis();
+            latencyStats.record(route, TurbolinksLatencyStats.RENDER_TIME, now - responseTime);
+            recordMetric(imageDeferral.isVisitDeferred() ? TurbolinksMetricsListener.TIME_TO_RENDER_IMAGES_DEFERRED : TurbolinksMetricsListener.TIME_TO_RENDER, now - visitStartTime);
+            visitResponseTime = 0;
+        }
+    }
+
+    /**
+     * <p>Passes a metric along to the metrics listener, if one is set.</p>
+     *
+     * @param metric The metric name, one of the {@link TurbolinksMetricsListener} constants.
+     * @param value  The metric value.
+     */
+    void recordMetric(String metric, long value) {
+        TurbolinksMetricsListener listener = metricsListener;
+        if (listener != null) {
+            listener.onMetricRecorded(metric, location, value);
+        }
+    }
+
+    /**
+     * <p>Shows the progress view, either a custom one provided or the default.</p>
+     *
+     * <p>A default progress view is inflated once per session if {@link #progressView} isn't
+     * called. It's reused across TurbolinksViews, which take care of re-parenting it when needed.</p>
+     */
+    private void initProgressView() {
+        long start = frameMonitor.begin();
+
+        // No custom progress view provided, use default
+        if (progressView == null) {
+            progressView = LayoutInflater.from(activity).inflate(R.layout.turbolinks_progress, turbolinksView, false);
+
+            TurbolinksLog.d("TurbolinksSession background: " + turbolinksView.getBackground());
+            progressView.setBackground(turbolinksView.getBackground());
+            progressIndicator = progressView.findViewById(R.id.turbolinks_default_progress_indicator);
+            progressIndicatorDelay = PROGRESS_INDICATOR_DELAY;
+
+            Drawable background = turbolinksView.getBackground() != null ? turbolinksView.getBackground() : new ColorDrawable(activity.getResources().getColor(android.R.color.white));
+            progressView.setBackground(background);
+        }
+
+        // Executed from here to account for progress indicator delay
+        int delay = visitOptions.getProgressIndicatorDelay() >= 0 ? visitOptions.getProgressIndicatorDelay() : progressIndicatorDelay;
+        turbolinksView.showProgress(progressView, progressIndicator, delay);
+        frameMonitor.end(TurbolinksJankListener.SECTION_PROGRESS_VIEW, start);
+    }
+
+    /**
+     * <p>Combines the visit options with the path configuration settings for the current location,
+     * and applies them all at once. The effective options are kept for the rest of the visit, like
+     * when the WebView leaves this page for another TurbolinksView.</p>
+     *
+     * @param options The settings for this visit, or null for the defaults.
+     */
+    private void applyVisitOptions(TurbolinksVisitOptions options) {
+        TurbolinksPathProperties properties = pathConfiguration != null ? pathConfiguration.getProperties(location) : TurbolinksPathProperties.EMPTY;
+        TurbolinksVisitOptions effectiveOptions = options != null ? new TurbolinksVisitOptions(options) : new TurbolinksVisitOptions();
+
+        effectiveOptions.screenshotsEnabled(effectiveOptions.isScreenshotsEnabled() && properties.isScreenshotsEnabled());
+
+        webView.getSettings().setCacheMode(getCacheMode(effectiveOptions));
+        if (turbolinksView != null) {
+            turbolinksView.getRefreshLayout().setEnabled(pullToRefreshEnabled && properties.isPullToRefreshEnabled());
+        }
+
+        visitOptions = effectiveOptions;
+    }
+
+    /**
+     * @param options The effective options of a visit.
+     * @return The WebView cache mode for the visit, from its options or else the WebView profile.
+     */
+    private int getCacheMode(TurbolinksVisitOptions options) {
+        int cacheMode = options.getCacheMode();
+        return cacheMode != WebSettings.LOAD_DEFAULT ? cacheMode : webViewProfile.getCacheMode();
+    }
+
+    /**
+     * <p>Convenience method to simply revisit the current location in the TurbolinksSession. Useful
+     * so that different visit logic can be wrappered around this call in {@link #visit} or
+     * {@link #setTurbolinksIsReady(boolean)}</p>
+     */
+    private void visitCurrentLocationWithTurbolinks() {
+        TurbolinksLog.d("Visiting current stored location: " + location);
+
+        boolean restore = restoreWithCachedSnapshot || visitOptions.isRestoreWithCachedSnapshot();
+        String action = restore ? ACTION_RESTORE : ACTION_ADVANCE;
+        visitLocationWithAction(location, action);
+    }
+
+    /**
+     * <p>Ensures all required chained calls/parameters ({@link #activity}, {@link #turbolinksView},
+     * and location}) are set before calling {@link #visit(String)}.</p>
+     */
+    private void validateRequiredParams() {
+        if (activity == null) {
+            throw new IllegalArgumentException("TurbolinksSession.activity(activity) must be called with a non-null object.");
+        }
+
+        if (turbolinksAdapter == null) {
+            throw new IllegalArgumentException("TurbolinksSession.adapter(turbolinksAdapter) must be called with a non-null object.");
+        }
+
+        if (turbolinksView == null) {
+            throw new IllegalArgumentException("TurbolinksSession.view(turbolinksView) must be called with a non-null object.");
         }
 
         if (TextUtils.isEmpty(location)) {
@@ -813,4 +2142,48 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     public boolean canChildScrollUp() {
         return this.webView.getScrollY() > 0;
     }
+
+    // ---------------------------------------------------
+    // Javascript bridge
+    // ---------------------------------------------------
+
+    /**
+     * <p>The TurbolinksNative interface of a single WebView. Calls are passed on to the session only
+     * while it's the session's WebView. A parked WebView, or one being replaced, keeps running its
+     * page, and anything it reports is about a page the session no longer shows, so it's dropped.</p>
+     */
+    class JavascriptBridge {
+        private final WebView bridgedWebView;
+
+        JavascriptBridge(WebView bridgedWebView) {
+            this.bridgedWebView = bridgedWebView;
+        }
+
+        @android.webkit.JavascriptInterface
+        public void setTurbolinksIsReady(boolean turbolinksIsReady) {
+            if (isCurrent("setTurbolinksIsReady")) TurbolinksSession.this.setTurbolinksIsReady(turbolinksIsReady);
+        }
+
+        @android.webkit.JavascriptInterface
+        public void turbolinksDoesNotExist() {
+            if (isCurrent("turbolinksDoesNotExist")) TurbolinksSession.this.turbolinksDoesNotExist();
+        }
+
+        @android.webkit.JavascriptInterface
+        public void receiveMessages(String messagesJson) {
+            if (isCurrent("receiveMessages")) TurbolinksSession.this.receiveMessages(messagesJson);
+        }
+
+        @android.webkit.JavascriptInterface
+        public void receiveEvents(String batchJson) {
+            if (isCurrent("receiveEvents")) TurbolinksSession.this.receiveEvents(batchJson);
+        }
+
+        private boolean isCurrent(String method) {
+            if (bridgedWebView == webView) return true;
+
+            TurbolinksLog.d("Dropped " + method + " from a WebView the session no longer shows");
+            return false;
+        }
+    }
 }
@@ -0,0 +1,128 @@
+package com.basecamp.turbolinks;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+
+/**
+ * <p>Connectivity from the system's ConnectivityManager. Changes are only listened for while
+ * there's a listener: with a network callback on Lollipop and up, and the connectivity broadcast
+ * before that.</p>
+ */
+class TurbolinksSystemConnectivity implements TurbolinksConnectivity {
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private final Handler handler;
+    private Listener listener;
+    private BroadcastReceiver receiver;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * @param context Any Android context.
+     */
+    TurbolinksSystemConnectivity(Context context) {
+        this.context = context.getApplicationContext();
+        this.connectivityManager = (ConnectivityManager) this.context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.handler = new Handler(this.context.getMainLooper());
+    }
+
+    // ---------------------------------------------------
+    // TurbolinksConnectivity
+    // ---------------------------------------------------
+
+    @Override
+    public boolean isOnline() {
+        if (connectivityManager == null) return true;
+
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        if (this.listener == listener) return;
+
+        unregister();
+        this.listener = listener;
+
+        if (listener != null && connectivityManager != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                registerNetworkCallback();
+            } else {
+                registerReceiver();
+            }
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerNetworkCallback() {
+        NetworkRequest request = new NetworkRequest.Builder()
+            .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+            .build();
+
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                // Called on a ConnectivityManager thread
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        notifyIfOnline();
+                    }
+                });
+            }
+        };
+
+        connectivityManager.registerNetworkCallback(request, networkCallback);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void registerReceiver() {
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                notifyIfOnline();
+            }
+        };
+
+        context.registerReceiver(receiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void unregister() {
+        if (networkCallback != null) {
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+            networkCallback = null;
+        }
+
+        if (receiver != null) {
+            context.unregisterReceiver(receiver);
+            receiver = null;
+        }
+    }
+
+    private void notifyIfOnline() {
+        Listener listener = this.listener;
+
+        if (listener != null && isOnline()) {
+            listener.onConnectivityRestored();
+        }
+    }
+}
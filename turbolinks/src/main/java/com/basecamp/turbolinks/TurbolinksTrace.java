@@ -0,0 +1,110 @@
+package com.basecamp.turbolinks;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.lang.reflect.Method;
+
+/**
+ * <p>Emits android.os.Trace sections, so Turbolinks' spans show up in Perfetto and systrace next to
+ * Chromium's own trace events. Off by default, everything is a no-op until the app turns it on with
+ * {@link TurbolinksSession#setTracingEnabled(boolean)}, typically for its own debug builds.</p>
+ *
+ * <p>Async sections, which can start and end on different threads, need API 29. They're looked up
+ * at runtime since the library compiles against an older SDK, and skipped on older versions.</p>
+ */
+class TurbolinksTrace {
+    static final String COLD_BOOT = "Turbolinks cold boot";
+    static final String VISIT = "Turbolinks visit";
+    static final String REQUEST = "Turbolinks request";
+    static final String RENDER = "Turbolinks render";
+    static final String SCREENSHOT = "Turbolinks screenshot";
+
+    private static final int API_29 = 29;
+    private static final Method beginAsyncSection = asyncSectionMethod("beginAsyncSection");
+    private static final Method endAsyncSection = asyncSectionMethod("endAsyncSection");
+    private static volatile boolean enabled = false;
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @param enabled True to emit trace sections.
+     */
+    static void setEnabled(boolean enabled) {
+        TurbolinksTrace.enabled = enabled;
+    }
+
+    /**
+     * @return Whether trace sections are emitted.
+     */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * <p>Begins a section on the current thread. Must be ended on the same thread.</p>
+     *
+     * @param name The section name.
+     */
+    static void beginSection(String name) {
+        if (enabled) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * <p>Ends the last section begun on the current thread.</p>
+     */
+    static void endSection() {
+        if (enabled) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * <p>Begins an async section, which may end on any thread.</p>
+     *
+     * @param name   The section name.
+     * @param cookie Tells apart concurrent sections with the same name, like a visit identifier.
+     */
+    static void beginAsyncSection(String name, Object cookie) {
+        invoke(beginAsyncSection, name, cookie);
+    }
+
+    /**
+     * <p>Ends an async section with the same name and cookie.</p>
+     *
+     * @param name   The section name.
+     * @param cookie The cookie the section began with.
+     */
+    static void endAsyncSection(String name, Object cookie) {
+        invoke(endAsyncSection, name, cookie);
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static Method asyncSectionMethod(String name) {
+        if (Build.VERSION.SDK_INT < API_29) return null;
+
+        try {
+            return Trace.class.getMethod(name, String.class, int.class);
+        } catch (NoSuchMethodException e) {
+            TurbolinksLog.e("Async trace sections unavailable: " + e.toString());
+            return null;
+        }
+    }
+
+    private static void invoke(Method method, String name, Object cookie) {
+        if (!enabled || method == null || cookie == null) return;
+
+        try {
+            method.invoke(null, name, cookie.hashCode());
+        } catch (Exception e) {
+            TurbolinksLog.e("Error tracing " + name + ": " + e.toString());
+        }
+    }
+}
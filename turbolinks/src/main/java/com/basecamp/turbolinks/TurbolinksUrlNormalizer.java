@@ -0,0 +1,354 @@
+package com.basecamp.turbolinks;
+
+import java.net.IDN;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Normalizes locations before they're passed to Turbolinks, in a single pass over the string.</p>
+ *
+ * <ul>
+ * <li>The scheme and host are lowercased, and internationalized hosts are converted to their ASCII
+ * (punycode) form.</li>
+ * <li>Characters that aren't allowed in the userinfo, path, query or fragment are percent-encoded,
+ * non-ASCII characters as UTF-8.</li>
+ * <li>Sequences that are already percent-encoded are left alone, so encoding twice changes
+ * nothing.</li>
+ * </ul>
+ *
+ * <p>A location that doesn't need any changes is returned as-is, without copying it. Recently
+ * normalized locations are remembered, since the same few are visited over and over.</p>
+ */
+class TurbolinksUrlNormalizer {
+    static final int MEMO_SIZE = 64;
+
+    private static final int PATH = 0;
+    private static final int QUERY = 1;
+    private static final int FRAGMENT = 2;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String UNRESERVED_AND_SUB_DELIMS = "-._~!$&'()*+,;=";
+    private static final boolean[] USERINFO_ALLOWED = allowedCharacters(UNRESERVED_AND_SUB_DELIMS + ":");
+    private static final boolean[] HOST_ALLOWED = allowedCharacters("-._~");
+    private static final boolean[] PATH_ALLOWED = allowedCharacters(UNRESERVED_AND_SUB_DELIMS + ":@/");
+    private static final boolean[] QUERY_ALLOWED = allowedCharacters(UNRESERVED_AND_SUB_DELIMS + ":@/?");
+
+    private static final Map<String, String> memo = new LinkedHashMap<String, String>(MEMO_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MEMO_SIZE;
+        }
+    };
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Normalizes a location, using the remembered result if it was normalized recently. Safe to
+     * call from any thread.</p>
+     *
+     * @param location An absolute URL.
+     * @return The normalized URL.
+     * @throws IllegalArgumentException If the location isn't a valid absolute URL.
+     */
+    static String normalize(String location) {
+        if (location == null) {
+            throw new IllegalArgumentException("Location must not be null.");
+        }
+
+        synchronized (memo) {
+            String normalized = memo.get(location);
+            if (normalized != null) return normalized;
+        }
+
+        String normalized = normalizeUncached(location);
+
+        synchronized (memo) {
+            memo.put(location, normalized);
+        }
+
+        return normalized;
+    }
+
+    /**
+     * <p>Normalizes a location without looking at or updating the remembered results.</p>
+     *
+     * @param location An absolute URL.
+     * @return The normalized URL.
+     * @throws IllegalArgumentException If the location isn't a valid absolute URL.
+     */
+    static String normalizeUncached(String location) {
+        Output output = new Output(location);
+        int length = location.length();
+        int schemeEnd = location.indexOf(':');
+
+        if (schemeEnd <= 0 || !isValidScheme(location, schemeEnd)) {
+            throw new IllegalArgumentException("Location has no valid scheme: " + location);
+        }
+
+        for (int i = 0; i < schemeEnd; i++) {
+            char c = location.charAt(i);
+            if (c >= 'A' && c <= 'Z') output.replace(i, i + 1, Character.toLowerCase(c));
+        }
+
+        int i = schemeEnd + 1;
+
+        if (location.startsWith("//", i)) {
+            int authorityStart = i + 2;
+            int authorityEnd = indexOfAuthorityEnd(location, authorityStart);
+            int hostStart = authorityStart;
+
+            int userInfoEnd = location.lastIndexOf('@', authorityEnd - 1);
+            if (userInfoEnd >= authorityStart) {
+                encodeRange(output, location, authorityStart, userInfoEnd, USERINFO_ALLOWED);
+                hostStart = userInfoEnd + 1;
+            }
+
+            int portStart = indexOfPort(location, hostStart, authorityEnd);
+            int hostEnd = portStart >= 0 ? portStart : authorityEnd;
+
+            if (hostStart == hostEnd && isWebScheme(location, schemeEnd)) {
+                throw new IllegalArgumentException("Location has no host: " + location);
+            }
+
+            normalizeHost(output, location, hostStart, hostEnd);
+
+            if (portStart >= 0) {
+                for (int j = portStart + 1; j < authorityEnd; j++) {
+                    if (location.charAt(j) < '0' || location.charAt(j) > '9') {
+                        throw new IllegalArgumentException("Location has an invalid port: " + location);
+                    }
+                }
+            }
+
+            i = authorityEnd;
+        }
+
+        int part = PATH;
+        while (i < length) {
+            char c = location.charAt(i);
+
+            if (c == '?' && part == PATH) {
+                part = QUERY;
+                i++;
+            } else if (c == '#' && part != FRAGMENT) {
+                part = FRAGMENT;
+                i++;
+            } else {
+                i = encodeCharacter(output, location, i, part == PATH ? PATH_ALLOWED : QUERY_ALLOWED);
+            }
+        }
+
+        return output.toString();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static boolean isValidScheme(String location, int schemeEnd) {
+        for (int i = 0; i < schemeEnd; i++) {
+            char c = location.charAt(i);
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+
+            if (!letter && (i == 0 || !((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isWebScheme(String location, int schemeEnd) {
+        return (schemeEnd == 4 && location.regionMatches(true, 0, "http", 0, 4)) ||
+            (schemeEnd == 5 && location.regionMatches(true, 0, "https", 0, 5));
+    }
+
+    private static int indexOfAuthorityEnd(String location, int start) {
+        for (int i = start; i < location.length(); i++) {
+            char c = location.charAt(i);
+            if (c == '/' || c == '?' || c == '#') return i;
+        }
+
+        return location.length();
+    }
+
+    /**
+     * <p>Finds the colon before the port, skipping the colons of an IPv6 literal.</p>
+     */
+    private static int indexOfPort(String location, int hostStart, int authorityEnd) {
+        int searchStart = hostStart;
+
+        if (hostStart < authorityEnd && location.charAt(hostStart) == '[') {
+            int literalEnd = location.indexOf(']', hostStart);
+            if (literalEnd < 0 || literalEnd >= authorityEnd) {
+                throw new IllegalArgumentException("Location has an invalid host: " + location);
+            }
+            searchStart = literalEnd;
+        }
+
+        int portStart = location.indexOf(':', searchStart);
+        return portStart >= 0 && portStart < authorityEnd ? portStart : -1;
+    }
+
+    /**
+     * <p>Lowercases the host, converting it to ASCII first if it's internationalized.</p>
+     */
+    private static void normalizeHost(Output output, String location, int start, int end) {
+        if (start < end && location.charAt(start) == '[') {
+            validateIpLiteral(location, start, end);
+            return;
+        }
+
+        boolean ascii = true;
+        boolean lowercase = true;
+
+        for (int i = start; i < end; i++) {
+            char c = location.charAt(i);
+
+            if (c >= 0x80) {
+                ascii = false;
+            } else if (!HOST_ALLOWED[c]) {
+                throw new IllegalArgumentException("Location has an invalid host: " + location);
+            } else if (c >= 'A' && c <= 'Z') {
+                lowercase = false;
+            }
+        }
+
+        if (ascii && lowercase) return;
+
+        String host = location.substring(start, end);
+        if (!ascii) {
+            host = IDN.toASCII(host, IDN.ALLOW_UNASSIGNED);
+
+            for (int i = 0; i < host.length(); i++) {
+                if (host.charAt(i) >= 0x80 || !HOST_ALLOWED[host.charAt(i)]) {
+                    throw new IllegalArgumentException("Location has an invalid host: " + location);
+                }
+            }
+        }
+
+        output.replace(start, end, host.toLowerCase(Locale.US));
+    }
+
+    /**
+     * <p>Checks that an IPv6 literal only has the characters of one. Its syntax isn't fully
+     * validated, the WebView rejects malformed addresses when it loads them.</p>
+     */
+    private static void validateIpLiteral(String location, int start, int end) {
+        boolean valid = end - start >= 4 && location.charAt(end - 1) == ']';
+        boolean hasColon = false;
+
+        for (int i = start + 1; valid && i < end - 1; i++) {
+            char c = location.charAt(i);
+            hasColon = hasColon || c == ':';
+            valid = isHexDigit(c) || c == ':' || c == '.';
+        }
+
+        if (!valid || !hasColon) {
+            throw new IllegalArgumentException("Location has an invalid host: " + location);
+        }
+    }
+
+    private static void encodeRange(Output output, String location, int start, int end, boolean[] allowed) {
+        int i = start;
+        while (i < end) {
+            i = encodeCharacter(output, location, i, allowed);
+        }
+    }
+
+    /**
+     * <p>Percent-encodes the character at an index if it isn't allowed, leaving valid
+     * percent-encoded sequences alone.</p>
+     *
+     * @return The index of the next character.
+     */
+    private static int encodeCharacter(Output output, String location, int i, boolean[] allowed) {
+        char c = location.charAt(i);
+
+        if (c == '%') {
+            if (i + 2 < location.length() && isHexDigit(location.charAt(i + 1)) && isHexDigit(location.charAt(i + 2))) {
+                return i + 3;
+            }
+
+            output.replace(i, i + 1, "%25");
+            return i + 1;
+        }
+
+        if (c < 0x80) {
+            if (!allowed[c]) output.replace(i, i + 1, percentEncode(c));
+            return i + 1;
+        }
+
+        int codePoint = location.codePointAt(i);
+        int count = Character.charCount(codePoint);
+        output.replace(i, i + count, percentEncodeUtf8(Character.isSurrogate(c) && count == 1 ? 0xFFFD : codePoint));
+        return i + count;
+    }
+
+    private static String percentEncode(int b) {
+        return new String(new char[]{'%', HEX_DIGITS[(b >> 4) & 0xF], HEX_DIGITS[b & 0xF]});
+    }
+
+    private static String percentEncodeUtf8(int codePoint) {
+        if (codePoint < 0x800) {
+            return percentEncode(0xC0 | (codePoint >> 6)) + percentEncode(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            return percentEncode(0xE0 | (codePoint >> 12)) + percentEncode(0x80 | ((codePoint >> 6) & 0x3F)) +
+                percentEncode(0x80 | (codePoint & 0x3F));
+        } else {
+            return percentEncode(0xF0 | (codePoint >> 18)) + percentEncode(0x80 | ((codePoint >> 12) & 0x3F)) +
+                percentEncode(0x80 | ((codePoint >> 6) & 0x3F)) + percentEncode(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean[] allowedCharacters(String symbols) {
+        boolean[] allowed = new boolean[0x80];
+
+        for (char c = '0'; c <= '9'; c++) allowed[c] = true;
+        for (char c = 'a'; c <= 'z'; c++) allowed[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++) allowed[c] = true;
+        for (int i = 0; i < symbols.length(); i++) allowed[symbols.charAt(i)] = true;
+
+        return allowed;
+    }
+
+    /**
+     * <p>Builds the normalized string, copying the original only once something has to change.</p>
+     */
+    private static class Output {
+        private final String source;
+        private StringBuilder builder;
+        private int copiedUntil;
+
+        Output(String source) {
+            this.source = source;
+        }
+
+        void replace(int start, int end, char replacement) {
+            replace(start, end, String.valueOf(replacement));
+        }
+
+        void replace(int start, int end, String replacement) {
+            if (builder == null) {
+                builder = new StringBuilder(source.length() + 16);
+            }
+
+            builder.append(source, copiedUntil, start).append(replacement);
+            copiedUntil = end;
+        }
+
+        @Override
+        public String toString() {
+            if (builder == null) return source;
+
+            return builder.append(source, copiedUntil, source.length()).toString();
+        }
+    }
+}
@@ -7,9 +7,10 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Build;
-import android.os.Handler;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewGroup;
 import android.webkit.WebView;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
@@ -29,8 +30,11 @@ import android.widget.ImageView;
 public class TurbolinksView extends FrameLayout {
     private TurbolinksSwipeRefreshLayout refreshLayout = null;
     private View progressView = null;
+    private Runnable showProgressIndicator = null;
     private ImageView screenshotView = null;
     private int screenshotOrientation = 0;
+    TurbolinksDebugOverlay debugOverlay = null; // Set by the session, to report screenshot timings
+    TurbolinksFrameMonitor frameMonitor = null; // Set by the session, to time screenshots on the main thread
 
     // ---------------------------------------------------
     // Constructors
@@ -102,6 +106,8 @@ public class TurbolinksView extends FrameLayout {
      * webview is restoring its snapshot.</p>
      * <p>Progress indicator is set to a specified delay before displaying -- a very short delay
      * (like 500 ms) can improve perceived loading time to the user.</p>
+     * <p>The progress view is shared across TurbolinksViews. It's only moved when it belongs to
+     * another view, otherwise its visibility is toggled to avoid a layout pass.</p>
      *
      * @param progressView      The progressView to display on top of TurbolinksView.
      * @param progressIndicator The progressIndicator to display in the view.
@@ -114,21 +120,32 @@ public class TurbolinksView extends FrameLayout {
         // Don't show the progress view if a screenshot is available
         if (screenshotView != null && screenshotOrientation == getOrientation()) return;
 
-        hideProgress();
+        cancelProgressIndicator();
+        removeScreenshotView();
+        if (this.progressView != progressView) hideProgressView();
 
         this.progressView = progressView;
         progressView.setClickable(true);
-        addView(progressView);
+        progressView.setVisibility(View.VISIBLE);
+
+        if (progressView.getParent() != this) {
+            // A progress view is reused, so ensure it's detached from its previous parent first
+            if (progressView.getParent() != null) {
+                ((ViewGroup) progressView.getParent()).removeView(progressView);
+            }
+
+            addView(progressView);
+        }
 
         progressIndicator.setVisibility(View.GONE);
 
-        final Handler handler = new Handler();
-        handler.postDelayed(new Runnable() {
+        showProgressIndicator = new Runnable() {
             @Override
             public void run() {
                 progressIndicator.setVisibility(View.VISIBLE);
             }
-        }, delay);
+        };
+        postDelayed(showProgressIndicator, delay);
     }
 
     /**
@@ -136,7 +153,7 @@ public class TurbolinksView extends FrameLayout {
      * visible underneath.</p>
      */
     void hideProgress() {
-        removeProgressView();
+        hideProgressView();
         removeScreenshotView();
     }
 
@@ -180,6 +197,19 @@ public class TurbolinksView extends FrameLayout {
         return true;
     }
 
+    /**
+     * <p>Removes the WebView from this view, if it's attached here.</p>
+     *
+     * @param webView            The shared webView.
+     * @param screenshotsEnabled Indicates whether a screenshot should be left in its place.
+     */
+    void detachWebView(WebView webView, boolean screenshotsEnabled) {
+        if (webView.getParent() != refreshLayout) return;
+
+        if (screenshotsEnabled) screenshotView();
+        refreshLayout.removeView(webView);
+    }
+
     /**
      * <p>Gets the refresh layout used internally for pull-to-refresh functionality.</p>
      *
@@ -190,13 +220,26 @@ public class TurbolinksView extends FrameLayout {
     }
 
     /**
-     * Removes the progress view as a child of TurbolinksView
+     * Hides the progress view, leaving it attached so it can be shown again without a layout pass
      */
-    private void removeProgressView() {
-        if (progressView == null) return;
+    private void hideProgressView() {
+        cancelProgressIndicator();
 
-        removeView(progressView);
-        TurbolinksLog.d("Progress view removed");
+        if (progressView == null || progressView.getParent() != this) return;
+
+        // Invisible rather than gone, so showing it again doesn't require a new layout pass
+        progressView.setVisibility(View.INVISIBLE);
+        TurbolinksLog.d("Progress view hidden");
+    }
+
+    /**
+     * Cancels a pending delayed display of the progress indicator
+     */
+    private void cancelProgressIndicator() {
+        if (showProgressIndicator == null) return;
+
+        removeCallbacks(showProgressIndicator);
+        showProgressIndicator = null;
     }
 
     /**
@@ -217,9 +260,22 @@ public class TurbolinksView extends FrameLayout {
         // Only take a screenshot if the activity is not finishing
         if (getContext() instanceof Activity && ((Activity) getContext()).isFinishing()) return;
 
+        long start = SystemClock.uptimeMillis();
+        long frameStart = frameMonitor != null ? frameMonitor.begin() : 0;
+        TurbolinksTrace.beginSection(TurbolinksTrace.SCREENSHOT);
         Bitmap screenshot = getScreenshotBitmap();
+        TurbolinksTrace.endSection();
+
+        if (frameMonitor != null) {
+            frameMonitor.end(TurbolinksJankListener.SECTION_SCREENSHOT, frameStart);
+        }
+
         if (screenshot == null) return;
 
+        if (debugOverlay != null) {
+            debugOverlay.screenshotTaken(SystemClock.uptimeMillis() - start);
+        }
+
         screenshotView = new ImageView(getContext());
         screenshotView.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
         screenshotView.setClickable(true);
@@ -0,0 +1,132 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.WebSettings;
+
+/**
+ * <p>Settings that apply to a single visit, passed to
+ * {@link TurbolinksSession#visit(String, TurbolinksVisitOptions)} or
+ * {@link TurbolinksSession#visitLocationWithAction(String, String, TurbolinksVisitOptions)}.</p>
+ *
+ * <p>This lets costly work be turned off exactly where it hurts -- like skipping the screenshot
+ * when leaving a page that's expensive to draw -- without changing session-wide settings. Options
+ * can only narrow what the session allows: a screenshot isn't taken if screenshots are disabled for
+ * the session, whatever the visit options say.</p>
+ *
+ * <p>The session copies the options when the visit starts, so changing them afterwards doesn't
+ * affect a visit in progress.</p>
+ */
+public class TurbolinksVisitOptions {
+    static final int DEFAULT_PROGRESS_INDICATOR_DELAY = -1;
+
+    private boolean screenshotsEnabled = true;
+    private boolean restoreWithCachedSnapshot = false;
+    private int progressIndicatorDelay = DEFAULT_PROGRESS_INDICATOR_DELAY;
+    private int cacheMode = WebSettings.LOAD_DEFAULT;
+
+    // ---------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates options with the default settings.</p>
+     */
+    public TurbolinksVisitOptions() {
+    }
+
+    /**
+     * <p>Copies another set of options.</p>
+     *
+     * @param options The options to copy.
+     */
+    TurbolinksVisitOptions(TurbolinksVisitOptions options) {
+        this.screenshotsEnabled = options.screenshotsEnabled;
+        this.restoreWithCachedSnapshot = options.restoreWithCachedSnapshot;
+        this.progressIndicatorDelay = options.progressIndicatorDelay;
+        this.cacheMode = options.cacheMode;
+    }
+
+    // ---------------------------------------------------
+    // Chained setters
+    // ---------------------------------------------------
+
+    /**
+     * <p>Determines whether a screenshot of this page is displayed when the WebView moves on to
+     * another TurbolinksView. Default is true.</p>
+     *
+     * @param screenshotsEnabled If false, no screenshot is taken when leaving this page.
+     * @return The options to continue the chained calls.
+     */
+    public TurbolinksVisitOptions screenshotsEnabled(boolean screenshotsEnabled) {
+        this.screenshotsEnabled = screenshotsEnabled;
+        return this;
+    }
+
+    /**
+     * <p>Restores the page and scroll position from Turbolinks' cached snapshot, like
+     * {@link TurbolinksSession#restoreWithCachedSnapshot(boolean)}. Default is false.</p>
+     *
+     * @param restoreWithCachedSnapshot If true, will restore scroll position.
+     * @return The options to continue the chained calls.
+     */
+    public TurbolinksVisitOptions restoreWithCachedSnapshot(boolean restoreWithCachedSnapshot) {
+        this.restoreWithCachedSnapshot = restoreWithCachedSnapshot;
+        return this;
+    }
+
+    /**
+     * <p>Overrides the delay before the progress indicator is displayed for this visit. Defaults to
+     * the session's delay.</p>
+     *
+     * @param progressIndicatorDelay The delay, in milliseconds.
+     * @return The options to continue the chained calls.
+     */
+    public TurbolinksVisitOptions progressIndicatorDelay(int progressIndicatorDelay) {
+        this.progressIndicatorDelay = progressIndicatorDelay;
+        return this;
+    }
+
+    /**
+     * <p>Sets the WebView cache mode used for this visit's requests. Default is
+     * {@link WebSettings#LOAD_DEFAULT}, which uses the cache mode of the session's
+     * {@link TurbolinksWebViewProfile}.</p>
+     *
+     * @param cacheMode One of the WebSettings LOAD constants.
+     * @return The options to continue the chained calls.
+     */
+    public TurbolinksVisitOptions cacheMode(int cacheMode) {
+        this.cacheMode = cacheMode;
+        return this;
+    }
+
+    // ---------------------------------------------------
+    // Getters
+    // ---------------------------------------------------
+
+    /**
+     * @return Whether a screenshot is taken when leaving this page.
+     */
+    public boolean isScreenshotsEnabled() {
+        return screenshotsEnabled;
+    }
+
+    /**
+     * @return Whether the visit restores from Turbolinks' cached snapshot.
+     */
+    public boolean isRestoreWithCachedSnapshot() {
+        return restoreWithCachedSnapshot;
+    }
+
+    /**
+     * @return The progress indicator delay, in milliseconds, or -1 to use the session's delay.
+     */
+    public int getProgressIndicatorDelay() {
+        return progressIndicatorDelay;
+    }
+
+    /**
+     * @return The WebView cache mode used for this visit.
+     */
+    public int getCacheMode() {
+        return cacheMode;
+    }
+}
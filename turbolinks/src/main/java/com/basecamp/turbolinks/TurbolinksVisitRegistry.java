@@ -0,0 +1,282 @@
+package com.basecamp.turbolinks;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Keeps track of the Turbolinks visits in flight in every session, by normalized location, so
+ * the same location isn't requested twice at once.</p>
+ *
+ * <p>A session visiting a location it's already visiting, with the same action, keeps the visit in
+ * flight. A visit with another action, like a replace after an advance, is made anyway. A session
+ * visiting a location another session is visiting waits for that visit to finish, then makes its
+ * own, which the WebView can then load from the HTTP cache all WebViews share. Each WebView renders
+ * its own page, so the response can't be handed over directly.</p>
+ *
+ * <p>A visit that hasn't finished after {@link #MAX_WAIT} is no longer trusted to: sessions stop
+ * waiting for it, and it no longer keeps its own session from visiting the location again. It's
+ * then removed, so a session that went away with a visit in flight isn't kept alive.</p>
+ *
+ * <p>Methods can be called from any thread. Listeners are called on the main thread.</p>
+ */
+class TurbolinksVisitRegistry {
+    static final long MAX_WAIT = 10 * 1000;
+
+    private static TurbolinksVisitRegistry shared;
+
+    private final Handler handler;
+    private final Map<String, Visit> visits = new HashMap<>(); // By location
+    private final Map<Object, Visit> ownedVisits = new HashMap<>(); // By the session making the visit
+    private final Map<Object, Follower> followers = new HashMap<>(); // By the waiting session
+
+    /**
+     * <p>Called when the visit a session was waiting for has finished.</p>
+     */
+    interface Listener {
+        /**
+         * @param succeeded Whether the visit completed. False if it failed, was replaced, or took
+         *                  longer than {@link #MAX_WAIT}.
+         */
+        void onVisitFinished(boolean succeeded);
+    }
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * @param looper The main looper.
+     */
+    TurbolinksVisitRegistry(Looper looper) {
+        this.handler = new Handler(looper);
+    }
+
+    /**
+     * @return The registry shared by every session.
+     */
+    static synchronized TurbolinksVisitRegistry getShared() {
+        if (shared == null) {
+            shared = new TurbolinksVisitRegistry(Looper.getMainLooper());
+        }
+
+        return shared;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @param location The normalized location.
+     * @param action   The action of the visit about to be made.
+     * @param session  The session about to visit it.
+     * @return Whether the session is already visiting the location with the same action.
+     */
+    synchronized boolean isInFlight(String location, String action, Object session) {
+        Visit visit = ownedVisits.get(session);
+        return visit != null && visit.location.equals(location) && TextUtils.equals(visit.action, action) && !isExpired(visit);
+    }
+
+    /**
+     * <p>Makes a session wait for another session's visit to a location, if there's one in
+     * flight.</p>
+     *
+     * @param location The normalized location.
+     * @param session  The session about to visit it.
+     * @param listener Called once the visit has finished.
+     * @return Whether the session is now waiting. If not, it should make the visit itself.
+     */
+    synchronized boolean attach(String location, Object session, Listener listener) {
+        detach(session);
+
+        Visit visit = visits.get(location);
+        if (visit == null || visit.owner == session || isExpired(visit)) return false;
+
+        Follower follower = new Follower(session, listener);
+        visit.followers.add(follower);
+        followers.put(session, follower);
+        handler.postDelayed(follower, MAX_WAIT - (SystemClock.uptimeMillis() - visit.startTime));
+
+        return true;
+    }
+
+    /**
+     * <p>Stops a session waiting for a visit, if it is.</p>
+     *
+     * @param session The waiting session.
+     */
+    synchronized void detach(Object session) {
+        Follower follower = followers.remove(session);
+
+        if (follower != null) {
+            handler.removeCallbacks(follower);
+        }
+    }
+
+    /**
+     * <p>Registers a visit a session is making, in place of its previous one. Sessions waiting on
+     * the previous visit keep waiting if it was to the same location, since the new visit brings
+     * them a newer response. Otherwise they're told it didn't succeed.</p>
+     *
+     * @param location The normalized location.
+     * @param action   The action of the visit.
+     * @param session  The session making the visit.
+     */
+    synchronized void begin(String location, String action, Object session) {
+        detach(session);
+
+        Visit previous = ownedVisits.get(session);
+        if (previous != null && previous.location.equals(location)) {
+            previous.action = action;
+            previous.startTime = SystemClock.uptimeMillis();
+            visits.put(location, previous);
+            scheduleExpiry(previous);
+            return;
+        }
+
+        if (previous != null) {
+            end(previous, false);
+        }
+
+        Visit visit = new Visit(location, action, session);
+        visits.put(location, visit);
+        ownedVisits.put(session, visit);
+        scheduleExpiry(visit);
+    }
+
+    /**
+     * <p>Ends the visit a session is making, if any, and tells the sessions waiting on it.</p>
+     *
+     * @param session   The session making the visit.
+     * @param succeeded Whether the visit completed.
+     */
+    synchronized void finish(Object session, boolean succeeded) {
+        Visit visit = ownedVisits.get(session);
+
+        if (visit != null) {
+            end(visit, succeeded);
+        }
+    }
+
+    /**
+     * @return The number of visits in flight.
+     */
+    synchronized int getVisitCount() {
+        return ownedVisits.size();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void end(Visit visit, final boolean succeeded) {
+        handler.removeCallbacks(visit);
+        ownedVisits.remove(visit.owner);
+        if (visits.get(visit.location) == visit) {
+            visits.remove(visit.location);
+        }
+
+        List<Follower> waiting = new ArrayList<>(visit.followers);
+        visit.followers.clear();
+
+        for (final Follower follower : waiting) {
+            handler.removeCallbacks(follower);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    follower.stopWaiting(succeeded);
+                }
+            });
+        }
+    }
+
+    private boolean isExpired(Visit visit) {
+        return SystemClock.uptimeMillis() - visit.startTime > MAX_WAIT;
+    }
+
+    private void scheduleExpiry(Visit visit) {
+        handler.removeCallbacks(visit);
+        handler.postDelayed(visit, MAX_WAIT + 1);
+    }
+
+    /**
+     * <p>Removes a visit that has taken longer than {@link #MAX_WAIT}, if it's still registered.</p>
+     */
+    private synchronized void expire(Visit visit) {
+        if (ownedVisits.get(visit.owner) != visit || !isExpired(visit)) return;
+
+        TurbolinksLog.d("Visit didn't finish in time, removing it: " + visit.location);
+        end(visit, false);
+    }
+
+    /**
+     * <p>Removes a follower that's done waiting.</p>
+     *
+     * @return Whether it was still waiting, and hadn't been detached in the meantime.
+     */
+    private synchronized boolean release(Follower follower) {
+        if (followers.get(follower.session) != follower) return false;
+
+        followers.remove(follower.session);
+        handler.removeCallbacks(follower);
+        return true;
+    }
+
+    // ---------------------------------------------------
+    // Visits
+    // ---------------------------------------------------
+
+    /**
+     * <p>A visit in flight. Runs when it has taken too long.</p>
+     */
+    private class Visit implements Runnable {
+        final String location;
+        final Object owner;
+        final List<Follower> followers = new ArrayList<>();
+        String action;
+        long startTime = SystemClock.uptimeMillis();
+
+        Visit(String location, String action, Object owner) {
+            this.location = location;
+            this.action = action;
+            this.owner = owner;
+        }
+
+        @Override
+        public void run() {
+            expire(this);
+        }
+    }
+
+    /**
+     * <p>A session waiting for a visit. Runs when it has waited too long.</p>
+     */
+    private class Follower implements Runnable {
+        final Object session;
+        final Listener listener;
+
+        Follower(Object session, Listener listener) {
+            this.session = session;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            TurbolinksLog.d("Stopped waiting for a visit in another session");
+            stopWaiting(false);
+        }
+
+        void stopWaiting(boolean succeeded) {
+            if (release(this)) {
+                listener.onVisitFinished(succeeded);
+            }
+        }
+    }
+}
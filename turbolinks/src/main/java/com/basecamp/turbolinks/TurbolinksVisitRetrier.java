@@ -0,0 +1,168 @@
+package com.basecamp.turbolinks;
+
+import android.text.TextUtils;
+
+import java.util.Random;
+
+/**
+ * <p>Retries failed cold boots and visits according to a {@link TurbolinksRetryPolicy}.</p>
+ *
+ * <p>Transient failures are retried with jittered backoff while the device is online. A failure
+ * while offline is reported right away, and the failed location is kept and visited again once
+ * the device is back online. Only the last failed location is kept. All methods must be called on
+ * the main thread.</p>
+ */
+class TurbolinksVisitRetrier implements TurbolinksConnectivity.Listener {
+    /**
+     * <p>Runs retries after a delay. Backed by a Handler in the session.</p>
+     */
+    interface Scheduler {
+        void postDelayed(Runnable task, long delay);
+
+        void removeCallbacks(Runnable task);
+    }
+
+    /**
+     * <p>Visits a failed location again.</p>
+     */
+    interface Target {
+        void retryVisit(String location);
+    }
+
+    private final Target target;
+    private final Scheduler scheduler;
+    private final TurbolinksConnectivity connectivity;
+    private final Random random;
+    private final Runnable retry;
+    private TurbolinksRetryPolicy policy;
+    private String failedLocation;
+    private int retryCount;
+    private boolean waitingForConnectivity;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * @param target       Where retries are sent.
+     * @param scheduler    Runs retries after their delay.
+     * @param connectivity Tells whether the device is online.
+     * @param random       The source of the backoff jitter.
+     */
+    TurbolinksVisitRetrier(Target target, Scheduler scheduler, TurbolinksConnectivity connectivity, Random random) {
+        this.target = target;
+        this.scheduler = scheduler;
+        this.connectivity = connectivity;
+        this.random = random;
+        this.retry = new Runnable() {
+            @Override
+            public void run() {
+                if (failedLocation != null) {
+                    TurbolinksVisitRetrier.this.target.retryVisit(failedLocation);
+                }
+            }
+        };
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Sets the retry policy. Null turns retries off, and forgets any failure that's pending.</p>
+     *
+     * @param policy The retry policy, or null.
+     */
+    void setPolicy(TurbolinksRetryPolicy policy) {
+        this.policy = policy;
+
+        if (policy == null) {
+            cancel();
+        }
+    }
+
+    /**
+     * <p>Handles a failed cold boot or visit.</p>
+     *
+     * @param location  The location that failed.
+     * @param errorCode A WebViewClient ERROR constant, an HTTP status code, or a Turbolinks request
+     *                  failure.
+     * @return True if the failure will be retried and shouldn't be reported yet.
+     */
+    boolean visitFailed(String location, int errorCode) {
+        scheduler.removeCallbacks(retry);
+
+        TurbolinksRetryPolicy policy = this.policy;
+        if (policy == null || location == null || !policy.isRetryable(errorCode)) {
+            cancel();
+            return false;
+        }
+
+        if (!TextUtils.equals(location, failedLocation)) {
+            retryCount = 0;
+        }
+        failedLocation = location;
+
+        if (!connectivity.isOnline()) {
+            TurbolinksLog.d("Visit failed while offline, retrying when back online: " + location);
+            waitingForConnectivity = true;
+            connectivity.setListener(this);
+            return false;
+        }
+
+        if (retryCount >= policy.getMaxRetries()) {
+            cancel();
+            return false;
+        }
+
+        long delay = policy.getDelay(retryCount++, random);
+        TurbolinksLog.d("Visit failed with " + errorCode + ", retrying in " + delay + " ms: " + location);
+        scheduler.postDelayed(retry, delay);
+        return true;
+    }
+
+    /**
+     * <p>Forgets any failure that's pending, once a visit completes or a new one starts.</p>
+     */
+    void cancel() {
+        scheduler.removeCallbacks(retry);
+
+        if (waitingForConnectivity) {
+            waitingForConnectivity = false;
+            connectivity.setListener(null);
+        }
+
+        failedLocation = null;
+        retryCount = 0;
+    }
+
+    /**
+     * @return The number of retries made for the failed location.
+     */
+    int getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * @return True if a failed location will be visited again once the device is back online.
+     */
+    boolean isWaitingForConnectivity() {
+        return waitingForConnectivity;
+    }
+
+    // ---------------------------------------------------
+    // TurbolinksConnectivity.Listener
+    // ---------------------------------------------------
+
+    @Override
+    public void onConnectivityRestored() {
+        if (!waitingForConnectivity) return;
+
+        waitingForConnectivity = false;
+        connectivity.setListener(null);
+        retryCount = 0;
+
+        TurbolinksLog.d("Back online, retrying: " + failedLocation);
+        scheduler.postDelayed(retry, 0);
+    }
+}
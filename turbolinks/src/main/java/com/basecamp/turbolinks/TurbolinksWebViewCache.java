@@ -0,0 +1,282 @@
+package com.basecamp.turbolinks;
+
+import android.app.Activity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * <p>Keeps recently left pages alive in their own WebViews, bound to the TurbolinksView that shows
+ * them, so navigating back to one is a view swap instead of a Turbolinks restore visit.</p>
+ *
+ * <p>Entries are evicted least recently used first, once there are more than the maximum number of
+ * WebViews or their estimated memory goes over budget. Entries for TurbolinksViews whose activity
+ * is finishing, or that are detached from their window, are dropped, since those pages can't be
+ * navigated back to. An evicted WebView is destroyed, and its TurbolinksView falls back to the
+ * regular restore visit.</p>
+ *
+ * <p>TurbolinksViews are only weakly referenced, so the cache never keeps a destroyed activity's
+ * views alive by itself.</p>
+ */
+class TurbolinksWebViewCache {
+    // A rough, conservative estimate of a WebView's own memory, on top of its rendered content
+    static final long WEBVIEW_BASE_BYTES = 4 * 1024 * 1024;
+    static final int BYTES_PER_PIXEL = 4;
+    static final int RASTER_BUFFERS = 2;
+
+    private final int maxWebViews;
+    private final long memoryBudget;
+    private final LinkedHashMap<ViewKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<TurbolinksView> evictedViews = Collections.newSetFromMap(new WeakHashMap<TurbolinksView, Boolean>());
+    private final DetachListener detachListener = new DetachListener();
+    private long estimatedBytes;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates an empty cache.</p>
+     *
+     * @param maxWebViews  The maximum number of WebViews to keep alive.
+     * @param memoryBudget The maximum estimated memory of the WebViews kept alive, in bytes.
+     */
+    TurbolinksWebViewCache(int maxWebViews, long memoryBudget) {
+        this.maxWebViews = maxWebViews;
+        this.memoryBudget = memoryBudget;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Keeps a WebView alive, still attached to the TurbolinksView showing it.</p>
+     *
+     * @param turbolinksView The TurbolinksView showing the WebView.
+     * @param entry          The WebView and its session state.
+     */
+    void put(TurbolinksView turbolinksView, Entry entry) {
+        entry.estimatedBytes = WEBVIEW_BASE_BYTES + (long) turbolinksView.getWidth() * turbolinksView.getHeight() * BYTES_PER_PIXEL * RASTER_BUFFERS;
+
+        Entry previous = entries.put(new ViewKey(turbolinksView), entry);
+        if (previous != null) {
+            estimatedBytes -= previous.estimatedBytes;
+            destroy(previous);
+        } else {
+            turbolinksView.addOnAttachStateChangeListener(detachListener);
+        }
+        estimatedBytes += entry.estimatedBytes;
+
+        trim();
+    }
+
+    /**
+     * <p>Takes the WebView kept alive for a TurbolinksView out of the cache.</p>
+     *
+     * @param turbolinksView The TurbolinksView being shown again.
+     * @return The WebView and its session state, or null if it isn't cached.
+     */
+    Entry remove(TurbolinksView turbolinksView) {
+        removeFinishing();
+
+        Entry entry = entries.remove(new ViewKey(turbolinksView));
+        if (entry != null) {
+            estimatedBytes -= entry.estimatedBytes;
+            turbolinksView.removeOnAttachStateChangeListener(detachListener);
+        }
+
+        return entry;
+    }
+
+    /**
+     * <p>Checks whether a TurbolinksView's WebView was evicted, and forgets it.</p>
+     *
+     * @param turbolinksView The TurbolinksView being shown again.
+     * @return True if the view had a cached WebView that was evicted since.
+     */
+    boolean removeEvicted(TurbolinksView turbolinksView) {
+        return evictedViews.remove(turbolinksView);
+    }
+
+    /**
+     * <p>Drops a cached WebView, typically because its render process is gone.</p>
+     *
+     * @param webView The WebView to drop.
+     * @return True if the WebView was cached.
+     */
+    boolean remove(WebView webView) {
+        Iterator<Map.Entry<ViewKey, Entry>> iterator = entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<ViewKey, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (entry.webView == webView) {
+                iterator.remove();
+                estimatedBytes -= entry.estimatedBytes;
+                stopListening(mapEntry.getKey());
+                destroy(entry);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>Destroys every cached WebView.</p>
+     */
+    void clear() {
+        List<Entry> evicted = new ArrayList<>(entries.values());
+        for (ViewKey key : entries.keySet()) {
+            stopListening(key);
+        }
+        entries.clear();
+        estimatedBytes = 0;
+
+        for (Entry entry : evicted) {
+            destroy(entry);
+        }
+    }
+
+    /**
+     * @return The number of cached WebViews.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param turbolinksView Any TurbolinksView.
+     * @return True if the view's activity is finishing, so it won't be shown again.
+     */
+    static boolean isFinishing(TurbolinksView turbolinksView) {
+        return turbolinksView.getContext() instanceof Activity && ((Activity) turbolinksView.getContext()).isFinishing();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Evicts least recently used entries until the cache is within its limits.</p>
+     */
+    private void trim() {
+        removeFinishing();
+
+        Iterator<Map.Entry<ViewKey, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > maxWebViews || estimatedBytes > memoryBudget)) {
+            Map.Entry<ViewKey, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            iterator.remove();
+            estimatedBytes -= entry.estimatedBytes;
+            stopListening(mapEntry.getKey());
+            destroy(entry);
+
+            TurbolinksView turbolinksView = mapEntry.getKey().get();
+            if (turbolinksView != null) evictedViews.add(turbolinksView);
+
+            TurbolinksLog.d("WebView evicted from cache: " + entry.location);
+        }
+    }
+
+    /**
+     * <p>Drops entries whose view is gone or whose activity is finishing, since they can't be
+     * navigated back to.</p>
+     */
+    private void removeFinishing() {
+        Iterator<Map.Entry<ViewKey, Entry>> iterator = entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<ViewKey, Entry> mapEntry = iterator.next();
+            TurbolinksView turbolinksView = mapEntry.getKey().get();
+            if (turbolinksView == null || isFinishing(turbolinksView)) {
+                iterator.remove();
+                estimatedBytes -= mapEntry.getValue().estimatedBytes;
+                stopListening(mapEntry.getKey());
+                destroy(mapEntry.getValue());
+            }
+        }
+    }
+
+    private void stopListening(ViewKey key) {
+        TurbolinksView turbolinksView = key.get();
+        if (turbolinksView != null) turbolinksView.removeOnAttachStateChangeListener(detachListener);
+    }
+
+    private static void destroy(Entry entry) {
+        if (entry.webView.getParent() != null) {
+            ((ViewGroup) entry.webView.getParent()).removeView(entry.webView);
+        }
+        entry.webView.destroy();
+    }
+
+    /**
+     * <p>Drops the entry of a TurbolinksView that left its window, like when its activity is
+     * destroyed, so the view tree isn't kept alive by its parked WebView.</p>
+     */
+    private class DetachListener implements View.OnAttachStateChangeListener {
+        @Override
+        public void onViewAttachedToWindow(View view) {
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View view) {
+            TurbolinksView turbolinksView = (TurbolinksView) view;
+            Entry entry = remove(turbolinksView);
+
+            if (entry != null) {
+                destroy(entry);
+                evictedViews.add(turbolinksView);
+                TurbolinksLog.d("WebView evicted from cache, view detached: " + entry.location);
+            }
+        }
+    }
+
+    /**
+     * <p>Weakly references a TurbolinksView, and compares by the view's identity.</p>
+     */
+    private static class ViewKey extends WeakReference<TurbolinksView> {
+        private final int hashCode;
+
+        ViewKey(TurbolinksView turbolinksView) {
+            super(turbolinksView);
+            this.hashCode = System.identityHashCode(turbolinksView);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof ViewKey)) return false;
+
+            TurbolinksView turbolinksView = get();
+            return turbolinksView != null && turbolinksView == ((ViewKey) other).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * <p>A cached WebView and the session state that belongs to the page it shows.</p>
+     */
+    static class Entry {
+        WebView webView;
+        String location;
+        String currentVisitIdentifier;
+        TurbolinksVisitOptions visitOptions;
+        long estimatedBytes;
+    }
+}
@@ -0,0 +1,250 @@
+package com.basecamp.turbolinks;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.view.View;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+/**
+ * <p>WebView settings that trade memory for speed, applied whenever the session creates a WebView.
+ * Set one with {@link TurbolinksSession#setWebViewProfile(TurbolinksWebViewProfile)}.</p>
+ *
+ * <p>By default, the session picks one of the built-in presets from the device class:
+ * {@link #lowMemory()} on low-RAM devices and devices with a small heap, {@link #fast()} on
+ * everything else. Start from a preset and adjust it with the chained setters, or start from
+ * {@link #TurbolinksWebViewProfile()} for the plain WebView defaults.</p>
+ */
+public class TurbolinksWebViewProfile {
+    // Devices whose per-app heap is smaller than this, in megabytes, get the low memory preset
+    static final int LOW_MEMORY_CLASS = 128;
+
+    private int cacheMode = WebSettings.LOAD_DEFAULT;
+    private boolean offscreenPreRaster = false;
+    private boolean networkImagesBlockedUntilRender = false;
+    private boolean textAutosizingEnabled = false;
+    private int layerType = View.LAYER_TYPE_NONE;
+    private int rendererPriority = WebView.RENDERER_PRIORITY_IMPORTANT;
+    private boolean rendererPriorityWaivedWhenNotVisible = false;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates a profile with the plain WebView defaults, and text autosizing off.</p>
+     */
+    public TurbolinksWebViewProfile() {
+    }
+
+    // ---------------------------------------------------
+    // Presets
+    // ---------------------------------------------------
+
+    /**
+     * <p>Keeps the WebView as small as possible: nothing is rastered offscreen, and the render
+     * process may be reclaimed while the WebView isn't visible.</p>
+     *
+     * <p>Network images aren't deferred, since the preset is picked automatically and deferral
+     * changes how pages load. Turn it on with {@link #networkImagesBlockedUntilRender(boolean)}.</p>
+     *
+     * @return A new low memory profile.
+     */
+    public static TurbolinksWebViewProfile lowMemory() {
+        return new TurbolinksWebViewProfile()
+            .rendererPriority(WebView.RENDERER_PRIORITY_BOUND, true);
+    }
+
+    /**
+     * <p>Gets pages on screen as soon as possible: the WebView is rastered even while it's
+     * offscreen, so it shows fully drawn as soon as it's attached, and the render process keeps its
+     * priority.</p>
+     *
+     * @return A new fast profile.
+     */
+    public static TurbolinksWebViewProfile fast() {
+        return new TurbolinksWebViewProfile()
+            .offscreenPreRaster(true);
+    }
+
+    /**
+     * <p>Picks the preset for the device: {@link #lowMemory()} on low-RAM devices or when the app's
+     * heap is smaller than 128 MB, {@link #fast()} otherwise.</p>
+     *
+     * @param context Any Android context.
+     * @return A new profile for the device.
+     */
+    public static TurbolinksWebViewProfile forDevice(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+
+        if (activityManager != null && (activityManager.isLowRamDevice() || activityManager.getMemoryClass() < LOW_MEMORY_CLASS)) {
+            return lowMemory();
+        }
+
+        return fast();
+    }
+
+    // ---------------------------------------------------
+    // Chained setters
+    // ---------------------------------------------------
+
+    /**
+     * <p>Sets the WebView cache mode used for visits that don't set their own with
+     * {@link TurbolinksVisitOptions#cacheMode(int)}. Default is {@link WebSettings#LOAD_DEFAULT}.</p>
+     *
+     * @param cacheMode One of the WebSettings LOAD constants.
+     * @return The profile to continue the chained calls.
+     */
+    public TurbolinksWebViewProfile cacheMode(int cacheMode) {
+        this.cacheMode = cacheMode;
+        return this;
+    }
+
+    /**
+     * <p>Determines whether the WebView is rastered while it's offscreen or detached, so a session
+     * that's about to be shown doesn't draw its page from scratch once it's attached. Costs the
+     * memory of a full raster. Requires API 23, ignored on older versions. Default is false.</p>
+     *
+     * @param offscreenPreRaster If true the WebView is rastered offscreen.
+     * @return The profile to continue the chained calls.
+     */
+    public TurbolinksWebViewProfile offscreenPreRaster(boolean offscreenPreRaster) {
+        this.offscreenPreRaster = offscreenPreRaster;
+        return this;
+    }
+
+    /**
+     * <p>Determines whether network images wait until each visit and cold boot has rendered, so
+     * they don't compete with the page itself for bandwidth. Images on screen are then loaded first.
+     * Path configuration rules can override this per route with
+     * {@link TurbolinksPathProperties#DEFER_IMAGES}. Default is false.</p>
+     *
+     * <p>Visit render times are reported as {@link TurbolinksMetricsListener#TIME_TO_RENDER} or
+     * {@link TurbolinksMetricsListener#TIME_TO_RENDER_IMAGES_DEFERRED}, so the two can be
+     * compared.</p>
+     *
+     * @param blocked If true network images are blocked until the page renders.
+     * @return The profile to continue the chained calls.
+     */
+    public TurbolinksWebViewProfile networkImagesBlockedUntilRender(boolean blocked) {
+        this.networkImagesBlockedUntilRender = blocked;
+        return this;
+    }
+
+    /**
+     * <p>Determines whether the WebView enlarges text in wide paragraphs, which means laying out
+     * pages twice. Default is false.</p>
+     *
+     * @param enabled If true text autosizing is enabled.
+     * @return The profile to continue the chained calls.
+     */
+    public TurbolinksWebViewProfile textAutosizingEnabled(boolean enabled) {
+        this.textAutosizingEnabled = enabled;
+        return this;
+    }
+
+    /**
+     * <p>Sets the WebView's layer type. Default is {@link View#LAYER_TYPE_NONE}, which is best
+     * for nearly all pages since the WebView manages its own hardware rendering.</p>
+     *
+     * @param layerType One of the View LAYER_TYPE constants.
+     * @return The profile to continue the chained calls.
+     */
+    public TurbolinksWebViewProfile layerType(int layerType) {
+        this.layerType = layerType;
+        return this;
+    }
+
+    /**
+     * <p>Sets the render process priority. Requires API 26, ignored on older versions. Default is
+     * {@link WebView#RENDERER_PRIORITY_IMPORTANT}, not waived.</p>
+     *
+     * @param rendererPriority     One of the WebView RENDERER_PRIORITY constants.
+     * @param waivedWhenNotVisible If true the priority is waived while the WebView isn't visible.
+     * @return The profile to continue the chained calls.
+     */
+    public TurbolinksWebViewProfile rendererPriority(int rendererPriority, boolean waivedWhenNotVisible) {
+        this.rendererPriority = rendererPriority;
+        this.rendererPriorityWaivedWhenNotVisible = waivedWhenNotVisible;
+        return this;
+    }
+
+    // ---------------------------------------------------
+    // Getters
+    // ---------------------------------------------------
+
+    /**
+     * @return The WebView cache mode used for visits that don't set their own.
+     */
+    public int getCacheMode() {
+        return cacheMode;
+    }
+
+    /**
+     * @return Whether the WebView is rastered offscreen.
+     */
+    public boolean isOffscreenPreRaster() {
+        return offscreenPreRaster;
+    }
+
+    /**
+     * @return Whether network images are blocked until the page renders.
+     */
+    public boolean isNetworkImagesBlockedUntilRender() {
+        return networkImagesBlockedUntilRender;
+    }
+
+    /**
+     * @return Whether text autosizing is enabled.
+     */
+    public boolean isTextAutosizingEnabled() {
+        return textAutosizingEnabled;
+    }
+
+    /**
+     * @return The WebView's layer type.
+     */
+    public int getLayerType() {
+        return layerType;
+    }
+
+    /**
+     * @return The render process priority.
+     */
+    public int getRendererPriority() {
+        return rendererPriority;
+    }
+
+    /**
+     * @return Whether the render process priority is waived while the WebView isn't visible.
+     */
+    public boolean isRendererPriorityWaivedWhenNotVisible() {
+        return rendererPriorityWaivedWhenNotVisible;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Applies the profile to a WebView. Must be called on the main thread.</p>
+     *
+     * @param webView The WebView to configure.
+     */
+    void applyTo(WebView webView) {
+        WebSettings settings = webView.getSettings();
+
+        settings.setCacheMode(cacheMode);
+        settings.setLayoutAlgorithm(textAutosizingEnabled ? WebSettings.LayoutAlgorithm.TEXT_AUTOSIZING : WebSettings.LayoutAlgorithm.NORMAL);
+        webView.setLayerType(layerType, null);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            settings.setOffscreenPreRaster(offscreenPreRaster);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            webView.setRendererPriorityPolicy(rendererPriority, rendererPriorityWaivedWhenNotVisible);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.basecamp.turbolinks;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.webkit.WebView;
+
+/**
+ * <p>Pauses a session's WebView (animations and rendering, with its Javascript timers throttled as
+ * in a hidden page) when nothing is showing it, and resumes it once it's back on screen.</p>
+ *
+ * <p>Only the session's own WebView is paused. WebView.pauseTimers() isn't used, since it stops
+ * timers in every WebView in the process, including ones still on screen that this session
+ * doesn't know about.</p>
+ *
+ * <p>The WebView is considered showing while the session's activity is resumed and the WebView is
+ * attached to a window. Pausing is slightly delayed so navigating between activities, which
+ * briefly pauses one before resuming the next, doesn't toggle the WebView back and forth.</p>
+ */
+class TurbolinksWebViewThrottle implements Application.ActivityLifecycleCallbacks, View.OnAttachStateChangeListener {
+    static final int PAUSE_DELAY = 500;
+
+    private final TurbolinksSession session;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable pauseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pause();
+        }
+    };
+
+    boolean enabled;
+    boolean paused;
+    boolean activityResumed = true;
+    boolean rendererPriorityWaived;
+    long resumedTime;
+    WebView observedWebView;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates a disabled throttle for the session.</p>
+     *
+     * @param session The session whose WebView is throttled.
+     */
+    TurbolinksWebViewThrottle(TurbolinksSession session) {
+        this.session = session;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Starts or stops observing the activity lifecycle and WebView attachment. Disabling
+     * resumes the WebView if it's paused.</p>
+     *
+     * @param enabled True to throttle the WebView while it isn't showing.
+     */
+    void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) return;
+
+        this.enabled = enabled;
+        Application application = getApplication();
+
+        if (enabled) {
+            if (application != null) application.registerActivityLifecycleCallbacks(this);
+
+            resumedTime = SystemClock.uptimeMillis();
+            observe(session.webView);
+            update();
+        } else {
+            if (application != null) application.unregisterActivityLifecycleCallbacks(this);
+
+            handler.removeCallbacks(pauseRunnable);
+            resume();
+            observe(null);
+        }
+    }
+
+    /**
+     * <p>Sets whether a paused WebView also waives its render process priority, so the system can
+     * reclaim it first under memory pressure. Requires API 26.</p>
+     *
+     * @param rendererPriorityWaived True to waive the renderer priority while paused.
+     */
+    void setRendererPriorityWaived(boolean rendererPriorityWaived) {
+        this.rendererPriorityWaived = rendererPriorityWaived;
+    }
+
+    /**
+     * <p>Treats a newly set activity as resumed, since it's typically set while it's being created
+     * and about to be shown.</p>
+     */
+    void activityChanged() {
+        activityResumed = true;
+    }
+
+    /**
+     * <p>Resumes the WebView right away, for when it's about to be shown.</p>
+     */
+    void resume() {
+        handler.removeCallbacks(pauseRunnable);
+
+        if (!paused) return;
+
+        WebView webView = session.webView;
+        paused = false;
+        resumedTime = SystemClock.uptimeMillis();
+
+        webView.onResume();
+
+        if (rendererPriorityWaived && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            TurbolinksWebViewProfile profile = session.webViewProfile;
+            webView.setRendererPriorityPolicy(profile.getRendererPriority(), profile.isRendererPriorityWaivedWhenNotVisible());
+        }
+
+        session.pageUpdateChannel.flush(); // Page updates buffered while paused
+        TurbolinksLog.d("WebView resumed");
+    }
+
+    /**
+     * <p>Moves the throttle over to a WebView that replaced the session's previous one. The new
+     * WebView starts out running.</p>
+     *
+     * @param webView The session's new WebView.
+     */
+    void webViewReplaced(WebView webView) {
+        if (!enabled) return;
+
+        if (paused) {
+            paused = false;
+            resumedTime = SystemClock.uptimeMillis();
+        }
+
+        observe(webView);
+        update();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Pauses the WebView if nothing is showing it, or resumes it otherwise.</p>
+     */
+    private void update() {
+        handler.removeCallbacks(pauseRunnable);
+
+        if (!enabled) return;
+
+        if (activityResumed && session.webView.getWindowToken() != null) {
+            resume();
+        } else if (!paused) {
+            handler.postDelayed(pauseRunnable, PAUSE_DELAY);
+        }
+    }
+
+    /**
+     * <p>Pauses the WebView.</p>
+     */
+    private void pause() {
+        if (!enabled || paused) return;
+
+        WebView webView = session.webView;
+        paused = true;
+
+        webView.onPause();
+
+        if (rendererPriorityWaived && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_WAIVED, true);
+        }
+
+        session.recordMetric(TurbolinksMetricsListener.WEBVIEW_RUNNING_TIME, SystemClock.uptimeMillis() - resumedTime);
+        TurbolinksLog.d("WebView paused");
+    }
+
+    /**
+     * <p>Observes attach state changes for the given WebView only.</p>
+     *
+     * @param webView The WebView to observe, or null to stop observing.
+     */
+    private void observe(WebView webView) {
+        if (observedWebView != null) observedWebView.removeOnAttachStateChangeListener(this);
+
+        observedWebView = webView;
+
+        if (observedWebView != null) observedWebView.addOnAttachStateChangeListener(this);
+    }
+
+    /**
+     * <p>Gets the application to observe activity lifecycles with.</p>
+     *
+     * @return The application, or null if the session's context isn't one.
+     */
+    private Application getApplication() {
+        if (session.applicationContext instanceof Application) {
+            return (Application) session.applicationContext;
+        }
+
+        return null;
+    }
+
+    // ---------------------------------------------------
+    // Interfaces
+    // ---------------------------------------------------
+
+    @Override
+    public void onViewAttachedToWindow(View view) {
+        update();
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View view) {
+        update();
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+        if (activity != session.activity) return;
+
+        activityResumed = true;
+        update();
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+        if (activity != session.activity) return;
+
+        activityResumed = false;
+        update();
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+    @Override
+    public void onActivityStarted(Activity activity) {}
+
+    @Override
+    public void onActivityStopped(Activity activity) {}
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {}
+}
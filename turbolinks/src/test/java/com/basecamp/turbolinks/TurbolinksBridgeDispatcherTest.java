@@ -0,0 +1,119 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksBridgeDispatcherTest extends BaseTest {
+    private TurbolinksSession turbolinksSession;
+    private TurbolinksBridgeDispatcher dispatcher;
+    private List<String> ran;
+    private List<String> metrics;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        ran = new ArrayList<>();
+        metrics = new ArrayList<>();
+
+        turbolinksSession = TurbolinksSession.getNew(context);
+        turbolinksSession.currentVisitIdentifier = "2";
+        turbolinksSession.setMetricsListener(new TurbolinksMetricsListener() {
+            @Override
+            public void onMetricRecorded(String metric, String location, long value) {
+                metrics.add(metric + "=" + value);
+            }
+        });
+        dispatcher = turbolinksSession.bridgeDispatcher;
+    }
+
+    @Test
+    public void coalescesEventsOfSameKindAndVisit() {
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.VISIT_PROPOSED, null, event("first"));
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.HIDE_PROGRESS, "2", event("hide"));
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.VISIT_PROPOSED, null, event("second"));
+        ShadowLooper.idleMainLooper();
+
+        assertThat(ran).containsExactly("second", "hide"); // The newer event keeps its place
+        assertThat(metrics).containsExactly(TurbolinksMetricsListener.BRIDGE_QUEUE_DEPTH + "=2",
+            TurbolinksMetricsListener.BRIDGE_EVENTS_DROPPED + "=1");
+    }
+
+    @Test
+    public void dropsStaleVisits() {
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.HIDE_PROGRESS, "1", event("old"));
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.VISIT_COMPLETED, "2", event("completed"));
+        turbolinksSession.currentVisitIdentifier = "3";
+        ShadowLooper.idleMainLooper();
+
+        assertThat(ran).isEmpty();
+        assertThat(metrics).contains(TurbolinksMetricsListener.BRIDGE_EVENTS_DROPPED + "=2");
+    }
+
+    @Test
+    public void dropsOldestWhenFull() {
+        for (int i = 0; i <= TurbolinksBridgeDispatcher.MAX_PENDING_EVENTS; i++) {
+            dispatcher.dispatch("kind" + i, null, event("event" + i));
+        }
+
+        assertThat(dispatcher.getPendingCount()).isEqualTo(TurbolinksBridgeDispatcher.MAX_PENDING_EVENTS);
+
+        ShadowLooper.idleMainLooper();
+        assertThat(ran).doesNotContain("event0").contains("event" + TurbolinksBridgeDispatcher.MAX_PENDING_EVENTS);
+    }
+
+    @Test
+    public void neverEvictsLifecycleEventsWhenFull() {
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.TURBOLINKS_READY, null, event("ready"));
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.VISIT_COMPLETED, "2", event("completed"));
+        for (int i = 0; i < TurbolinksBridgeDispatcher.MAX_PENDING_EVENTS; i++) {
+            dispatcher.dispatch("kind" + i, null, event("event" + i));
+        }
+
+        assertThat(dispatcher.getPendingCount()).isEqualTo(TurbolinksBridgeDispatcher.MAX_PENDING_EVENTS);
+
+        ShadowLooper.idleMainLooper();
+        assertThat(ran).startsWith("ready", "completed").doesNotContain("event0", "event1");
+    }
+
+    @Test
+    public void evictsStaleThenProgressThenOldestEventsWhenFull() {
+        turbolinksSession.currentVisitIdentifier = "1";
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.VISUAL_STATE, "1", event("stale"));
+        dispatcher.dispatch("kind0", null, event("event0"));
+        dispatcher.dispatch(TurbolinksBridgeDispatcher.HIDE_PROGRESS, null, event("hide"));
+        for (int i = 1; i <= TurbolinksBridgeDispatcher.MAX_PENDING_EVENTS - 3; i++) {
+            dispatcher.dispatch("kind" + i, null, event("event" + i));
+        }
+        turbolinksSession.currentVisitIdentifier = "2";
+
+        dispatcher.dispatch("extraA", null, event("extraA"));
+        dispatcher.dispatch("extraB", null, event("extraB"));
+        dispatcher.dispatch("extraC", null, event("extraC"));
+
+        assertThat(dispatcher.getPendingCount()).isEqualTo(TurbolinksBridgeDispatcher.MAX_PENDING_EVENTS);
+
+        ShadowLooper.idleMainLooper();
+        assertThat(ran).doesNotContain("stale", "hide", "event0").contains("event1", "extraA", "extraB", "extraC");
+    }
+
+    private Runnable event(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+}
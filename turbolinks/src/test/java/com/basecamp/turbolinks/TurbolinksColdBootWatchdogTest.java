@@ -0,0 +1,89 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksColdBootWatchdogTest extends BaseTest {
+    private List<String> stalled;
+    private TurbolinksColdBootWatchdog watchdog;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        stalled = new ArrayList<>();
+        watchdog = new TurbolinksColdBootWatchdog(context.getMainLooper(), new TurbolinksColdBootWatchdog.Listener() {
+            @Override
+            public void onColdBootStalled(String phase) {
+                stalled.add(phase);
+            }
+        });
+        watchdog.setTimeout(TurbolinksSession.COLD_BOOT_PHASE_PAGE_STARTED, 1000);
+        watchdog.setTimeout(TurbolinksSession.COLD_BOOT_PHASE_PAGE_FINISHED, 1000);
+    }
+
+    @Test
+    public void reportsPhaseThatMissesItsDeadline() {
+        watchdog.start();
+        ShadowLooper.idleMainLooper(500);
+        watchdog.phaseCompleted(TurbolinksSession.COLD_BOOT_PHASE_PAGE_STARTED);
+        ShadowLooper.idleMainLooper(900);
+
+        assertThat(stalled).isEmpty();
+
+        ShadowLooper.idleMainLooper(100);
+
+        assertThat(stalled).containsExactly(TurbolinksSession.COLD_BOOT_PHASE_PAGE_FINISHED);
+        assertThat(watchdog.getPhase()).isNull();
+    }
+
+    @Test
+    public void skippedPhasesAdvanceToTheNextOne() {
+        watchdog.start();
+        watchdog.phaseCompleted(TurbolinksSession.COLD_BOOT_PHASE_BRIDGE_INJECTED);
+
+        assertThat(watchdog.getPhase()).isEqualTo(TurbolinksSession.COLD_BOOT_PHASE_READY);
+    }
+
+    @Test
+    public void readyStopsWatching() {
+        watchdog.start();
+        watchdog.phaseCompleted(TurbolinksSession.COLD_BOOT_PHASE_READY);
+        ShadowLooper.idleMainLooper(60000);
+
+        assertThat(watchdog.getPhase()).isNull();
+        assertThat(stalled).isEmpty();
+    }
+
+    @Test
+    public void ignoresPhasesWhenIdle() {
+        watchdog.phaseCompleted(TurbolinksSession.COLD_BOOT_PHASE_PAGE_STARTED);
+
+        assertThat(watchdog.getPhase()).isNull();
+    }
+
+    @Test
+    public void zeroTimeoutWaitsForever() {
+        watchdog.setTimeout(TurbolinksSession.COLD_BOOT_PHASE_PAGE_STARTED, 0);
+        watchdog.start();
+        ShadowLooper.idleMainLooper(60000);
+
+        assertThat(stalled).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPhase() {
+        watchdog.setTimeout("unknown", 1000);
+    }
+}
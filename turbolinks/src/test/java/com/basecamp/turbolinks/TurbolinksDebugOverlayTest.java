@@ -0,0 +1,92 @@
+package com.basecamp.turbolinks;
+
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksDebugOverlayTest extends BaseTest {
+    private TurbolinksView view;
+    private TurbolinksDebugOverlay overlay;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        view = new TurbolinksView(context);
+        overlay = new TurbolinksDebugOverlay();
+    }
+
+    @Test
+    public void showsTimingsOfCurrentVisit() {
+        overlay.setEnabled(true);
+        overlay.attachTo(view);
+
+        overlay.coldBootStarted();
+        overlay.coldBootFinished(true);
+        overlay.visitStarted("1");
+        overlay.requestCompleted("1");
+        overlay.rendered("1");
+        overlay.completed("1");
+        ShadowLooper.idleMainLooper();
+
+        String text = overlayText().toString();
+        assertThat(text).contains("cold boot").contains("network").contains("render").contains("total");
+        assertThat(view.debugOverlay).isSameAs(overlay);
+    }
+
+    @Test
+    public void ignoresOtherVisits() {
+        overlay.setEnabled(true);
+        overlay.attachTo(view);
+
+        overlay.visitStarted("2");
+        overlay.requestCompleted("1");
+        ShadowLooper.idleMainLooper();
+
+        assertThat(overlayText().toString()).contains("turbolinks visit").doesNotContain("ms");
+    }
+
+    @Test
+    public void disablingRemovesOverlay() {
+        overlay.setEnabled(true);
+        overlay.attachTo(view);
+        int childCount = view.getChildCount();
+
+        overlay.setEnabled(false);
+
+        assertThat(view.getChildCount()).isEqualTo(childCount - 1);
+    }
+
+    @Test
+    public void overlayDoesNotHoldActivityContext() {
+        overlay.setEnabled(true);
+        overlay.attachTo(view);
+
+        TextView textView = (TextView) view.getChildAt(view.getChildCount() - 1);
+        assertThat(textView.getContext()).isSameAs(context.getApplicationContext());
+    }
+
+    @Test
+    public void staysOffUntilEnabled() {
+        int childCount = view.getChildCount();
+
+        overlay.attachTo(view);
+        overlay.visitStarted("1");
+
+        assertThat(view.getChildCount()).isEqualTo(childCount);
+        assertThat(TurbolinksTrace.isEnabled()).isFalse();
+    }
+
+    private CharSequence overlayText() {
+        return ((TextView) view.getChildAt(view.getChildCount() - 1)).getText();
+    }
+}
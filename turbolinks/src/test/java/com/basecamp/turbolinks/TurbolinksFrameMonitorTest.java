@@ -0,0 +1,74 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksFrameMonitorTest extends BaseTest {
+    private TurbolinksFrameMonitor monitor;
+    private List<String> reported;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        reported = new ArrayList<>();
+        monitor = new TurbolinksFrameMonitor(context);
+    }
+
+    @Test
+    public void nothingIsTimedWithoutListenerOrStrictMode() {
+        assertThat(monitor.begin()).isZero();
+    }
+
+    @Test
+    public void sectionOverBudgetIsReportedAtNextFrame() {
+        setListener();
+
+        long start = monitor.begin();
+        monitor.end(TurbolinksJankListener.SECTION_SCREENSHOT, start - TimeUnit.MILLISECONDS.toNanos(40));
+
+        assertThat(reported).isEmpty();
+
+        monitor.doFrame(start + TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertThat(reported).hasSize(1);
+        assertThat(reported.get(0)).startsWith(TurbolinksJankListener.SECTION_SCREENSHOT + ":4");
+        assertThat(reported.get(0)).doesNotEndWith(":0");
+    }
+
+    @Test
+    public void sectionWithinBudgetIsNotReported() {
+        setListener();
+
+        long start = monitor.begin();
+        monitor.end(TurbolinksJankListener.SECTION_PROGRESS_VIEW, start);
+        monitor.doFrame(start + TimeUnit.MILLISECONDS.toNanos(16));
+
+        assertThat(reported).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void budgetForUnknownSection() {
+        monitor.setBudget("unknown", 10);
+    }
+
+    private void setListener() {
+        monitor.setListener(new TurbolinksJankListener() {
+            @Override
+            public void onSectionOverBudget(String section, long durationMillis, int droppedFrames) {
+                reported.add(section + ":" + durationMillis + ":" + droppedFrames);
+            }
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.WebView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksImageDeferralTest extends BaseTest {
+    private TurbolinksImageDeferral deferral;
+    private WebView webView;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        deferral = new TurbolinksImageDeferral(TurbolinksSession.getNew(context));
+        webView = TurbolinksHelper.createWebView(context);
+    }
+
+    @Test
+    public void blocksImagesWhenEnabled() {
+        deferral.deferForVisit(webView, true);
+
+        assertThat(webView.getSettings().getBlockNetworkImage()).isTrue();
+        assertThat(deferral.isVisitDeferred()).isTrue();
+    }
+
+    @Test
+    public void leavesImagesWhenDisabled() {
+        deferral.deferForVisit(webView, false);
+
+        assertThat(webView.getSettings().getBlockNetworkImage()).isFalse();
+        assertThat(deferral.isVisitDeferred()).isFalse();
+    }
+
+    @Test
+    public void skipsVisitRightAfterColdBoot() {
+        deferral.deferForColdBoot(webView, true);
+        deferral.releaseAfterColdBoot();
+        deferral.deferForVisit(webView, true);
+
+        assertThat(deferral.isVisitDeferred()).isFalse();
+
+        deferral.deferForVisit(webView, true);
+
+        assertThat(deferral.isVisitDeferred()).isTrue();
+    }
+
+    @Test
+    public void unblocksPreviousWebViewWhenReplaced() {
+        WebView replacement = TurbolinksHelper.createWebView(context);
+
+        deferral.deferForVisit(webView, true);
+        deferral.deferForVisit(replacement, true);
+
+        assertThat(webView.getSettings().getBlockNetworkImage()).isFalse();
+        assertThat(replacement.getSettings().getBlockNetworkImage()).isTrue();
+    }
+}
@@ -0,0 +1,98 @@
+package com.basecamp.turbolinks;
+
+import org.json.JSONArray;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksJsonWriterTest extends BaseTest {
+
+    // -----------------------------------------------------------------------
+    // Arguments
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void encodesArgumentsSeparatedByCommas() {
+        String json = TurbolinksJsonWriter.encodeArguments(new Object[]{"visit", 1, 2.5, true, null}, null);
+
+        assertThat(json).isEqualTo("\"visit\",1,2.5,true,null");
+    }
+
+    @Test
+    public void encodesNoArguments() {
+        assertThat(TurbolinksJsonWriter.encodeArguments(null, null)).isEmpty();
+        assertThat(TurbolinksJsonWriter.encodeArguments(new Object[0], null)).isEmpty();
+    }
+
+    // -----------------------------------------------------------------------
+    // Escaping
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void escapesQuotesBackslashesAndControlCharacters() {
+        String json = TurbolinksJsonWriter.encode("a\"b\\c\nd\te\u0001", null);
+
+        assertThat(json).isEqualTo("\"a\\\"b\\\\c\\nd\\te\\u0001\"");
+    }
+
+    @Test
+    public void escapesJavascriptLineSeparators() {
+        assertThat(TurbolinksJsonWriter.encode("a\u2028b\u2029", null)).isEqualTo("\"a\\u2028b\\u2029\"");
+    }
+
+    @Test
+    public void doesNotEscapeHtmlOrNonAsciiCharacters() {
+        assertThat(TurbolinksJsonWriter.encode("<a href='/'>café</a>", null)).isEqualTo("\"<a href='/'>café</a>\"");
+    }
+
+    // -----------------------------------------------------------------------
+    // Nested values
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void encodesMapsCollectionsAndArrays() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("ids", Arrays.asList(1, 2));
+        map.put("names", new String[]{"a", null});
+        map.put("json", new JSONArray().put("b"));
+
+        assertThat(TurbolinksJsonWriter.encode(map, null)).isEqualTo("{\"ids\":[1,2],\"names\":[\"a\",null],\"json\":[\"b\"]}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonFiniteNumbers() {
+        TurbolinksJsonWriter.encode(Double.NaN, null);
+    }
+
+    // -----------------------------------------------------------------------
+    // Custom encoder
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void usesEncoderForUnknownValues() {
+        TurbolinksJsonEncoder encoder = new TurbolinksJsonEncoder() {
+            @Override
+            public String encode(Object value) {
+                return "{\"custom\":true}";
+            }
+        };
+
+        String json = TurbolinksJsonWriter.encodeArguments(new Object[]{Arrays.asList(new Object()), "a"}, encoder);
+
+        assertThat(json).isEqualTo("[{\"custom\":true}],\"a\"");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownValuesWithoutEncoder() {
+        TurbolinksJsonWriter.encode(new Object(), null);
+    }
+}
@@ -0,0 +1,97 @@
+package com.basecamp.turbolinks;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksLatencyStatsTest extends BaseTest {
+    private TurbolinksLatencyStats stats;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        stats = new TurbolinksLatencyStats();
+    }
+
+    // -----------------------------------------------------------------------
+    // Histogram
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void bucketsCoverEveryValueWithBoundedError() {
+        for (long value = 0; value <= TurbolinksLatencyHistogram.MAX_VALUE; value += value < 10000 ? 1 : 997) {
+            int index = TurbolinksLatencyHistogram.bucketIndex(value);
+            long lowest = TurbolinksLatencyHistogram.lowestValue(index);
+            long highest = TurbolinksLatencyHistogram.highestValue(index);
+
+            assertThat(index).isLessThan(TurbolinksLatencyHistogram.BUCKET_COUNT);
+            assertThat(value).isBetween(lowest, highest);
+            assertThat(highest - lowest).isLessThanOrEqualTo(Math.max(0, value / TurbolinksLatencyHistogram.SUB_BUCKETS));
+        }
+    }
+
+    @Test
+    public void percentilesAndReset() {
+        TurbolinksLatencyHistogram histogram = new TurbolinksLatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        long[] snapshot = histogram.snapshotAndReset();
+
+        assertThat(TurbolinksLatencyHistogram.percentile(snapshot, 100, 50)).isEqualTo(51);
+        assertThat(TurbolinksLatencyHistogram.percentile(snapshot, 100, 99)).isEqualTo(100);
+        assertThat(histogram.snapshotAndReset()[TurbolinksLatencyHistogram.BUCKET_COUNT]).isZero();
+    }
+
+    // -----------------------------------------------------------------------
+    // Routes
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void collapsesIdentifiersInRoutes() {
+        assertThat(TurbolinksLatencyStats.routeFor("https://basecamp.com/projects/123/todos/456?page=2")).isEqualTo("/projects/:id/todos/:id");
+        assertThat(TurbolinksLatencyStats.routeFor("https://basecamp.com/files/3f2a9c0e-7b1d-4e8a-9c6f-1a2b3c4d5e6f")).isEqualTo("/files/:id");
+        assertThat(TurbolinksLatencyStats.routeFor("https://basecamp.com/projects/abc#top")).isEqualTo("/projects/abc");
+        assertThat(TurbolinksLatencyStats.routeFor("https://basecamp.com")).isEqualTo("/");
+    }
+
+    @Test
+    public void routesAreBounded() {
+        for (int i = 0; i < TurbolinksLatencyStats.MAX_ROUTES * 2; i++) {
+            stats.record("/route" + (char) ('a' + i % 26) + i, TurbolinksLatencyStats.VISIT_TIME, 100);
+        }
+
+        assertThat(stats.getRouteCount()).isEqualTo(TurbolinksLatencyStats.MAX_ROUTES + 1);
+    }
+
+    // -----------------------------------------------------------------------
+    // Export
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void exportsAndResets() throws Exception {
+        stats.record("/projects/:id", TurbolinksLatencyStats.VISIT_TIME, 120);
+        stats.record("/projects/:id", TurbolinksLatencyStats.VISIT_TIME, 180);
+
+        JSONObject visitTime = new JSONObject(stats.snapshotAndResetJson())
+            .getJSONObject("routes")
+            .getJSONObject("/projects/:id")
+            .getJSONObject(TurbolinksLatencyStats.VISIT_TIME);
+
+        assertThat(visitTime.getLong("count")).isEqualTo(2);
+        assertThat(visitTime.getLong("sum")).isEqualTo(300);
+        assertThat(visitTime.getLong("max")).isEqualTo(180);
+        assertThat(visitTime.getLong("p99")).isEqualTo(180);
+
+        assertThat(new JSONObject(stats.snapshotAndResetJson()).getJSONObject("routes").length()).isZero();
+    }
+}
@@ -0,0 +1,73 @@
+package com.basecamp.turbolinks;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksMessageChannelTest extends BaseTest {
+    private TurbolinksMessageChannel channel;
+    private List<String> received;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        channel = new TurbolinksMessageChannel(context);
+        received = new ArrayList<>();
+
+        TurbolinksMessageHandler handler = new TurbolinksMessageHandler() {
+            @Override
+            public void onMessage(String name, JSONObject payload) {
+                received.add(name + ":" + (payload != null ? payload.optString("value") : null));
+            }
+        };
+        channel.addHandler("scroll", handler);
+        channel.addHandler("analytics", handler);
+    }
+
+    @Test
+    public void dispatchesBatchInOrder() {
+        channel.dispatch("[{\"name\": \"scroll\", \"payload\": {\"value\": \"1\"}}," +
+            "{\"name\": \"analytics\", \"payload\": {\"value\": \"2\"}}," +
+            "{\"name\": \"scroll\"}]");
+
+        assertThat(received).containsExactly("scroll:1", "analytics:2", "scroll:null");
+    }
+
+    @Test
+    public void ignoresUnhandledAndMalformedMessages() {
+        channel.removeHandler("analytics");
+        channel.dispatch("[{\"name\": \"analytics\", \"payload\": {}}, 42]");
+        channel.dispatch("not json");
+
+        assertThat(received).isEmpty();
+    }
+
+    @Test
+    public void receiveRunsOnExecutor() {
+        final List<Runnable> tasks = new ArrayList<>();
+        channel.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                tasks.add(runnable);
+            }
+        });
+
+        channel.receive("[{\"name\": \"scroll\", \"payload\": {\"value\": \"1\"}}]");
+        assertThat(received).isEmpty();
+
+        tasks.get(0).run();
+        assertThat(received).containsExactly("scroll:1");
+    }
+}
@@ -0,0 +1,265 @@
+package com.basecamp.turbolinks;
+
+import android.os.Looper;
+import android.webkit.CookieManager;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksPageUpdateChannelTest extends BaseTest {
+    private static final String APPEND = "{\"action\":\"append\",\"target\":\"messages\",\"html\":\"<li>1</li>\"}";
+    private static final String REMOVE = "{\"action\":\"remove\",\"target\":\"message_2\"}";
+    private static final String PAGE = "http://example.com/messages";
+    private static final TurbolinksRetryPolicy NO_DELAY = new TurbolinksRetryPolicy(3, 0, 0);
+
+    private TestTarget target;
+    private TurbolinksPageUpdateChannel channel;
+    private StandInServer server;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        target = new TestTarget();
+        channel = new TurbolinksPageUpdateChannel(target, Looper.getMainLooper(), new Random(0));
+    }
+
+    @After
+    public void teardown() throws IOException {
+        channel.disconnect();
+        if (server != null) server.close();
+    }
+
+    // -----------------------------------------------------------------------
+    // Stream
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void appliesStreamedUpdatesInOneBatch() throws Exception {
+        server = new StandInServer(
+            "HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n\r\n" +
+                ": keep-alive\n\nid: 1\ndata: " + APPEND + "\n\nevent: update\nid: 2\ndata: " + REMOVE + "\n\n" +
+                "event: other\ndata: " + APPEND + "\n\n",
+            "HTTP/1.1 204 No Content\r\n\r\n");
+
+        ShadowLooper.pauseMainLooper();
+        channel.connect(server.getUrl(), PAGE, null, NO_DELAY);
+        server.awaitRequests(2);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(target.batches).hasSize(1);
+        assertThat(target.batches.get(0).length()).isEqualTo(2);
+        assertThat(target.batches.get(0).getJSONObject(1).getString("action")).isEqualTo("remove");
+    }
+
+    @Test
+    public void reconnectsWithLastEventId() throws Exception {
+        server = new StandInServer(
+            "HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n\r\nid: 7\ndata: " + APPEND + "\n\n",
+            "HTTP/1.1 503 Service Unavailable\r\n\r\n",
+            "HTTP/1.1 204 No Content\r\n\r\n");
+
+        channel.connect(server.getUrl(), PAGE, null, NO_DELAY);
+        server.awaitRequests(3);
+
+        assertThat(server.getRequests().get(0)).contains("Accept: text/event-stream");
+        assertThat(server.getRequests().get(1)).contains("Last-Event-ID: 7");
+        assertThat(server.getRequests().get(2)).contains("Last-Event-ID: 7");
+    }
+
+    @Test
+    public void sendsWebViewCookieAndUserAgent() throws Exception {
+        server = new StandInServer(
+            "HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n\r\ndata: " + APPEND + "\n\n",
+            "HTTP/1.1 204 No Content\r\n\r\n");
+        server.requireHeader("Cookie: session=signed-in");
+        CookieManager.getInstance().setCookie(server.getUrl(), "session=signed-in");
+
+        ShadowLooper.pauseMainLooper();
+        channel.connect(server.getUrl(), PAGE, "Turbolinks Test", NO_DELAY);
+        server.awaitRequests(2);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(server.getRequests().get(0)).contains("User-Agent: Turbolinks Test");
+        assertThat(target.batches).hasSize(1);
+    }
+
+    @Test
+    public void closesStreamWhenLocationChanges() throws Exception {
+        server = new StandInServer();
+
+        channel.connect(server.getUrl(), PAGE, null, NO_DELAY);
+        channel.locationChanged(PAGE);
+        assertThat(channel.isConnected()).isTrue();
+
+        channel.locationChanged("http://example.com/projects");
+        assertThat(channel.isConnected()).isFalse();
+    }
+
+    // -----------------------------------------------------------------------
+    // Buffer
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void buffersUpdatesUntilReady() throws Exception {
+        target.ready = false;
+        channel.enqueue(new JSONObject(APPEND));
+        channel.flush();
+
+        assertThat(target.batches).isEmpty();
+        assertThat(channel.getBufferedCount()).isEqualTo(1);
+
+        target.ready = true;
+        channel.flush();
+
+        assertThat(target.batches).hasSize(1);
+        assertThat(channel.getBufferedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void refreshesInsteadWhenBufferOverflows() throws Exception {
+        target.ready = false;
+        for (int i = 0; i <= TurbolinksPageUpdateChannel.MAX_BUFFERED_UPDATES; i++) {
+            channel.enqueue(new JSONObject(APPEND));
+        }
+
+        assertThat(channel.isOverflowed()).isTrue();
+        assertThat(channel.getBufferedCount()).isEqualTo(0);
+
+        target.ready = true;
+        channel.flush();
+
+        assertThat(target.refreshCount).isEqualTo(1);
+        assertThat(target.batches).isEmpty();
+        assertThat(channel.isOverflowed()).isFalse();
+    }
+
+    // -----------------------------------------------------------------------
+    // Parsing
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void rejectsInvalidUpdates() {
+        assertThat(TurbolinksPageUpdateChannel.parseUpdate(APPEND)).isNotNull();
+        assertThat(TurbolinksPageUpdateChannel.parseUpdate(REMOVE)).isNotNull();
+        assertThat(TurbolinksPageUpdateChannel.parseUpdate("{\"action\":\"eval\",\"target\":\"a\",\"html\":\"\"}")).isNull();
+        assertThat(TurbolinksPageUpdateChannel.parseUpdate("{\"action\":\"append\",\"target\":\"a\"}")).isNull();
+        assertThat(TurbolinksPageUpdateChannel.parseUpdate("{\"action\":\"append\",\"html\":\"\"}")).isNull();
+        assertThat(TurbolinksPageUpdateChannel.parseUpdate("not json")).isNull();
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    private static class TestTarget implements TurbolinksPageUpdateChannel.Target {
+        final List<JSONArray> batches = new ArrayList<>();
+        boolean ready = true;
+        int refreshCount;
+
+        @Override
+        public boolean isReadyForUpdates() {
+            return ready;
+        }
+
+        @Override
+        public void applyUpdates(JSONArray updates) {
+            batches.add(updates);
+        }
+
+        @Override
+        public void refresh() {
+            refreshCount++;
+        }
+    }
+
+    /**
+     * A local stand-in for the event stream server, answering each connection with the next
+     * response and closing it.
+     */
+    private static class StandInServer {
+        private final ServerSocket serverSocket;
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private volatile String requiredHeader;
+
+        StandInServer(final String... responses) throws IOException {
+            serverSocket = new ServerSocket(0);
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (String response : responses) {
+                        try (Socket socket = serverSocket.accept()) {
+                            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                            StringBuilder request = new StringBuilder();
+                            String line;
+                            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                                request.append(line).append("\n");
+                            }
+
+                            if (requiredHeader != null && !request.toString().contains(requiredHeader + "\n")) {
+                                response = "HTTP/1.1 401 Unauthorized\r\n\r\n";
+                            }
+
+                            OutputStream outputStream = socket.getOutputStream();
+                            outputStream.write(response.replaceFirst("\r\n", "\r\nConnection: close\r\n").getBytes("UTF-8"));
+                            outputStream.flush();
+                            requests.add(request.toString());
+                        } catch (IOException e) {
+                            return;
+                        }
+                    }
+                }
+            }).start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/updates";
+        }
+
+        List<String> getRequests() {
+            return requests;
+        }
+
+        /**
+         * Answers requests without this header line with a 401, like a server that needs a session.
+         */
+        void requireHeader(String header) {
+            requiredHeader = header;
+        }
+
+        void awaitRequests(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (requests.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50); // Let the client finish handling the last response
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.basecamp.turbolinks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksPathConfigurationTest extends BaseTest {
+    private static final String JSON = "{\"rules\": [" +
+        "{\"patterns\": [\"/projects/:id/edit\", \"/messages/new\"], \"properties\": {\"presentation\": \"modal\", \"pull_to_refresh_enabled\": false}}," +
+        "{\"host\": \"reports.basecamp.com\", \"patterns\": [\"/*\"], \"properties\": {\"screenshots_enabled\": false, \"defer_images\": true, \"custom\": \"value\"}}" +
+        "]}";
+    private static final String REFRESHED_JSON = "{\"rules\": [{\"patterns\": [\"/projects\"], \"properties\": {\"presentation\": \"replace\"}}]}";
+
+    private StandInServer server;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        new File(context.getFilesDir(), TurbolinksPathConfiguration.CACHE_FILE_NAME).delete();
+        new File(context.getFilesDir(), TurbolinksPathConfiguration.ETAG_FILE_NAME).delete();
+        new File(context.getFilesDir(), TurbolinksPathConfiguration.VERSION_FILE_NAME).delete();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        if (server != null) server.close();
+    }
+
+    // -----------------------------------------------------------------------
+    // Rules
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void defaultPropertiesBeforeLoading() {
+        TurbolinksPathConfiguration configuration = new TurbolinksPathConfiguration(context, null, null);
+        TurbolinksPathProperties properties = configuration.getProperties("https://basecamp.com/projects/1/edit");
+
+        assertThat(properties.getPresentation()).isNull();
+        assertThat(properties.isPullToRefreshEnabled()).isTrue();
+        assertThat(properties.isScreenshotsEnabled()).isTrue();
+        assertThat(properties.isImagesDeferred(true)).isTrue();
+    }
+
+    @Test
+    public void appliesMatchingRule() throws Exception {
+        TurbolinksPathConfiguration configuration = new TurbolinksPathConfiguration(context, null, null);
+        configuration.loadJson(JSON);
+
+        TurbolinksPathProperties properties = configuration.getProperties("https://basecamp.com/projects/1/edit");
+        assertThat(properties.getPresentation()).isEqualTo(TurbolinksRouter.PRESENTATION_MODAL);
+        assertThat(properties.isPullToRefreshEnabled()).isFalse();
+
+        properties = configuration.getProperties("https://reports.basecamp.com/big/report");
+        assertThat(properties.isScreenshotsEnabled()).isFalse();
+        assertThat(properties.isImagesDeferred(false)).isTrue();
+        assertThat(properties.getString("custom", null)).isEqualTo("value");
+
+        assertThat(configuration.getProperties("https://basecamp.com/big/report").isScreenshotsEnabled()).isTrue();
+    }
+
+    // -----------------------------------------------------------------------
+    // Refreshing
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void refreshFromServerSavesCopyAndUsesEtag() throws Exception {
+        server = new StandInServer(
+            "HTTP/1.1 200 OK\r\nETag: \"v1\"\r\nContent-Type: application/json\r\n\r\n" + REFRESHED_JSON,
+            "HTTP/1.1 304 Not Modified\r\n\r\n");
+
+        TurbolinksPathConfiguration configuration = new TurbolinksPathConfiguration(context, null, server.getUrl());
+
+        assertThat(configuration.refreshFromServer()).isTrue();
+        assertThat(configuration.getProperties("https://basecamp.com/projects").getPresentation()).isEqualTo(TurbolinksRouter.PRESENTATION_REPLACE);
+
+        assertThat(configuration.refreshFromServer()).isFalse();
+        assertThat(server.getRequests().get(1)).contains("If-None-Match: \"v1\"");
+        assertThat(configuration.getProperties("https://basecamp.com/projects").getPresentation()).isEqualTo(TurbolinksRouter.PRESENTATION_REPLACE);
+    }
+
+    @Test
+    public void loadsSavedCopyOnNextLaunch() throws Exception {
+        server = new StandInServer("HTTP/1.1 200 OK\r\nETag: \"v1\"\r\n\r\n" + REFRESHED_JSON);
+        new TurbolinksPathConfiguration(context, null, server.getUrl()).refreshFromServer();
+
+        TurbolinksPathConfiguration configuration = new TurbolinksPathConfiguration(context, null, null);
+        configuration.loadSavedOrBundled();
+
+        assertThat(configuration.getProperties("https://basecamp.com/projects").getPresentation()).isEqualTo(TurbolinksRouter.PRESENTATION_REPLACE);
+    }
+
+    @Test
+    public void savedCopyFromAnotherAppVersionIsDiscarded() throws Exception {
+        server = new StandInServer("HTTP/1.1 200 OK\r\nETag: \"v1\"\r\n\r\n" + REFRESHED_JSON);
+        new TurbolinksPathConfiguration(context, null, server.getUrl()).refreshFromServer();
+
+        File versionFile = new File(context.getFilesDir(), TurbolinksPathConfiguration.VERSION_FILE_NAME);
+        assertThat(versionFile.exists()).isTrue();
+        FileOutputStream outputStream = new FileOutputStream(versionFile);
+        outputStream.write("-1".getBytes("UTF-8"));
+        outputStream.close();
+
+        TurbolinksPathConfiguration configuration = new TurbolinksPathConfiguration(context, null, null);
+        configuration.loadSavedOrBundled();
+
+        assertThat(configuration.getProperties("https://basecamp.com/projects").getPresentation()).isNull();
+        assertThat(new File(context.getFilesDir(), TurbolinksPathConfiguration.CACHE_FILE_NAME).exists()).isFalse();
+        assertThat(new File(context.getFilesDir(), TurbolinksPathConfiguration.ETAG_FILE_NAME).exists()).isFalse();
+    }
+
+    @Test
+    public void unreadableSavedCopyIsDiscarded() throws Exception {
+        server = new StandInServer("HTTP/1.1 200 OK\r\nETag: \"v1\"\r\n\r\n" + REFRESHED_JSON);
+        new TurbolinksPathConfiguration(context, null, server.getUrl()).refreshFromServer();
+
+        FileOutputStream outputStream = new FileOutputStream(new File(context.getFilesDir(), TurbolinksPathConfiguration.CACHE_FILE_NAME));
+        outputStream.write("not json".getBytes("UTF-8"));
+        outputStream.close();
+
+        TurbolinksPathConfiguration configuration = new TurbolinksPathConfiguration(context, null, null);
+        configuration.loadSavedOrBundled();
+
+        assertThat(configuration.getProperties("https://basecamp.com/projects").getPresentation()).isNull();
+        assertThat(new File(context.getFilesDir(), TurbolinksPathConfiguration.CACHE_FILE_NAME).exists()).isFalse();
+        assertThat(new File(context.getFilesDir(), TurbolinksPathConfiguration.ETAG_FILE_NAME).exists()).isFalse();
+    }
+
+    @Test
+    public void invalidServerCopyIsIgnored() throws Exception {
+        server = new StandInServer("HTTP/1.1 200 OK\r\n\r\nnot json");
+
+        TurbolinksPathConfiguration configuration = new TurbolinksPathConfiguration(context, null, server.getUrl());
+        configuration.loadJson(JSON);
+
+        assertThat(configuration.refreshFromServer()).isFalse();
+        assertThat(new File(context.getFilesDir(), TurbolinksPathConfiguration.CACHE_FILE_NAME).exists()).isFalse();
+        assertThat(configuration.getProperties("https://basecamp.com/messages/new").getPresentation()).isEqualTo(TurbolinksRouter.PRESENTATION_MODAL);
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    /**
+     * A local stand-in for the configuration server, answering each connection with the next
+     * canned response and recording the request headers.
+     */
+    private static class StandInServer {
+        private final ServerSocket serverSocket;
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+        StandInServer(final String... responses) throws IOException {
+            serverSocket = new ServerSocket(0);
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (String response : responses) {
+                        try (Socket socket = serverSocket.accept()) {
+                            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                            StringBuilder request = new StringBuilder();
+                            String line;
+                            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                                request.append(line).append("\n");
+                            }
+                            requests.add(request.toString());
+
+                            OutputStream outputStream = socket.getOutputStream();
+                            outputStream.write(response.replaceFirst("\r\n", "\r\nConnection: close\r\n").getBytes("UTF-8"));
+                            outputStream.flush();
+                        } catch (IOException e) {
+                            return;
+                        }
+                    }
+                }
+            }).start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/path_configuration.json";
+        }
+
+        List<String> getRequests() {
+            return requests;
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.WebViewClient;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksRetryPolicyTest extends BaseTest {
+    @Test
+    public void delayDoublesUpToMax() {
+        TurbolinksRetryPolicy policy = new TurbolinksRetryPolicy(5, 500, 3000);
+
+        assertThat(policy.getDelay(0)).isEqualTo(500);
+        assertThat(policy.getDelay(1)).isEqualTo(1000);
+        assertThat(policy.getDelay(2)).isEqualTo(2000);
+        assertThat(policy.getDelay(3)).isEqualTo(3000);
+        assertThat(policy.getDelay(30)).isEqualTo(3000);
+    }
+
+    @Test
+    public void onlyTransientFailuresAreRetryable() {
+        TurbolinksRetryPolicy policy = new TurbolinksRetryPolicy(3, 500, 3000);
+
+        assertThat(policy.isRetryable(WebViewClient.ERROR_HOST_LOOKUP)).isTrue();
+        assertThat(policy.isRetryable(503)).isTrue();
+        assertThat(policy.isRetryable(404)).isFalse();
+        assertThat(policy.isRetryable(500)).isFalse();
+        assertThat(policy.isRetryable(WebViewClient.ERROR_BAD_URL)).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxDelayShorterThanInitialDelay() {
+        new TurbolinksRetryPolicy(3, 500, 100);
+    }
+}
@@ -0,0 +1,191 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksRouterTest extends BaseTest {
+    private static final String BASE_URL = "https://basecamp.com";
+    private static final int SECTIONS = 50;
+    private static final int ACTIONS = 100;
+
+    private TurbolinksRouter router;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        router = new TurbolinksRouter();
+    }
+
+    // -----------------------------------------------------------------------
+    // Matching
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void matchesLiteralPath() {
+        router.addRoute("/projects", TurbolinksRouter.PRESENTATION_PUSH);
+
+        TurbolinksRouteMatch match = router.match(BASE_URL + "/projects");
+
+        assertThat(match).isNotNull();
+        assertThat(match.getPresentation()).isEqualTo(TurbolinksRouter.PRESENTATION_PUSH);
+        assertThat(match.getRoute().getName()).isEqualTo("/projects");
+    }
+
+    @Test
+    public void noMatchReturnsNull() {
+        router.addRoute("/projects", TurbolinksRouter.PRESENTATION_PUSH);
+
+        assertThat(router.match(BASE_URL + "/people")).isNull();
+        assertThat(router.match(BASE_URL + "/projects/1")).isNull();
+    }
+
+    @Test
+    public void capturesParams() {
+        router.addRoute("message", "/projects/:project_id/messages/:id", TurbolinksRouter.PRESENTATION_NATIVE);
+
+        TurbolinksRouteMatch match = router.match(BASE_URL + "/projects/12/messages/hello%20world?page=2#top");
+
+        assertThat(match.getRoute().getName()).isEqualTo("message");
+        assertThat(match.getParam("project_id")).isEqualTo("12");
+        assertThat(match.getParam("id")).isEqualTo("hello world");
+    }
+
+    @Test
+    public void literalWinsOverParam() {
+        router.addRoute("show", "/projects/:id", TurbolinksRouter.PRESENTATION_PUSH);
+        router.addRoute("new", "/projects/new", TurbolinksRouter.PRESENTATION_MODAL);
+
+        assertThat(router.match(BASE_URL + "/projects/new").getRoute().getName()).isEqualTo("new");
+        assertThat(router.match(BASE_URL + "/projects/1").getRoute().getName()).isEqualTo("show");
+    }
+
+    @Test
+    public void wildcardMatchesRemainder() {
+        router.addRoute("/files/*", TurbolinksRouter.PRESENTATION_EXTERNAL);
+
+        assertThat(router.match(BASE_URL + "/files/a/b/c.pdf").getParam("*")).isEqualTo("a/b/c.pdf");
+        assertThat(router.match(BASE_URL + "/files")).isNotNull();
+    }
+
+    @Test
+    public void backtracksWhenLiteralBranchFails() {
+        router.addRoute("edit", "/projects/new/edit", TurbolinksRouter.PRESENTATION_MODAL);
+        router.addRoute("settings", "/projects/:id/settings", TurbolinksRouter.PRESENTATION_PUSH);
+
+        assertThat(router.match(BASE_URL + "/projects/new/settings").getRoute().getName()).isEqualTo("settings");
+    }
+
+    @Test
+    public void matchesHostRules() {
+        router.addRoute("other", "example.com", "/projects", TurbolinksRouter.PRESENTATION_EXTERNAL);
+        router.addRoute("subdomain", "*.basecamp.com", "/projects", TurbolinksRouter.PRESENTATION_PUSH);
+
+        assertThat(router.match("https://3.basecamp.com/projects").getRoute().getName()).isEqualTo("subdomain");
+        assertThat(router.match("https://user@basecamp.com:443/projects").getRoute().getName()).isEqualTo("subdomain");
+        assertThat(router.match("https://EXAMPLE.com/projects").getRoute().getName()).isEqualTo("other");
+        assertThat(router.match("https://notbasecamp.com/projects")).isNull();
+    }
+
+    @Test
+    public void matchesQueryRules() {
+        router.addRoute("archived", "/projects?tab=archived", TurbolinksRouter.PRESENTATION_MODAL);
+        router.addRoute("modal", "/projects?modal", TurbolinksRouter.PRESENTATION_MODAL);
+        router.addRoute("projects", "/projects", TurbolinksRouter.PRESENTATION_PUSH);
+
+        assertThat(router.match(BASE_URL + "/projects?tab=archived").getRoute().getName()).isEqualTo("archived");
+        assertThat(router.match(BASE_URL + "/projects?modal&tab=all").getRoute().getName()).isEqualTo("modal");
+        assertThat(router.match(BASE_URL + "/projects?tab=all").getRoute().getName()).isEqualTo("projects");
+    }
+
+    @Test
+    public void matchesPaths() {
+        router.addRoute("/projects/:id", TurbolinksRouter.PRESENTATION_PUSH);
+
+        assertThat(router.match("/projects/1/").getParam("id")).isEqualTo("1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void patternMustStartWithSlash() {
+        router.addRoute("projects", TurbolinksRouter.PRESENTATION_PUSH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wildcardMustBeLast() {
+        router.addRoute("/files/*/edit", TurbolinksRouter.PRESENTATION_PUSH);
+    }
+
+    // -----------------------------------------------------------------------
+    // Many routes
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void matchesAmongThousandsOfRoutes() {
+        addThousandsOfRoutes();
+
+        assertThat(router.size()).isEqualTo(SECTIONS * ACTIONS + 1);
+
+        for (int i = 0; i < SECTIONS; i++) {
+            int action = i * 7 % ACTIONS;
+            TurbolinksRouteMatch match = router.match(BASE_URL + "/accounts/123/section" + i + "/456/action" + action + "?page=1");
+
+            assertThat(match.getRoute().getName()).isEqualTo("route" + i + "_" + action);
+        }
+
+        assertThat(router.match(BASE_URL + "/unknown").getRoute().getName()).isEqualTo("fallback");
+    }
+
+    // -----------------------------------------------------------------------
+    // Benchmark
+    // -----------------------------------------------------------------------
+
+    /**
+     * Reports the average match time among thousands of routes. Timings depend on the machine, so
+     * it's left out of the default run and asserts nothing about them: remove the @Ignore to run it.
+     */
+    @Test
+    @Ignore("Benchmark, run manually")
+    public void benchmarkThousandsOfRoutes() {
+        addThousandsOfRoutes();
+
+        int iterations = 100000;
+        String[] locations = new String[SECTIONS];
+        for (int i = 0; i < SECTIONS; i++) {
+            locations[i] = BASE_URL + "/accounts/123/section" + i + "/456/action" + (i * 7 % ACTIONS) + "?page=1";
+        }
+
+        // Warm up the JIT before timing
+        for (int i = 0; i < iterations; i++) {
+            router.match(locations[i % SECTIONS]);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            router.match(locations[i % SECTIONS]);
+        }
+        long averageNanos = (System.nanoTime() - start) / iterations;
+
+        System.out.println("TurbolinksRouter: " + router.size() + " routes, " + averageNanos + " ns per match");
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    private void addThousandsOfRoutes() {
+        for (int i = 0; i < SECTIONS; i++) {
+            for (int j = 0; j < ACTIONS; j++) {
+                router.addRoute("route" + i + "_" + j, "/accounts/:account_id/section" + i + "/:id/action" + j, TurbolinksRouter.PRESENTATION_PUSH);
+            }
+        }
+        router.addRoute("fallback", "/*", TurbolinksRouter.PRESENTATION_EXTERNAL);
+    }
+}
@@ -1,6 +1,12 @@
 package com.basecamp.turbolinks;
 
 import android.app.Activity;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
 import android.widget.FrameLayout;
 
 import org.junit.Before;
@@ -10,10 +16,17 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricGradleTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Matchers.any;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricGradleTestRunner.class)
 @Config(constants = TestBuildConfig.class)
@@ -107,6 +120,66 @@ public class TurbolinksSessionTest extends BaseTest {
             .visit("");
     }
 
+    // -----------------------------------------------------------------------
+    // Visit options
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void visitAppliesCopyOfOptions() {
+        TurbolinksVisitOptions options = new TurbolinksVisitOptions()
+            .screenshotsEnabled(false)
+            .cacheMode(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+
+        turbolinksSession.activity((Activity) context)
+            .adapter(adapter)
+            .view(view)
+            .visit(LOCATION, options);
+        options.screenshotsEnabled(true);
+
+        assertThat(turbolinksSession.visitOptions.isScreenshotsEnabled()).isFalse();
+        assertThat(turbolinksSession.webView.getSettings().getCacheMode()).isEqualTo(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+    }
+
+    @Test
+    public void visitWithoutOptionsResetsToDefaults() {
+        turbolinksSession.activity((Activity) context)
+            .adapter(adapter)
+            .view(view)
+            .visit(LOCATION, new TurbolinksVisitOptions().screenshotsEnabled(false));
+        turbolinksSession.view(view)
+            .visit(LOCATION);
+
+        assertThat(turbolinksSession.visitOptions.isScreenshotsEnabled()).isTrue();
+        assertThat(turbolinksSession.webView.getSettings().getCacheMode()).isEqualTo(WebSettings.LOAD_DEFAULT);
+    }
+
+    @Test
+    public void restoreOptionOnlyAppliesToItsVisit() {
+        turbolinksSession.activity((Activity) context)
+            .adapter(adapter)
+            .view(view)
+            .visit(LOCATION, new TurbolinksVisitOptions().restoreWithCachedSnapshot(true));
+
+        assertThat(turbolinksSession.visitOptions.isRestoreWithCachedSnapshot()).isTrue();
+        assertThat(turbolinksSession.restoreWithCachedSnapshot).isFalse();
+
+        turbolinksSession.view(view)
+            .visit(LOCATION);
+
+        assertThat(turbolinksSession.visitOptions.isRestoreWithCachedSnapshot()).isFalse();
+    }
+
+    @Test
+    public void visitWithoutCacheModeUsesProfileCacheMode() {
+        turbolinksSession.setWebViewProfile(new TurbolinksWebViewProfile().cacheMode(WebSettings.LOAD_CACHE_ELSE_NETWORK));
+        turbolinksSession.activity((Activity) context)
+            .adapter(adapter)
+            .view(view)
+            .visit(LOCATION);
+
+        assertThat(turbolinksSession.webView.getSettings().getCacheMode()).isEqualTo(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+    }
+
     // -----------------------------------------------------------------------
     // Adapter
     // -----------------------------------------------------------------------
@@ -174,6 +247,34 @@ public class TurbolinksSessionTest extends BaseTest {
         assertThat(turbolinksSession.restorationIdentifierMap.size()).isEqualTo(1);
     }
 
+    @Test
+    public void receiveEventsDispatchesBatchInOrder() {
+        // Mock doesn't seem to work for running on the main thread
+        TurbolinksTestActivity activity = new TurbolinksTestActivity();
+
+        turbolinksSession.activity(activity)
+            .adapter(adapter)
+            .view(view);
+        turbolinksSession.receiveEvents("{\"sentAt\":10000,\"events\":[" +
+            "{\"name\":\"visitStarted\",\"args\":[\"" + VISIT_IDENTIFIER + "\",false],\"time\":9000}," +
+            "{\"name\":\"visitRequestCompleted\",\"args\":[\"" + VISIT_IDENTIFIER + "\"],\"time\":9400}," +
+            "{\"name\":\"visitCompleted\",\"args\":[\"" + VISIT_IDENTIFIER + "\",\"" + RESTORATION_IDENTIFIER + "\"],\"time\":10000}]}");
+
+        assertThat(turbolinksSession.currentVisitIdentifier).isEqualTo(VISIT_IDENTIFIER);
+        assertThat(turbolinksSession.visitResponseTime - turbolinksSession.visitStartTime).isEqualTo(400);
+        assertThat(turbolinksSession.restorationIdentifierMap.size()).isEqualTo(1);
+        verify(adapter).visitCompleted();
+    }
+
+    @Test
+    public void receiveEventsIgnoresMalformedBatch() {
+        turbolinksSession.currentVisitIdentifier = VISIT_IDENTIFIER;
+        turbolinksSession.receiveEvents("[not json");
+        turbolinksSession.receiveEvents("{\"events\":[\"visitStarted\",{\"name\":\"unknown\",\"args\":[\"1\"]}]}");
+
+        assertThat(turbolinksSession.currentVisitIdentifier).isEqualTo(VISIT_IDENTIFIER);
+    }
+
 //    TODO: Robolectric having trouble with local resources directory
 //    @Test
 //    public void pageInvalidatedCallsAdapter() {
@@ -243,10 +344,222 @@ public class TurbolinksSessionTest extends BaseTest {
         assertThat(turbolinksSession.coldBootInProgress).isFalse();
     }
 
+    @Test
+    public void restoreInstanceStateRestoresLocationAndRestorationIdentifiers() {
+        turbolinksSession.activity(new TurbolinksTestActivity());
+        turbolinksSession.location = LOCATION;
+        turbolinksSession.visitCompleted(VISIT_IDENTIFIER, RESTORATION_IDENTIFIER);
+
+        Bundle outState = new Bundle();
+        turbolinksSession.saveInstanceState(outState);
+
+        // A recreated activity is a new instance, only its location matches
+        TurbolinksSession restoredSession = TurbolinksSession.getNew(context);
+        restoredSession.restoreInstanceState(outState);
+        restoredSession.activity(new TurbolinksTestActivity());
+
+        assertThat(restoredSession.location).isEqualTo(LOCATION);
+        assertThat(restoredSession.getRestorationIdentifierFromMap()).isEqualTo(RESTORATION_IDENTIFIER);
+        assertThat(restoredSession.getRestorationIdentifierFromMap()).isNull();
+        assertThat(restoredSession.turbolinksIsReady).isFalse();
+    }
+
+    @Test
+    public void restoreInstanceStateIgnoredWhenTurbolinksIsReady() {
+        turbolinksSession.location = LOCATION;
+
+        Bundle outState = new Bundle();
+        turbolinksSession.saveInstanceState(outState);
+
+        TurbolinksSession restoredSession = TurbolinksSession.getNew(context);
+        restoredSession.location = "https://basecamp.com/current";
+        restoredSession.turbolinksIsReady = true;
+        restoredSession.restoreInstanceState(outState);
+
+        assertThat(restoredSession.location).isEqualTo("https://basecamp.com/current");
+    }
+
+    @Test
+    public void restoreInstanceStateWithNullBundle() {
+        turbolinksSession.restoreInstanceState(null);
+
+        assertThat(turbolinksSession.location).isNull();
+    }
+
+    @Test
+    public void renderDetectionDefaultsToAnimationFrame() {
+        assertThat(turbolinksSession.renderDetection).isEqualTo(TurbolinksSession.RENDER_DETECTION_ANIMATION_FRAME);
+    }
+
+    @Test
+    public void setRenderDetection() {
+        turbolinksSession.setRenderDetection(TurbolinksSession.RENDER_DETECTION_PAINT);
+
+        assertThat(turbolinksSession.renderDetection).isEqualTo(TurbolinksSession.RENDER_DETECTION_PAINT);
+    }
+
+    @Test
+    public void setRenderDetectionVisualStateFallsBackBeforeApi23() {
+        turbolinksSession.setRenderDetection(TurbolinksSession.RENDER_DETECTION_VISUAL_STATE);
+
+        assertThat(turbolinksSession.renderDetection).isEqualTo(TurbolinksSession.RENDER_DETECTION_ANIMATION_FRAME);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setRenderDetectionWithUnknownStrategy() {
+        turbolinksSession.setRenderDetection("unknown");
+    }
+
     @Test
     public void turbolinksIsReady() {
         turbolinksSession.turbolinksIsReady = true;
 
         assertThat(turbolinksSession.turbolinksIsReady()).isTrue();
     }
+
+    // -----------------------------------------------------------------------
+    // Visits in flight
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void visitAfterWaitingPrefersCacheUntilRequestCompletes() {
+        TurbolinksVisitRegistry registry = new TurbolinksVisitRegistry(Looper.getMainLooper());
+        Object otherSession = new Object();
+        registry.begin(TurbolinksHelper.encodeUrl(LOCATION), TurbolinksSession.ACTION_ADVANCE, otherSession);
+        turbolinksSession.visitRegistry = registry;
+        turbolinksSession.turbolinksIsReady = true;
+        WebSettings settings = turbolinksSession.webView.getSettings();
+
+        turbolinksSession.visitLocationWithAction(LOCATION, TurbolinksSession.ACTION_ADVANCE);
+        registry.finish(otherSession, true);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(settings.getCacheMode()).isEqualTo(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+
+        turbolinksSession.currentVisitIdentifier = VISIT_IDENTIFIER;
+        turbolinksSession.visitRequestCompleted(VISIT_IDENTIFIER);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(settings.getCacheMode()).isEqualTo(WebSettings.LOAD_DEFAULT);
+    }
+
+    @Test
+    public void pullToRefreshCancelsVisitInFlight() {
+        TurbolinksVisitRegistry registry = new TurbolinksVisitRegistry(Looper.getMainLooper());
+        String encodedLocation = TurbolinksHelper.encodeUrl(LOCATION);
+        final List<Boolean> results = new ArrayList<>();
+        turbolinksSession.visitRegistry = registry;
+        turbolinksSession.turbolinksIsReady = true;
+
+        turbolinksSession.visitLocationWithAction(LOCATION, TurbolinksSession.ACTION_ADVANCE);
+        turbolinksSession.currentVisitIdentifier = VISIT_IDENTIFIER;
+        registry.attach(encodedLocation, new Object(), new TurbolinksVisitRegistry.Listener() {
+            @Override
+            public void onVisitFinished(boolean succeeded) {
+                results.add(succeeded);
+            }
+        });
+
+        turbolinksSession.pullToRefresh();
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(results).containsExactly(false);
+        assertThat(registry.isInFlight(encodedLocation, TurbolinksSession.ACTION_ADVANCE, turbolinksSession)).isTrue();
+        assertThat(shadowOf(turbolinksSession.webView).getLastLoadedUrl()).contains("visitLocationWithActionAndRestorationIdentifier");
+    }
+
+    // -----------------------------------------------------------------------
+    // Bridge injection
+    // -----------------------------------------------------------------------
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.M)
+    public void bridgeIsInjectedOnPageCommit() {
+        turbolinksSession.adapter(adapter);
+        turbolinksSession.webViewClient.onPageCommitVisible(turbolinksSession.webView, LOCATION);
+
+        assertThat(turbolinksSession.bridgeInjectedOnCommit).isTrue();
+        assertThat(turbolinksSession.bridgeInjectionInProgress).isTrue();
+    }
+
+    @Test
+    public void pageFinishedAfterReadyBridgeOnlyCallsAdapter() {
+        turbolinksSession.adapter(adapter);
+        turbolinksSession.bridgeInjectedOnCommit = true;
+        turbolinksSession.bridgeInjectionInProgress = true;
+        turbolinksSession.turbolinksIsReady = true;
+        turbolinksSession.webViewClient.onPageFinished(turbolinksSession.webView, LOCATION);
+
+        assertThat(turbolinksSession.bridgeInjectedOnCommit).isFalse();
+        verify(adapter).onPageFinished();
+    }
+
+    @Test
+    public void missingTurbolinksOnCommitFallsBackToPageFinished() {
+        turbolinksSession.activity((Activity) context)
+            .adapter(adapter)
+            .view(view);
+        turbolinksSession.bridgeInjectedOnCommit = true;
+        turbolinksSession.bridgeInjectionInProgress = true;
+
+        turbolinksSession.turbolinksDoesNotExist();
+        ShadowLooper.idleMainLooper();
+
+        // Nothing stops onPageFinished from injecting the bridge again
+        assertThat(turbolinksSession.bridgeInjectedOnCommit).isFalse();
+        assertThat(turbolinksSession.bridgeInjectionInProgress).isFalse();
+    }
+
+    // -----------------------------------------------------------------------
+    // Render process recovery
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void renderProcessGoneReplacesWebViewAndColdBoots() {
+        Object appInterface = new Object();
+        turbolinksSession.activity((Activity) context)
+            .adapter(adapter)
+            .view(view);
+        turbolinksSession.addJavascriptInterface(appInterface, "App");
+        turbolinksSession.location = LOCATION;
+        turbolinksSession.turbolinksIsReady = true;
+        WebView deadWebView = turbolinksSession.webView;
+
+        turbolinksSession.recoverFromRenderProcessGone();
+        WebView webView = turbolinksSession.webView;
+
+        assertThat(webView).isNotSameAs(deadWebView);
+        assertThat(deadWebView.getParent()).isNull();
+        assertThat(shadowOf(webView).getJavascriptInterface(TurbolinksSession.JAVASCRIPT_INTERFACE_NAME)).isInstanceOf(TurbolinksSession.JavascriptBridge.class);
+        assertThat(shadowOf(webView).getJavascriptInterface("App")).isSameAs(appInterface);
+        assertThat(webView.getParent().getParent()).isSameAs(view);
+        assertThat(shadowOf(webView).getLastLoadedUrl()).isEqualTo(LOCATION);
+        assertThat(turbolinksSession.turbolinksIsReady).isFalse();
+    }
+
+    // -----------------------------------------------------------------------
+    // Cold boot failures
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void coldBootFailureIsReportedOnce() {
+        turbolinksSession.adapter(adapter);
+        turbolinksSession.webViewClient.onReceivedError(turbolinksSession.webView, WebViewClient.ERROR_CONNECT, "", LOCATION);
+        turbolinksSession.webViewClient.onReceivedError(turbolinksSession.webView, WebViewClient.ERROR_CONNECT, "", LOCATION);
+        turbolinksSession.setTurbolinksIsReady(false);
+
+        verify(adapter, times(1)).onReceivedError(WebViewClient.ERROR_CONNECT);
+        verify(adapter, never()).requestFailedWithStatusCode(any(int.class));
+    }
+
+    @Test
+    public void coldBootFailureIsRetriedBeforeReporting() {
+        turbolinksSession.adapter(adapter);
+        turbolinksSession.location = LOCATION;
+        turbolinksSession.setRetryPolicy(new TurbolinksRetryPolicy(1, 100, 100));
+        turbolinksSession.webViewClient.onReceivedError(turbolinksSession.webView, WebViewClient.ERROR_CONNECT, "", LOCATION);
+
+        verify(adapter, never()).onReceivedError(any(int.class));
+        assertThat(turbolinksSession.visitRetrier.getRetryCount()).isEqualTo(1);
+    }
 }
@@ -1,6 +1,8 @@
 package com.basecamp.turbolinks;
 
+import android.view.View;
 import android.webkit.WebView;
+import android.widget.FrameLayout;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -37,4 +39,49 @@ public class TurbolinksViewTest extends BaseTest {
 
         assertThat(view.getRefreshLayout().getChildAt(1)).isEqualTo(webView);
     }
+
+    @Test
+    public void showProgressReusesAttachedProgressView() {
+        TurbolinksView view = new TurbolinksView(context);
+        FrameLayout progressView = new FrameLayout(context);
+        View progressIndicator = new View(context);
+        progressView.addView(progressIndicator);
+
+        view.showProgress(progressView, progressIndicator, 0);
+        view.hideProgress();
+        view.showProgress(progressView, progressIndicator, 0);
+
+        assertThat(view.getChildCount()).isEqualTo(2);
+        assertThat(progressView.getParent()).isEqualTo(view);
+        assertThat(progressView.getVisibility()).isEqualTo(View.VISIBLE);
+    }
+
+    @Test
+    public void hideProgressKeepsProgressViewAttached() {
+        TurbolinksView view = new TurbolinksView(context);
+        FrameLayout progressView = new FrameLayout(context);
+        View progressIndicator = new View(context);
+        progressView.addView(progressIndicator);
+
+        view.showProgress(progressView, progressIndicator, 0);
+        view.hideProgress();
+
+        assertThat(progressView.getParent()).isEqualTo(view);
+        assertThat(progressView.getVisibility()).isEqualTo(View.INVISIBLE);
+    }
+
+    @Test
+    public void showProgressMovesProgressViewFromPreviousView() {
+        TurbolinksView previousView = new TurbolinksView(context);
+        TurbolinksView view = new TurbolinksView(context);
+        FrameLayout progressView = new FrameLayout(context);
+        View progressIndicator = new View(context);
+        progressView.addView(progressIndicator);
+
+        previousView.showProgress(progressView, progressIndicator, 0);
+        view.showProgress(progressView, progressIndicator, 0);
+
+        assertThat(progressView.getParent()).isEqualTo(view);
+        assertThat(previousView.getChildCount()).isEqualTo(1);
+    }
 }
@@ -0,0 +1,173 @@
+package com.basecamp.turbolinks;
+
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksVisitRegistryTest extends BaseTest {
+    private static final String LOCATION = "https://basecamp.com/";
+    private static final String OTHER_LOCATION = "https://basecamp.com/other";
+    private static final String ADVANCE = TurbolinksSession.ACTION_ADVANCE;
+    private static final String REPLACE = TurbolinksSession.ACTION_REPLACE;
+
+    private final Object firstSession = new Object();
+    private final Object secondSession = new Object();
+    private TurbolinksVisitRegistry registry;
+    private TestListener listener;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        registry = new TurbolinksVisitRegistry(Looper.getMainLooper());
+        listener = new TestListener();
+    }
+
+    // -----------------------------------------------------------------------
+    // Same session
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void visitInFlightIsKeptForSameLocation() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+
+        assertThat(registry.isInFlight(LOCATION, ADVANCE, firstSession)).isTrue();
+        assertThat(registry.isInFlight(OTHER_LOCATION, ADVANCE, firstSession)).isFalse();
+        assertThat(registry.isInFlight(LOCATION, ADVANCE, secondSession)).isFalse();
+        assertThat(registry.attach(LOCATION, firstSession, listener)).isFalse();
+    }
+
+    @Test
+    public void visitWithOtherActionIsNotInFlight() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+
+        assertThat(registry.isInFlight(LOCATION, REPLACE, firstSession)).isFalse();
+
+        registry.begin(LOCATION, REPLACE, firstSession);
+
+        assertThat(registry.isInFlight(LOCATION, REPLACE, firstSession)).isTrue();
+        assertThat(registry.isInFlight(LOCATION, ADVANCE, firstSession)).isFalse();
+    }
+
+    @Test
+    public void finishedVisitIsNoLongerInFlight() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+        registry.finish(firstSession, true);
+
+        assertThat(registry.isInFlight(LOCATION, ADVANCE, firstSession)).isFalse();
+        assertThat(registry.attach(LOCATION, secondSession, listener)).isFalse();
+    }
+
+    @Test
+    public void expiredVisitIsRemoved() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+
+        ShadowLooper.idleMainLooper(TurbolinksVisitRegistry.MAX_WAIT + 1);
+
+        assertThat(registry.getVisitCount()).isEqualTo(0);
+        assertThat(registry.attach(LOCATION, secondSession, listener)).isFalse();
+    }
+
+    @Test
+    public void restartedVisitIsNotRemovedEarly() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+        ShadowLooper.idleMainLooper(TurbolinksVisitRegistry.MAX_WAIT / 2);
+
+        registry.begin(LOCATION, REPLACE, firstSession);
+        ShadowLooper.idleMainLooper(TurbolinksVisitRegistry.MAX_WAIT / 2 + 1);
+
+        assertThat(registry.isInFlight(LOCATION, REPLACE, firstSession)).isTrue();
+        assertThat(registry.getVisitCount()).isEqualTo(1);
+    }
+
+    // -----------------------------------------------------------------------
+    // Other sessions
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void otherSessionWaitsForVisitInFlight() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+
+        assertThat(registry.attach(LOCATION, secondSession, listener)).isTrue();
+        assertThat(listener.results).isEmpty();
+
+        registry.finish(firstSession, true);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(listener.results).containsExactly(true);
+    }
+
+    @Test
+    public void otherSessionStopsWaitingWhenVisitIsReplaced() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+        registry.attach(LOCATION, secondSession, listener);
+
+        registry.begin(OTHER_LOCATION, ADVANCE, firstSession);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(listener.results).containsExactly(false);
+    }
+
+    @Test
+    public void otherSessionKeepsWaitingWhenVisitIsRefreshed() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+        registry.attach(LOCATION, secondSession, listener);
+
+        registry.begin(LOCATION, ADVANCE, firstSession);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(listener.results).isEmpty();
+
+        registry.finish(firstSession, false);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(listener.results).containsExactly(false);
+    }
+
+    @Test
+    public void otherSessionStopsWaitingAfterMaxWait() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+        registry.attach(LOCATION, secondSession, listener);
+
+        ShadowLooper.idleMainLooper(TurbolinksVisitRegistry.MAX_WAIT);
+
+        assertThat(listener.results).containsExactly(false);
+    }
+
+    @Test
+    public void detachedSessionIsNotTold() {
+        registry.begin(LOCATION, ADVANCE, firstSession);
+        registry.attach(LOCATION, secondSession, listener);
+
+        registry.detach(secondSession);
+        registry.finish(firstSession, true);
+        ShadowLooper.idleMainLooper(TurbolinksVisitRegistry.MAX_WAIT);
+
+        assertThat(listener.results).isEmpty();
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    private static class TestListener implements TurbolinksVisitRegistry.Listener {
+        final List<Boolean> results = new ArrayList<>();
+
+        @Override
+        public void onVisitFinished(boolean succeeded) {
+            results.add(succeeded);
+        }
+    }
+}
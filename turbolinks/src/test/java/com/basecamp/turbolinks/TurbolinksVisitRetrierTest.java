@@ -0,0 +1,184 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.WebViewClient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksVisitRetrierTest extends BaseTest {
+    private static final String LOCATION = "https://basecamp.com/projects";
+
+    private FakeClock clock;
+    private FakeConnectivity connectivity;
+    private List<String> retries;
+    private TurbolinksVisitRetrier retrier;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        clock = new FakeClock();
+        connectivity = new FakeConnectivity();
+        retries = new ArrayList<>();
+        retrier = new TurbolinksVisitRetrier(new TurbolinksVisitRetrier.Target() {
+            @Override
+            public void retryVisit(String location) {
+                retries.add(location);
+            }
+        }, clock, connectivity, new Random(1));
+        retrier.setPolicy(new TurbolinksRetryPolicy(2, 1000, 8000));
+    }
+
+    // -----------------------------------------------------------------------
+    // Retrying
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void transientFailureIsRetriedAfterJitteredDelay() {
+        assertThat(retrier.visitFailed(LOCATION, 503)).isTrue();
+
+        clock.advance(499);
+        assertThat(retries).isEmpty();
+
+        clock.advance(501);
+        assertThat(retries).containsExactly(LOCATION);
+    }
+
+    @Test
+    public void failureIsReportedOnceRetriesRunOut() {
+        assertThat(retrier.visitFailed(LOCATION, WebViewClient.ERROR_TIMEOUT)).isTrue();
+        clock.advance(1000);
+        assertThat(retrier.visitFailed(LOCATION, WebViewClient.ERROR_TIMEOUT)).isTrue();
+        clock.advance(2000);
+
+        assertThat(retrier.visitFailed(LOCATION, WebViewClient.ERROR_TIMEOUT)).isFalse();
+        assertThat(retries).hasSize(2);
+    }
+
+    @Test
+    public void permanentFailureIsNotRetried() {
+        assertThat(retrier.visitFailed(LOCATION, 404)).isFalse();
+
+        clock.advance(10000);
+        assertThat(retries).isEmpty();
+    }
+
+    @Test
+    public void cancelDropsPendingRetry() {
+        retrier.visitFailed(LOCATION, 502);
+        retrier.cancel();
+
+        clock.advance(10000);
+        assertThat(retries).isEmpty();
+    }
+
+    @Test
+    public void noRetriesWithoutPolicy() {
+        retrier.setPolicy(null);
+
+        assertThat(retrier.visitFailed(LOCATION, 503)).isFalse();
+    }
+
+    // -----------------------------------------------------------------------
+    // Connectivity
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void offlineFailureIsReportedAndReplayedWhenBackOnline() {
+        connectivity.online = false;
+
+        assertThat(retrier.visitFailed(LOCATION, WebViewClient.ERROR_HOST_LOOKUP)).isFalse();
+        assertThat(retrier.isWaitingForConnectivity()).isTrue();
+        assertThat(connectivity.listener).isSameAs(retrier);
+
+        connectivity.online = true;
+        connectivity.listener.onConnectivityRestored();
+        clock.advance(0);
+
+        assertThat(retries).containsExactly(LOCATION);
+        assertThat(connectivity.listener).isNull();
+    }
+
+    @Test
+    public void cancelStopsListeningForConnectivity() {
+        connectivity.online = false;
+        retrier.visitFailed(LOCATION, 0);
+        retrier.cancel();
+
+        assertThat(retrier.isWaitingForConnectivity()).isFalse();
+        assertThat(connectivity.listener).isNull();
+    }
+
+    // -----------------------------------------------------------------------
+    // Fakes
+    // -----------------------------------------------------------------------
+
+    private static class FakeClock implements TurbolinksVisitRetrier.Scheduler {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<Long> times = new ArrayList<>();
+        private long now;
+
+        @Override
+        public void postDelayed(Runnable task, long delay) {
+            tasks.add(task);
+            times.add(now + delay);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    times.remove(i);
+                }
+            }
+        }
+
+        void advance(long millis) {
+            now += millis;
+
+            List<Runnable> due = new ArrayList<>();
+            Iterator<Long> timesIterator = times.iterator();
+            Iterator<Runnable> tasksIterator = tasks.iterator();
+            while (timesIterator.hasNext()) {
+                Runnable task = tasksIterator.next();
+                if (timesIterator.next() <= now) {
+                    due.add(task);
+                    timesIterator.remove();
+                    tasksIterator.remove();
+                }
+            }
+
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+
+    private static class FakeConnectivity implements TurbolinksConnectivity {
+        boolean online = true;
+        Listener listener;
+
+        @Override
+        public boolean isOnline() {
+            return online;
+        }
+
+        @Override
+        public void setListener(Listener listener) {
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.basecamp.turbolinks;
+
+import android.app.Activity;
+import android.webkit.WebView;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksWebViewCacheTest extends BaseTest {
+    private TurbolinksSession turbolinksSession;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        turbolinksSession = TurbolinksSession.getNew(context);
+        turbolinksSession.activity((Activity) context);
+    }
+
+    // -----------------------------------------------------------------------
+    // Cache
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        TurbolinksWebViewCache cache = new TurbolinksWebViewCache(2, Long.MAX_VALUE);
+        TurbolinksView first = new TurbolinksView(context);
+        TurbolinksView second = new TurbolinksView(context);
+        TurbolinksView third = new TurbolinksView(context);
+
+        cache.put(first, entry("https://basecamp.com/1"));
+        cache.put(second, entry("https://basecamp.com/2"));
+        cache.put(third, entry("https://basecamp.com/3"));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.remove(first)).isNull();
+        assertThat(cache.removeEvicted(first)).isTrue();
+        assertThat(cache.remove(third).location).isEqualTo("https://basecamp.com/3");
+    }
+
+    @Test
+    public void evictsOverMemoryBudget() {
+        TurbolinksWebViewCache cache = new TurbolinksWebViewCache(10, TurbolinksWebViewCache.WEBVIEW_BASE_BYTES);
+
+        cache.put(new TurbolinksView(context), entry("https://basecamp.com/1"));
+        cache.put(new TurbolinksView(context), entry("https://basecamp.com/2"));
+
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void dropsFinishingActivities() {
+        TurbolinksTestActivity activity = Robolectric.buildActivity(TurbolinksTestActivity.class).create().get();
+        TurbolinksWebViewCache cache = new TurbolinksWebViewCache(2, Long.MAX_VALUE);
+        TurbolinksView view = new TurbolinksView(activity);
+
+        cache.put(view, entry("https://basecamp.com/1"));
+        activity.finish();
+
+        assertThat(cache.remove(view)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void dropsDetachedViews() {
+        TurbolinksTestActivity activity = Robolectric.buildActivity(TurbolinksTestActivity.class).create().start().resume().visible().get();
+        FrameLayout container = new FrameLayout(activity);
+        activity.setContentView(container);
+        TurbolinksView view = new TurbolinksView(activity);
+        container.addView(view);
+        TurbolinksWebViewCache cache = new TurbolinksWebViewCache(2, Long.MAX_VALUE);
+
+        cache.put(view, entry("https://basecamp.com/1"));
+        container.removeView(view);
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.removeEvicted(view)).isTrue();
+    }
+
+    // -----------------------------------------------------------------------
+    // Session
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void disabledByDefault() {
+        assertThat(turbolinksSession.webViewCache).isNull();
+    }
+
+    @Test
+    public void forwardNavigationParksWebView() {
+        turbolinksSession.setWebViewCacheSize(2, Long.MAX_VALUE);
+        turbolinksSession.view(new TurbolinksView(context));
+        turbolinksSession.turbolinksIsReady = true;
+        WebView firstWebView = turbolinksSession.webView;
+
+        turbolinksSession.view(new TurbolinksView(context));
+
+        assertThat(turbolinksSession.webView).isNotSameAs(firstWebView);
+        assertThat(turbolinksSession.turbolinksIsReady).isFalse();
+        assertThat(turbolinksSession.webViewCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void backNavigationSwapsInCachedWebView() {
+        TurbolinksView firstView = new TurbolinksView(context);
+        turbolinksSession.setWebViewCacheSize(2, Long.MAX_VALUE);
+        turbolinksSession.view(firstView);
+        turbolinksSession.turbolinksIsReady = true;
+        turbolinksSession.location = "https://basecamp.com/1";
+        WebView firstWebView = turbolinksSession.webView;
+
+        turbolinksSession.view(new TurbolinksView(context));
+        turbolinksSession.location = "https://basecamp.com/2";
+        turbolinksSession.view(firstView);
+
+        assertThat(turbolinksSession.webView).isSameAs(firstWebView);
+        assertThat(turbolinksSession.location).isEqualTo("https://basecamp.com/1");
+        assertThat(turbolinksSession.turbolinksIsReady).isTrue();
+        assertThat(turbolinksSession.webViewRestoredFromCache).isTrue();
+    }
+
+    @Test
+    public void parkedWebViewCallsAreDropped() {
+        turbolinksSession.setWebViewCacheSize(2, Long.MAX_VALUE);
+        turbolinksSession.view(new TurbolinksView(context));
+        turbolinksSession.turbolinksIsReady = true;
+        WebView firstWebView = turbolinksSession.webView;
+
+        turbolinksSession.view(new TurbolinksView(context));
+        turbolinksSession.new JavascriptBridge(firstWebView).setTurbolinksIsReady(true);
+
+        assertThat(turbolinksSession.turbolinksIsReady).isFalse();
+    }
+
+    @Test
+    public void doesNotParkWebViewBeforeTurbolinksIsReady() {
+        turbolinksSession.setWebViewCacheSize(2, Long.MAX_VALUE);
+        turbolinksSession.view(new TurbolinksView(context));
+        WebView webView = turbolinksSession.webView;
+
+        turbolinksSession.view(new TurbolinksView(context));
+
+        assertThat(turbolinksSession.webView).isSameAs(webView);
+        assertThat(turbolinksSession.webViewCache.size()).isEqualTo(0);
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    private TurbolinksWebViewCache.Entry entry(String location) {
+        TurbolinksWebViewCache.Entry entry = new TurbolinksWebViewCache.Entry();
+        entry.webView = new WebView(context);
+        entry.location = location;
+        entry.visitOptions = new TurbolinksVisitOptions();
+        return entry;
+    }
+}
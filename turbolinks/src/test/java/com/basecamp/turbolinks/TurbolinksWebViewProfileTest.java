@@ -0,0 +1,65 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksWebViewProfileTest extends BaseTest {
+
+    // -----------------------------------------------------------------------
+    // Presets
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void lowMemoryWaivesRendererPriorityWithoutDeferringImages() {
+        TurbolinksWebViewProfile profile = TurbolinksWebViewProfile.lowMemory();
+
+        assertThat(profile.isNetworkImagesBlockedUntilRender()).isFalse();
+        assertThat(profile.isOffscreenPreRaster()).isFalse();
+        assertThat(profile.getRendererPriority()).isEqualTo(WebView.RENDERER_PRIORITY_BOUND);
+        assertThat(profile.isRendererPriorityWaivedWhenNotVisible()).isTrue();
+    }
+
+    @Test
+    public void fastRastersOffscreen() {
+        TurbolinksWebViewProfile profile = TurbolinksWebViewProfile.fast();
+
+        assertThat(profile.isOffscreenPreRaster()).isTrue();
+        assertThat(profile.isNetworkImagesBlockedUntilRender()).isFalse();
+        assertThat(profile.getRendererPriority()).isEqualTo(WebView.RENDERER_PRIORITY_IMPORTANT);
+    }
+
+    @Test
+    public void forDeviceReturnsPreset() {
+        assertThat(TurbolinksWebViewProfile.forDevice(context)).isNotNull();
+    }
+
+    @Test
+    public void forDeviceNeverDefersImages() {
+        assertThat(TurbolinksWebViewProfile.forDevice(context).isNetworkImagesBlockedUntilRender()).isFalse();
+    }
+
+    // -----------------------------------------------------------------------
+    // Applying
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void appliesSettingsToWebView() {
+        WebView webView = TurbolinksHelper.createWebView(context);
+
+        new TurbolinksWebViewProfile()
+            .cacheMode(WebSettings.LOAD_CACHE_ELSE_NETWORK)
+            .applyTo(webView);
+
+        assertThat(webView.getSettings().getCacheMode()).isEqualTo(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+        assertThat(webView.getSettings().getLayoutAlgorithm()).isEqualTo(WebSettings.LayoutAlgorithm.NORMAL);
+    }
+}
@@ -0,0 +1,70 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksWebViewThrottleTest extends BaseTest {
+    private TurbolinksTestActivity activity;
+    private TurbolinksSession turbolinksSession;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        activity = new TurbolinksTestActivity();
+        turbolinksSession = TurbolinksSession.getNew(context);
+        turbolinksSession.activity(activity);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertThat(turbolinksSession.webViewThrottle.enabled).isFalse();
+    }
+
+    @Test
+    public void pausesWhenActivityPaused() {
+        turbolinksSession.setBackgroundThrottlingEnabled(true);
+        turbolinksSession.webViewThrottle.onActivityPaused(activity);
+        ShadowLooper.idleMainLooper(TurbolinksWebViewThrottle.PAUSE_DELAY);
+
+        assertThat(turbolinksSession.webViewThrottle.paused).isTrue();
+    }
+
+    @Test
+    public void ignoresOtherActivities() {
+        turbolinksSession.setBackgroundThrottlingEnabled(true);
+        turbolinksSession.webViewThrottle.onActivityPaused(new TurbolinksTestActivity());
+
+        assertThat(turbolinksSession.webViewThrottle.activityResumed).isTrue();
+    }
+
+    @Test
+    public void resumesWhenAttachedToView() {
+        turbolinksSession.setBackgroundThrottlingEnabled(true);
+        turbolinksSession.webViewThrottle.onActivityPaused(activity);
+        ShadowLooper.idleMainLooper(TurbolinksWebViewThrottle.PAUSE_DELAY);
+
+        turbolinksSession.view(new TurbolinksView(context));
+
+        assertThat(turbolinksSession.webViewThrottle.paused).isFalse();
+    }
+
+    @Test
+    public void disablingResumes() {
+        turbolinksSession.setBackgroundThrottlingEnabled(true);
+        turbolinksSession.webViewThrottle.onActivityPaused(activity);
+        ShadowLooper.idleMainLooper(TurbolinksWebViewThrottle.PAUSE_DELAY);
+
+        turbolinksSession.setBackgroundThrottlingEnabled(false);
+
+        assertThat(turbolinksSession.webViewThrottle.paused).isFalse();
+    }
+}